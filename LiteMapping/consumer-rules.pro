@@ -0,0 +1,15 @@
+# EntityMapping maps columns to field names and creates instances through the no-argument constructor
+-if class * { @com.xq.litemapping.PrimaryKey <fields>; }
+-keepclassmembers class <1> {
+    <fields>;
+    <init>();
+}
+# Fields inherited from a class that declares the @PrimaryKey field are columns of the subclass as well
+-if class * { @com.xq.litemapping.PrimaryKey <fields>; }
+-keepclassmembers class * extends <1> {
+    <fields>;
+    <init>();
+}
+# A superclass that does not declare the @PrimaryKey field cannot be matched by the rules above,
+# entities that inherit columns from such a class need a rule for it, for example:
+# -keepclassmembers class com.example.BaseEntity { <fields>; }
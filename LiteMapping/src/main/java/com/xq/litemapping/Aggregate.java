@@ -0,0 +1,9 @@
+package com.xq.litemapping;
+
+public enum Aggregate {
+    Count,
+    Sum,
+    Min,
+    Max,
+    Avg,
+}
@@ -0,0 +1,113 @@
+package com.xq.litemapping;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+//外部存储的大字段，行中只保存引用，读取时不会把内容载入内存，需要时再按流、FileChannel或内存映射的方式访问
+//内容按sha256寻址，相同内容只保存一份，equals与hashCode按内容比较
+public class BlobHandle {
+
+    static final String REFERENCE_PREFIX = "lm-blob:";
+
+    private final File file;
+    private final String hash;
+    private final long length;
+
+    BlobHandle(File file, String hash, long length) {
+        this.file = file;
+        this.hash = hash;
+        this.length = length;
+    }
+
+    //引用格式为 lm-blob:<sha256>:<length>，不是引用时返回null
+    static BlobHandle parse(File directory,String reference){
+        if (reference == null || !reference.startsWith(REFERENCE_PREFIX)){
+            return null;
+        }
+        int separator = reference.indexOf(':',REFERENCE_PREFIX.length());
+        if (separator < 0){
+            return null;
+        }
+        try {
+            String hash = reference.substring(REFERENCE_PREFIX.length(),separator);
+            return new BlobHandle(new File(directory,hash),hash,Long.parseLong(reference.substring(separator+1)));
+        } catch (NumberFormatException e){
+            return null;
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public InputStream openInputStream() throws IOException {
+        return new FileInputStream(file);
+    }
+
+    //调用方负责关闭
+    public FileChannel openChannel() throws IOException {
+        return new RandomAccessFile(file,"r").getChannel();
+    }
+
+    //映射在通道关闭后依然有效，由GC回收
+    public MappedByteBuffer map() throws IOException {
+        FileChannel channel = openChannel();
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size());
+        } finally {
+            channel.close();
+        }
+    }
+
+    public byte[] readBytes() throws IOException {
+        if (length > Integer.MAX_VALUE){
+            throw new IOException(String.format("blob %s is too large to read into memory",hash));
+        }
+        FileChannel channel = openChannel();
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate((int) length);
+            while (buffer.hasRemaining()){
+                if (channel.read(buffer) < 0){
+                    throw new IOException(String.format("blob %s is truncated",hash));
+                }
+            }
+            return buffer.array();
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BlobHandle that = (BlobHandle) o;
+        return length == that.length && hash.equals(that.hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash.hashCode();
+    }
+
+    //即写入行中的引用
+    @Override
+    public String toString() {
+        return REFERENCE_PREFIX+hash+":"+length;
+    }
+
+}
@@ -0,0 +1,210 @@
+package com.xq.litemapping;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+//按内容寻址保存大字段，每张表一个目录，文件名即内容的sha256
+//先写入临时文件再重命名，进程中断时不会留下内容不完整的文件
+class BlobStore {
+
+    private static final String TEMP_PREFIX = ".tmp-";
+
+    //写入方先保存文件再提交引用，两者之间的文件在数据库中还看不到引用，宽限期内修改过的文件不回收
+    static final long DEFAULT_GRACE_PERIOD_MILLIS = 60*1000;
+
+    private final File directory;
+    private volatile long gracePeriodMillis = DEFAULT_GRACE_PERIOD_MILLIS;
+
+    //宽限期内未能删除的文件与在事务中释放的文件，之后重新确认没有引用再删除
+    private final Set<String> pendingHashes = new HashSet<>();
+    private boolean retryScheduled;
+
+    BlobStore(File directory) {
+        this.directory = directory;
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    long getGracePeriod() {
+        return gracePeriodMillis;
+    }
+
+    void setGracePeriod(long gracePeriodMillis) {
+        this.gracePeriodMillis = gracePeriodMillis;
+    }
+
+    //目录在第一次写入时才创建，不存在时说明表中没有外部存储的字段
+    boolean exists(){
+        return directory.isDirectory();
+    }
+
+    boolean contains(BlobHandle blobHandle){
+        return directory.equals(blobHandle.getFile().getParentFile());
+    }
+
+    BlobHandle open(String reference){
+        return BlobHandle.parse(directory,reference);
+    }
+
+    BlobHandle store(byte[] bytes) throws IOException {
+        String hash = toHex(newDigest().digest(bytes));
+        synchronized (this){
+            File file = new File(directory,hash);
+            //内容相同的文件已存在时只更新修改时间，避免被正在进行的回收删除
+            if (file.isFile() && file.length() == bytes.length && file.setLastModified(System.currentTimeMillis())){
+                return new BlobHandle(file,hash,bytes.length);
+            }
+            File tempFile = newTempFile();
+            FileOutputStream outputStream = new FileOutputStream(tempFile);
+            try {
+                outputStream.write(bytes);
+                outputStream.getFD().sync();
+            } finally {
+                outputStream.close();
+            }
+            return commit(tempFile,file,hash,bytes.length);
+        }
+    }
+
+    //边读边计算摘要，内容不会整体载入内存
+    BlobHandle store(InputStream inputStream) throws IOException {
+        MessageDigest messageDigest = newDigest();
+        File tempFile;
+        synchronized (this){
+            tempFile = newTempFile();
+        }
+        long length = 0;
+        FileOutputStream outputStream = new FileOutputStream(tempFile);
+        try {
+            byte[] buffer = new byte[64*1024];
+            int count;
+            while ((count = inputStream.read(buffer)) >= 0){
+                outputStream.write(buffer,0,count);
+                messageDigest.update(buffer,0,count);
+                length += count;
+            }
+            outputStream.getFD().sync();
+        } catch (IOException e){
+            outputStream.close();
+            tempFile.delete();
+            throw e;
+        } finally {
+            outputStream.close();
+        }
+        String hash = toHex(messageDigest.digest());
+        synchronized (this){
+            File file = new File(directory,hash);
+            if (file.isFile() && file.length() == length && file.setLastModified(System.currentTimeMillis())){
+                tempFile.delete();
+                return new BlobHandle(file,hash,length);
+            }
+            return commit(tempFile,file,hash,length);
+        }
+    }
+
+    private File newTempFile() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()){
+            throw new IOException("cannot create "+directory);
+        }
+        return File.createTempFile(TEMP_PREFIX,null,directory);
+    }
+
+    private BlobHandle commit(File tempFile,File file,String hash,long length) throws IOException {
+        if (!tempFile.renameTo(file)){
+            tempFile.delete();
+            throw new IOException("cannot create "+file);
+        }
+        return new BlobHandle(file,hash,length);
+    }
+
+    //删除不再被引用的文件，调用方保证hashes中的内容已经没有引用，宽限期内修改过的文件留待重试
+    synchronized int delete(Collection<String> hashes){
+        long deadline = System.currentTimeMillis()-gracePeriodMillis;
+        int count = 0;
+        for (String hash : hashes){
+            File file = new File(directory,hash);
+            if (!file.exists()){
+                continue;
+            }
+            if (file.lastModified() >= deadline){
+                pendingHashes.add(hash);
+            } else if (file.delete()){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    synchronized void defer(Collection<String> hashes){
+        pendingHashes.addAll(hashes);
+    }
+
+    //取出待回收的文件并转换为引用，由调用方重新确认没有行引用后再交给delete，文件已不存在的直接丢弃
+    synchronized Set<String> takePendingReferences(){
+        Set<String> references = new HashSet<>(pendingHashes.size());
+        for (String hash : pendingHashes){
+            File file = new File(directory,hash);
+            if (file.isFile()){
+                references.add(new BlobHandle(file,hash,file.length()).toString());
+            }
+        }
+        pendingHashes.clear();
+        return references;
+    }
+
+    //有待回收的文件且还没有安排重试时返回true，调用方负责安排一次重试
+    synchronized boolean requestRetry(){
+        if (retryScheduled || pendingHashes.isEmpty()){
+            return false;
+        }
+        retryScheduled = true;
+        return true;
+    }
+
+    synchronized void onRetry(){
+        retryScheduled = false;
+    }
+
+    //删除目录中不在referencedHashes里的全部文件，包括中断后遗留的临时文件
+    synchronized int sweep(Set<String> referencedHashes){
+        String[] names = directory.list();
+        if (names == null){
+            return 0;
+        }
+        List<String> hashes = new ArrayList<>();
+        for (String name : names){
+            if (!referencedHashes.contains(name)){
+                hashes.add(name);
+            }
+        }
+        return delete(hashes);
+    }
+
+    private static MessageDigest newDigest(){
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes){
+        StringBuilder stringBuilder = new StringBuilder(bytes.length*2);
+        for (byte b : bytes){
+            stringBuilder.append(String.format("%02x",b));
+        }
+        return stringBuilder.toString();
+    }
+
+}
@@ -0,0 +1,193 @@
+package com.xq.litemapping;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//把表当作磁盘缓存使用：行在写入后timeToLive毫秒过期，行数或字节数超出上限时按EvictionPolicy淘汰
+//过期时间、访问时间、访问次数与行大小保存在表的隐藏列中，由触发器在写入时维护，查询结果中不会出现
+public class CachePolicy {
+
+    static final String EXPIRE_AT_COLUMN = "lite_mapping_expire_at";
+    static final String ACCESS_TIME_COLUMN = "lite_mapping_access_time";
+    static final String ACCESS_COUNT_COLUMN = "lite_mapping_access_count";
+    static final String SIZE_COLUMN = "lite_mapping_size";
+
+    //与System.currentTimeMillis()相同的时间基准
+    private static final String NOW_MILLIS = "cast((julianday('now')-2440587.5)*86400000 as integer)";
+
+    private long timeToLiveMillis;
+    private long maxRowCount;
+    private long maxBytes;
+    private EvictionPolicy evictionPolicy = EvictionPolicy.Lru;
+    private int cleanupBatchSize = 500;
+    private long cleanupIntervalMillis = 60*1000;
+
+    //0表示不过期，插入或修改行时重新计时
+    public CachePolicy setTimeToLive(long timeToLiveMillis) {
+        this.timeToLiveMillis = timeToLiveMillis;
+        return this;
+    }
+
+    //0表示不限制
+    public CachePolicy setMaxRowCount(long maxRowCount) {
+        this.maxRowCount = maxRowCount;
+        return this;
+    }
+
+    //按各列值的字节数估算行大小，0表示不限制
+    public CachePolicy setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    public CachePolicy setEvictionPolicy(EvictionPolicy evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+        return this;
+    }
+
+    //后台清理每个事务最多删除的行数，批次之间释放写锁
+    public CachePolicy setCleanupBatchSize(int cleanupBatchSize) {
+        this.cleanupBatchSize = cleanupBatchSize;
+        return this;
+    }
+
+    public CachePolicy setCleanupInterval(long cleanupIntervalMillis) {
+        this.cleanupIntervalMillis = cleanupIntervalMillis;
+        return this;
+    }
+
+    public long getTimeToLive() {
+        return timeToLiveMillis;
+    }
+
+    public long getMaxRowCount() {
+        return maxRowCount;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    public int getCleanupBatchSize() {
+        return cleanupBatchSize;
+    }
+
+    public long getCleanupInterval() {
+        return cleanupIntervalMillis;
+    }
+
+    boolean hasTimeToLive(){
+        return timeToLiveMillis > 0;
+    }
+
+    //有容量上限时才需要记录访问
+    boolean isBounded(){
+        return maxRowCount > 0 || maxBytes > 0;
+    }
+
+    void validate(){
+        if (timeToLiveMillis < 0 || maxRowCount < 0 || maxBytes < 0){
+            throw new IllegalArgumentException("cache limits must not be negative");
+        }
+        if (cleanupBatchSize <= 0 || cleanupIntervalMillis <= 0){
+            throw new IllegalArgumentException("cleanup batch size and interval must be positive");
+        }
+        if (evictionPolicy == null){
+            throw new IllegalArgumentException("evictionPolicy must not be null");
+        }
+    }
+
+    static Map<String,String> getColumnDefinitions(){
+        Map<String,String> map = new LinkedHashMap<>();
+        map.put(EXPIRE_AT_COLUMN,"integer");
+        map.put(ACCESS_TIME_COLUMN,"integer");
+        map.put(ACCESS_COUNT_COLUMN,"integer not null default 0");
+        map.put(SIZE_COLUMN,"integer");
+        return map;
+    }
+
+    static String[] getTriggerNames(String tableName){
+        return new String[]{tableName+"_cache_ai",tableName+"_cache_au"};
+    }
+
+    static String[] getIndexNames(String tableName){
+        return new String[]{"lite_mapping_expire_"+tableName,"lite_mapping_lru_"+tableName,"lite_mapping_lfu_"+tableName};
+    }
+
+    //只创建当前策略需要的索引
+    List<String> getIndexSQLs(String tableName){
+        String[] indexNames = getIndexNames(tableName);
+        List<String> list = new ArrayList<>(2);
+        if (hasTimeToLive()){
+            list.add(String.format("create index if not exists %s on %s(%s)",indexNames[0],tableName,EXPIRE_AT_COLUMN));
+        }
+        if (isBounded()){
+            if (evictionPolicy == EvictionPolicy.Lru){
+                list.add(String.format("create index if not exists %s on %s(%s)",indexNames[1],tableName,ACCESS_TIME_COLUMN));
+            } else {
+                list.add(String.format("create index if not exists %s on %s(%s,%s)",indexNames[2],tableName,ACCESS_COUNT_COLUMN,ACCESS_TIME_COLUMN));
+            }
+        }
+        return list;
+    }
+
+    //触发器只修改隐藏列，不会再次触发update of声明列的触发器
+    List<String> getTriggerSQLs(String tableName,Collection<String> columns){
+        String[] triggerNames = getTriggerNames(tableName);
+        String expireAt = hasTimeToLive()? String.format("%s+%d",NOW_MILLIS,timeToLiveMillis) : "null";
+        String size = getSizeExpression(columns);
+        StringBuilder columnBuilder = new StringBuilder();
+        for (String column : columns){
+            if (columnBuilder.length() > 0){
+                columnBuilder.append(",");
+            }
+            columnBuilder.append(column);
+        }
+        List<String> list = new ArrayList<>(2);
+        list.add(String.format("create trigger if not exists %s after insert on %s begin update %s set %s = %s, %s = %s, %s = 0, %s = %s where rowid = new.rowid; end",
+                triggerNames[0],tableName,tableName,EXPIRE_AT_COLUMN,expireAt,ACCESS_TIME_COLUMN,NOW_MILLIS,ACCESS_COUNT_COLUMN,SIZE_COLUMN,size));
+        list.add(String.format("create trigger if not exists %s after update of %s on %s begin update %s set %s = %s, %s = %s where rowid = new.rowid; end",
+                triggerNames[1],columnBuilder,tableName,tableName,EXPIRE_AT_COLUMN,expireAt,SIZE_COLUMN,size));
+        return list;
+    }
+
+    //已有的行按当前策略补齐隐藏列，关闭过期后清除已有的过期时间
+    List<String> getBackfillSQLs(String tableName,Collection<String> columns){
+        List<String> list = new ArrayList<>(3);
+        list.add(String.format("update %s set %s = %s where %s is null",tableName,SIZE_COLUMN,getSizeExpression(columns),SIZE_COLUMN));
+        //没有访问时间的行按设置策略的时间计，避免在LRU下被优先淘汰
+        list.add(String.format("update %s set %s = %s where %s is null",tableName,ACCESS_TIME_COLUMN,NOW_MILLIS,ACCESS_TIME_COLUMN));
+        if (hasTimeToLive()){
+            list.add(String.format("update %s set %s = %s+%d where %s is null",tableName,EXPIRE_AT_COLUMN,NOW_MILLIS,timeToLiveMillis,EXPIRE_AT_COLUMN));
+        } else {
+            list.add(String.format("update %s set %s = null where %s is not null",tableName,EXPIRE_AT_COLUMN,EXPIRE_AT_COLUMN));
+        }
+        return list;
+    }
+
+    private String getSizeExpression(Collection<String> columns){
+        StringBuilder stringBuilder = new StringBuilder();
+        for (String column : columns){
+            if (stringBuilder.length() > 0){
+                stringBuilder.append("+");
+            }
+            stringBuilder.append(String.format("ifnull(length(cast(%s as blob)),0)",column));
+        }
+        return stringBuilder.length() == 0? "0" : stringBuilder.toString();
+    }
+
+    String getEvictionOrderBy(){
+        if (evictionPolicy == EvictionPolicy.Lru){
+            return String.format("%s asc",ACCESS_TIME_COLUMN);
+        }
+        return String.format("%s asc, %s asc",ACCESS_COUNT_COLUMN,ACCESS_TIME_COLUMN);
+    }
+
+}
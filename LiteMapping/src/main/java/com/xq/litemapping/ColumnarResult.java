@@ -0,0 +1,101 @@
+package com.xq.litemapping;
+
+import java.util.Arrays;
+
+public class ColumnarResult {
+
+    private final int rowCount;
+    private final String[] columnNames;
+    private final Object[] columnArrays;
+    //仅在列中出现null时才分配，每个bit对应一行
+    private final long[][] nullBitmaps;
+
+    ColumnarResult(int rowCount, String[] columnNames, Object[] columnArrays) {
+        this.rowCount = rowCount;
+        this.columnNames = columnNames;
+        this.columnArrays = columnArrays;
+        this.nullBitmaps = new long[columnNames.length][];
+    }
+
+    void setNull(int columnIndex,int row){
+        if (nullBitmaps[columnIndex] == null){
+            nullBitmaps[columnIndex] = new long[(rowCount+63) >>> 6];
+        }
+        nullBitmaps[columnIndex][row >>> 6] |= 1L << row;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public String[] getColumnNames() {
+        return columnNames.clone();
+    }
+
+    public int getColumnIndex(String columnName){
+        for (int i=0;i<columnNames.length;i++){
+            if (columnNames[i].equals(columnName)){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean isNullable(String columnName){
+        return nullBitmaps[getColumnIndexOrThrow(columnName)] != null;
+    }
+
+    public boolean isNull(String columnName,int row){
+        return isNull(getColumnIndexOrThrow(columnName),row);
+    }
+
+    public boolean isNull(int columnIndex,int row){
+        long[] bitmap = nullBitmaps[columnIndex];
+        return bitmap != null && (bitmap[row >>> 6] & (1L << row)) != 0;
+    }
+
+    public int[] getIntColumn(String columnName){
+        return getColumnArray(columnName,int[].class);
+    }
+
+    public long[] getLongColumn(String columnName){
+        return getColumnArray(columnName,long[].class);
+    }
+
+    public double[] getDoubleColumn(String columnName){
+        return getColumnArray(columnName,double[].class);
+    }
+
+    public boolean[] getBooleanColumn(String columnName){
+        return getColumnArray(columnName,boolean[].class);
+    }
+
+    public char[] getCharColumn(String columnName){
+        return getColumnArray(columnName,char[].class);
+    }
+
+    public String[] getStringColumn(String columnName){
+        return getColumnArray(columnName,String[].class);
+    }
+
+    public byte[][] getBlobColumn(String columnName){
+        return getColumnArray(columnName,byte[][].class);
+    }
+
+    private <T> T getColumnArray(String columnName,Class<T> arrayClass){
+        Object array = columnArrays[getColumnIndexOrThrow(columnName)];
+        if (!arrayClass.isInstance(array)){
+            throw new IllegalArgumentException(String.format("column %s is stored as %s, not %s",columnName,array.getClass().getSimpleName(),arrayClass.getSimpleName()));
+        }
+        return arrayClass.cast(array);
+    }
+
+    private int getColumnIndexOrThrow(String columnName){
+        int columnIndex = getColumnIndex(columnName);
+        if (columnIndex < 0){
+            throw new IllegalArgumentException(String.format("column %s does not exist in %s",columnName,Arrays.toString(columnNames)));
+        }
+        return columnIndex;
+    }
+
+}
@@ -1,8 +1,6 @@
 package com.xq.litemapping;
 
-import java.io.Serializable;
-
-public class Condition implements Serializable {
+public class Condition implements ConditionNode {
 
     private String key;
     private CompareType compare;
@@ -14,6 +12,10 @@ public class Condition implements Serializable {
         this.value = value;
     }
 
+    public Condition(String key, CompareType compare) {
+        this(key,compare,null);
+    }
+
     public String getKey() {
         return key;
     }
@@ -45,6 +47,16 @@ public class Condition implements Serializable {
         GreaterThanOrEqualTo,
         GreaterThan,
         NotEqualTo,
+        //value为Collection或数组
+        In,
+        NotIn,
+        //value为包含上下限的两个元素的Collection或数组
+        Between,
+        Like,
+        Glob,
+        //不需要value
+        IsNull,
+        IsNotNull,
     }
 
 }
@@ -0,0 +1,330 @@
+package com.xq.litemapping;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//把条件树编译成selection，相同结构(列、比较方式、and/or、IN的参数个数)的条件树复用已生成的SQL，只重新收集参数
+class ConditionCompiler {
+
+    private static final int MAX_CACHE_SIZE = 64;
+
+    private static final Selection EMPTY_SELECTION = new Selection(null,new String[0],new Object[0]);
+
+    private final Map<Long,CompiledCondition> compiledConditionMap = new LinkedHashMap<Long,CompiledCondition>(16,0.75f,true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long,CompiledCondition> eldest) {
+            return size() > MAX_CACHE_SIZE;
+        }
+    };
+
+    public Selection compile(ConditionNode conditionNode){
+        if (conditionNode == null || isEmptyGroup(conditionNode)){
+            return EMPTY_SELECTION;
+        }
+        long shapeHash = hashShape(conditionNode,17);
+        CompiledCondition compiledCondition;
+        synchronized (compiledConditionMap){
+            compiledCondition = compiledConditionMap.get(shapeHash);
+        }
+        //hash相同时再逐个比对结构，避免碰撞时用错SQL
+        if (compiledCondition == null || matchShape(conditionNode,compiledCondition.shape,0) != compiledCondition.shape.length){
+            StringBuilder stringBuilder = new StringBuilder();
+            List<String> keyList = new ArrayList<>();
+            List<Object> shapeList = new ArrayList<>();
+            appendSelection(conditionNode,stringBuilder,keyList,shapeList,false);
+            compiledCondition = new CompiledCondition(stringBuilder.toString(),keyList.toArray(new String[keyList.size()]),shapeList.toArray());
+            synchronized (compiledConditionMap){
+                compiledConditionMap.put(shapeHash,compiledCondition);
+            }
+        }
+        Object[] args = new Object[compiledCondition.keys.length];
+        collectArgs(conditionNode,args,0);
+        return new Selection(compiledCondition.selection,compiledCondition.keys,args);
+    }
+
+    private boolean isEmptyGroup(ConditionNode conditionNode){
+        return conditionNode instanceof ConditionGroup && getConditionNodes((ConditionGroup) conditionNode).length == 0;
+    }
+
+    private long hashShape(ConditionNode conditionNode,long hash){
+        if (conditionNode instanceof ConditionGroup){
+            ConditionGroup conditionGroup = (ConditionGroup) conditionNode;
+            ConditionNode[] conditionNodes = getConditionNodes(conditionGroup);
+            hash = hash*31+getConditionLink(conditionGroup).hashCode();
+            hash = hash*31+conditionNodes.length;
+            for (ConditionNode child : conditionNodes){
+                hash = hashShape(child,hash);
+            }
+            return hash;
+        }
+        Condition condition = (Condition) conditionNode;
+        hash = hash*31+condition.getKey().hashCode();
+        hash = hash*31+condition.getCompare().hashCode();
+        return hash*31+getArity(condition);
+    }
+
+    //返回比对结束的位置，不匹配时返回-1
+    private int matchShape(ConditionNode conditionNode,Object[] shape,int position){
+        if (position < 0 || position >= shape.length){
+            return -1;
+        }
+        if (conditionNode instanceof ConditionGroup){
+            ConditionGroup conditionGroup = (ConditionGroup) conditionNode;
+            ConditionNode[] conditionNodes = getConditionNodes(conditionGroup);
+            if (position+1 >= shape.length || shape[position] != getConditionLink(conditionGroup) || !shape[position+1].equals(conditionNodes.length)){
+                return -1;
+            }
+            position += 2;
+            for (ConditionNode child : conditionNodes){
+                position = matchShape(child,shape,position);
+                if (position < 0){
+                    return -1;
+                }
+            }
+            return position;
+        }
+        Condition condition = (Condition) conditionNode;
+        if (position+2 >= shape.length || !shape[position].equals(condition.getKey()) || shape[position+1] != condition.getCompare() || !shape[position+2].equals(getArity(condition))){
+            return -1;
+        }
+        return position+3;
+    }
+
+    private void appendSelection(ConditionNode conditionNode,StringBuilder stringBuilder,List<String> keyList,List<Object> shapeList,boolean nested){
+        if (conditionNode instanceof ConditionGroup){
+            ConditionGroup conditionGroup = (ConditionGroup) conditionNode;
+            ConditionNode[] conditionNodes = getConditionNodes(conditionGroup);
+            ConditionLink conditionLink = getConditionLink(conditionGroup);
+            shapeList.add(conditionLink);
+            shapeList.add(conditionNodes.length);
+            if (conditionNodes.length == 0){
+                //空的and组恒为真，空的or组恒为假
+                stringBuilder.append(conditionLink == ConditionLink.Or? "0" : "1");
+                return;
+            }
+            boolean bracket = nested && conditionNodes.length > 1;
+            if (bracket){
+                stringBuilder.append("(");
+            }
+            for (int i=0;i<conditionNodes.length;i++){
+                if (i > 0){
+                    stringBuilder.append(conditionLink == ConditionLink.Or? " or " : " and ");
+                }
+                appendSelection(conditionNodes[i],stringBuilder,keyList,shapeList,true);
+            }
+            if (bracket){
+                stringBuilder.append(")");
+            }
+            return;
+        }
+        Condition condition = (Condition) conditionNode;
+        String key = condition.getKey();
+        int arity = getArity(condition);
+        shapeList.add(key);
+        shapeList.add(condition.getCompare());
+        shapeList.add(arity);
+        switch (condition.getCompare()){
+            case LessThan:
+            case LessThanOrEqualTo:
+            case GreaterThanOrEqualTo:
+            case GreaterThan:
+                stringBuilder.append(key).append(" ").append(getCompareTypeCharacter(condition.getCompare())).append(" ?");
+                keyList.add(key);
+                break;
+            case EqualTo:
+            case NotEqualTo:
+                //与null比较时=和!=永远不成立，转成is null/is not null
+                if (arity == 0){
+                    stringBuilder.append(key).append(condition.getCompare() == Condition.CompareType.EqualTo? " is null" : " is not null");
+                } else {
+                    stringBuilder.append(key).append(" ").append(getCompareTypeCharacter(condition.getCompare())).append(" ?");
+                    keyList.add(key);
+                }
+                break;
+            case In:
+            case NotIn:
+                if (arity == 0){
+                    stringBuilder.append(condition.getCompare() == Condition.CompareType.In? "0" : "1");
+                } else {
+                    stringBuilder.append(key).append(condition.getCompare() == Condition.CompareType.In? " in (" : " not in (");
+                    for (int i=0;i<arity;i++){
+                        stringBuilder.append(i == 0? "?" : ",?");
+                        keyList.add(key);
+                    }
+                    stringBuilder.append(")");
+                }
+                break;
+            case Between:
+                stringBuilder.append(key).append(" between ? and ?");
+                keyList.add(key);
+                keyList.add(key);
+                break;
+            case Like:
+                stringBuilder.append(key).append(" like ?");
+                keyList.add(key);
+                break;
+            case Glob:
+                stringBuilder.append(key).append(" glob ?");
+                keyList.add(key);
+                break;
+            case IsNull:
+                stringBuilder.append(key).append(" is null");
+                break;
+            case IsNotNull:
+                stringBuilder.append(key).append(" is not null");
+                break;
+        }
+    }
+
+    private int collectArgs(ConditionNode conditionNode,Object[] args,int position){
+        if (conditionNode instanceof ConditionGroup){
+            for (ConditionNode child : getConditionNodes((ConditionGroup) conditionNode)){
+                position = collectArgs(child,args,position);
+            }
+            return position;
+        }
+        Condition condition = (Condition) conditionNode;
+        Object value = condition.getValue();
+        switch (condition.getCompare()){
+            case In:
+            case NotIn:
+            case Between:
+                if (value instanceof Collection){
+                    for (Object object : (Collection<?>) value){
+                        args[position++] = object;
+                    }
+                } else {
+                    for (int i=0,length=Array.getLength(value);i<length;i++){
+                        args[position++] = Array.get(value,i);
+                    }
+                }
+                return position;
+            case IsNull:
+            case IsNotNull:
+                return position;
+            case EqualTo:
+            case NotEqualTo:
+                if (value == null){
+                    return position;
+                }
+            default:
+                args[position] = value;
+                return position+1;
+        }
+    }
+
+    private int getArity(Condition condition){
+        Condition.CompareType compareType = condition.getCompare();
+        if (compareType == null){
+            throw new IllegalArgumentException(String.format("compare type of %s is null",condition.getKey()));
+        }
+        Object value = condition.getValue();
+        switch (compareType){
+            case IsNull:
+            case IsNotNull:
+                return 0;
+            case EqualTo:
+            case NotEqualTo:
+                return value == null? 0 : 1;
+            case In:
+            case NotIn:
+                return getValueCount(condition);
+            case Between:
+                if (getValueCount(condition) != 2){
+                    throw new IllegalArgumentException(String.format("between of %s needs exactly two values",condition.getKey()));
+                }
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    private int getValueCount(Condition condition){
+        Object value = condition.getValue();
+        if (value instanceof Collection){
+            return ((Collection<?>) value).size();
+        }
+        if (value != null && value.getClass().isArray()){
+            return Array.getLength(value);
+        }
+        throw new IllegalArgumentException(String.format("%s of %s needs a collection or an array",condition.getCompare(),condition.getKey()));
+    }
+
+    private ConditionNode[] getConditionNodes(ConditionGroup conditionGroup){
+        return conditionGroup.getConditionNodes() == null? new ConditionNode[0] : conditionGroup.getConditionNodes();
+    }
+
+    //未指定连接方式时按and处理
+    private ConditionLink getConditionLink(ConditionGroup conditionGroup){
+        return conditionGroup.getConditionLink() == null? ConditionLink.And : conditionGroup.getConditionLink();
+    }
+
+    private String getCompareTypeCharacter(Condition.CompareType compareType){
+        switch (compareType){
+            case LessThan: return "<";
+            case LessThanOrEqualTo: return "<=";
+            case EqualTo: return "=";
+            case GreaterThanOrEqualTo: return ">=";
+            case GreaterThan: return ">";
+            case NotEqualTo: return "!=";
+        }
+        throw new IllegalArgumentException(String.valueOf(compareType));
+    }
+
+    private static class CompiledCondition{
+
+        private final String selection;
+        private final String[] keys;
+        private final Object[] shape;
+
+        private CompiledCondition(String selection, String[] keys, Object[] shape) {
+            this.selection = selection;
+            this.keys = keys;
+            this.shape = shape;
+        }
+    }
+
+    //keys为每个参数对应的列，用于按列声明的类型绑定参数
+    static class Selection{
+
+        private final String selection;
+        private final String[] keys;
+        private final Object[] args;
+
+        Selection(String selection, String[] keys, Object[] args) {
+            this.selection = selection;
+            this.keys = keys;
+            this.args = args;
+        }
+
+        public String getSelection() {
+            return selection;
+        }
+
+        public String[] getKeys() {
+            return keys;
+        }
+
+        public Object[] getArgs() {
+            return args;
+        }
+
+        public Selection and(String otherSelection,String[] otherKeys,Object[] otherArgs){
+            if (selection == null){
+                return new Selection(otherSelection,otherKeys,otherArgs);
+            }
+            String[] newKeys = new String[keys.length+otherKeys.length];
+            System.arraycopy(keys,0,newKeys,0,keys.length);
+            System.arraycopy(otherKeys,0,newKeys,keys.length,otherKeys.length);
+            Object[] newArgs = new Object[args.length+otherArgs.length];
+            System.arraycopy(args,0,newArgs,0,args.length);
+            System.arraycopy(otherArgs,0,newArgs,args.length,otherArgs.length);
+            return new Selection(String.format("(%s) and %s",selection,otherSelection),newKeys,newArgs);
+        }
+    }
+
+}
@@ -0,0 +1,400 @@
+package com.xq.litemapping;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+//在内存中直接对行求值，比较规则与Sqlite一致：null小于数字，数字小于文本，文本小于blob，与null比较的条件不成立
+class ConditionEvaluator {
+
+    private final Map<String,Integer> columnIndexMap;
+    private final MimeType[] mimeTypes;
+
+    ConditionEvaluator(Map<String,Integer> columnIndexMap, MimeType[] mimeTypes) {
+        this.columnIndexMap = columnIndexMap;
+        this.mimeTypes = mimeTypes;
+    }
+
+    //没有条件时返回null，表示全部行都匹配
+    Predicate compile(ConditionNode conditionNode){
+        if (conditionNode == null || (conditionNode instanceof ConditionGroup && getConditionNodes((ConditionGroup) conditionNode).length == 0)){
+            return null;
+        }
+        return compileNode(conditionNode);
+    }
+
+    private Predicate compileNode(ConditionNode conditionNode){
+        if (conditionNode instanceof ConditionGroup){
+            ConditionGroup conditionGroup = (ConditionGroup) conditionNode;
+            ConditionNode[] conditionNodes = getConditionNodes(conditionGroup);
+            final Predicate[] predicates = new Predicate[conditionNodes.length];
+            for (int i=0;i<conditionNodes.length;i++){
+                predicates[i] = compileNode(conditionNodes[i]);
+            }
+            //空的and组恒为真，空的or组恒为假
+            if (conditionGroup.getConditionLink() == ConditionLink.Or){
+                return new Predicate() {
+                    @Override
+                    boolean test(Object[] values) {
+                        for (Predicate predicate : predicates){
+                            if (predicate.test(values)){
+                                return true;
+                            }
+                        }
+                        return false;
+                    }
+                };
+            }
+            return new Predicate() {
+                @Override
+                boolean test(Object[] values) {
+                    for (Predicate predicate : predicates){
+                        if (!predicate.test(values)){
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+            };
+        }
+        return compileCondition((Condition) conditionNode);
+    }
+
+    private Predicate compileCondition(final Condition condition){
+        if (condition.getCompare() == null){
+            throw new IllegalArgumentException(String.format("compare type of %s is null",condition.getKey()));
+        }
+        final int columnIndex = getColumnIndex(condition.getKey());
+        final Condition.CompareType compareType = condition.getCompare();
+        switch (compareType){
+            case IsNull:
+                return new Predicate() {
+                    @Override
+                    boolean test(Object[] values) {
+                        return values[columnIndex] == null;
+                    }
+                };
+            case IsNotNull:
+                return new Predicate() {
+                    @Override
+                    boolean test(Object[] values) {
+                        return values[columnIndex] != null;
+                    }
+                };
+            case In:
+            case NotIn:
+                final boolean in = compareType == Condition.CompareType.In;
+                List<Object> list = getValueList(condition);
+                final TreeSet<Object> set = new TreeSet<>(VALUE_COMPARATOR);
+                boolean containNull = false;
+                for (Object object : list){
+                    if (object == null){
+                        containNull = true;
+                    } else {
+                        set.add(toArgument(condition.getKey(),object));
+                    }
+                }
+                //not in的列表包含null时结果为null，条件永远不成立
+                final boolean alwaysFalse = !in && containNull;
+                return new Predicate() {
+                    @Override
+                    boolean test(Object[] values) {
+                        Object value = values[columnIndex];
+                        if (value == null || alwaysFalse){
+                            return false;
+                        }
+                        return set.contains(value) == in;
+                    }
+                };
+            case Between:
+                List<Object> bounds = getValueList(condition);
+                if (bounds.size() != 2){
+                    throw new IllegalArgumentException(String.format("between of %s needs exactly two values",condition.getKey()));
+                }
+                final Object low = toArgument(condition.getKey(),bounds.get(0));
+                final Object high = toArgument(condition.getKey(),bounds.get(1));
+                return new Predicate() {
+                    @Override
+                    boolean test(Object[] values) {
+                        Object value = values[columnIndex];
+                        return value != null && low != null && high != null && compare(value,low) >= 0 && compare(value,high) <= 0;
+                    }
+                };
+            case Like:
+            case Glob:
+                if (condition.getValue() == null){
+                    return Predicate.FALSE;
+                }
+                final Pattern pattern = compareType == Condition.CompareType.Like? likeToPattern(condition.getValue().toString()) : globToPattern(condition.getValue().toString());
+                return new Predicate() {
+                    @Override
+                    boolean test(Object[] values) {
+                        Object value = values[columnIndex];
+                        return value != null && pattern.matcher(toText(value)).matches();
+                    }
+                };
+            default:
+                final Object argument = toArgument(condition.getKey(),condition.getValue());
+                if (argument == null){
+                    //与null比较时=和!=转成is null/is not null，其余比较不成立
+                    if (compareType == Condition.CompareType.EqualTo || compareType == Condition.CompareType.NotEqualTo){
+                        final boolean equal = compareType == Condition.CompareType.EqualTo;
+                        return new Predicate() {
+                            @Override
+                            boolean test(Object[] values) {
+                                return (values[columnIndex] == null) == equal;
+                            }
+                        };
+                    }
+                    return Predicate.FALSE;
+                }
+                return new Predicate() {
+                    @Override
+                    boolean test(Object[] values) {
+                        Object value = values[columnIndex];
+                        if (value == null){
+                            return false;
+                        }
+                        int result = compare(value,argument);
+                        switch (compareType){
+                            case LessThan: return result < 0;
+                            case LessThanOrEqualTo: return result <= 0;
+                            case EqualTo: return result == 0;
+                            case GreaterThanOrEqualTo: return result >= 0;
+                            case GreaterThan: return result > 0;
+                            case NotEqualTo: return result != 0;
+                        }
+                        return false;
+                    }
+                };
+        }
+    }
+
+    int getColumnIndex(String key){
+        Integer columnIndex = columnIndexMap.get(key);
+        if (columnIndex == null){
+            throw new IllegalArgumentException(String.format("no such column: %s",key));
+        }
+        return columnIndex;
+    }
+
+    //与Sqlite绑定条件参数的方式一致，类型匹配时按列声明的类型转换，数字列的文本参数尝试按数字比较
+    Object toArgument(String key,Object value){
+        MimeType mimeType = mimeTypes[getColumnIndex(key)];
+        if (value == null){
+            return null;
+        }
+        switch (mimeType){
+            case Byte:
+            case Short:
+            case Int:
+            case Long:
+            case Float:
+            case Double:
+                if (value instanceof Number){
+                    return toColumnValue(mimeType,value);
+                }
+                if (value instanceof String){
+                    try {
+                        return Long.parseLong(((String) value).trim());
+                    } catch (NumberFormatException e){
+                        try {
+                            return Double.parseDouble(((String) value).trim());
+                        } catch (NumberFormatException ignored){
+                        }
+                    }
+                }
+                return value;
+            case Blob:
+                return value instanceof byte[]? value : value.toString();
+            default:
+                return toColumnValue(mimeType,value);
+        }
+    }
+
+    List<Object> getValueList(Condition condition){
+        Object value = condition.getValue();
+        if (value instanceof Collection){
+            return new ArrayList<>((Collection<?>) value);
+        }
+        if (value != null && value.getClass().isArray()){
+            int length = Array.getLength(value);
+            List<Object> list = new ArrayList<>(length);
+            for (int i=0;i<length;i++){
+                list.add(Array.get(value,i));
+            }
+            return list;
+        }
+        throw new IllegalArgumentException(String.format("%s of %s needs a collection or an array",condition.getCompare(),condition.getKey()));
+    }
+
+    private ConditionNode[] getConditionNodes(ConditionGroup conditionGroup){
+        return conditionGroup.getConditionNodes() == null? new ConditionNode[0] : conditionGroup.getConditionNodes();
+    }
+
+    //保存时的类型与从Sqlite读出的类型一致，如Byte列读出Integer，Boolean列按文本保存
+    static Object toColumnValue(MimeType mimeType,Object value){
+        if (value == null){
+            return null;
+        }
+        switch (mimeType){
+            case Byte:
+            case Int:
+                return ((Number) value).intValue();
+            case Short:
+                return ((Number) value).shortValue();
+            case Long:
+                return ((Number) value).longValue();
+            case Float:
+                return ((Number) value).floatValue();
+            case Double:
+                return ((Number) value).doubleValue();
+            case Boolean:
+                return Boolean.valueOf(value.toString());
+            case Char:
+                return value.toString().charAt(0);
+            case String:
+                return value.toString();
+            case Blob:
+                return ((byte[]) value).clone();
+        }
+        return value;
+    }
+
+    private static String toText(Object value){
+        return value instanceof byte[]? new String((byte[]) value) : value.toString();
+    }
+
+    //Sqlite的like只对ASCII字符忽略大小写，与Pattern.CASE_INSENSITIVE的默认行为一致
+    private static Pattern likeToPattern(String like){
+        StringBuilder stringBuilder = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i=0;i<like.length();i++){
+            char c = like.charAt(i);
+            if (c == '%' || c == '_'){
+                appendLiteral(stringBuilder,literal);
+                stringBuilder.append(c == '%'? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        appendLiteral(stringBuilder,literal);
+        return Pattern.compile(stringBuilder.toString(),Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    }
+
+    //glob区分大小写，支持*、?与[...]，[^...]表示取反
+    private static Pattern globToPattern(String glob){
+        StringBuilder stringBuilder = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i=0;i<glob.length();i++){
+            char c = glob.charAt(i);
+            int end;
+            if (c == '*' || c == '?'){
+                appendLiteral(stringBuilder,literal);
+                stringBuilder.append(c == '*'? ".*" : ".");
+            } else if (c == '[' && (end = glob.indexOf(']',i+2)) > 0){
+                appendLiteral(stringBuilder,literal);
+                String set = glob.substring(i+1,end);
+                boolean negate = set.startsWith("^");
+                if (negate){
+                    set = set.substring(1);
+                }
+                stringBuilder.append(negate? "[^" : "[");
+                for (int j=0;j<set.length();j++){
+                    char setChar = set.charAt(j);
+                    if (setChar == '-' && j > 0 && j < set.length()-1){
+                        stringBuilder.append('-');
+                    } else {
+                        stringBuilder.append("\\x{").append(Integer.toHexString(setChar)).append("}");
+                    }
+                }
+                stringBuilder.append("]");
+                i = end;
+            } else {
+                literal.append(c);
+            }
+        }
+        appendLiteral(stringBuilder,literal);
+        return Pattern.compile(stringBuilder.toString(),Pattern.DOTALL);
+    }
+
+    private static void appendLiteral(StringBuilder stringBuilder,StringBuilder literal){
+        if (literal.length() > 0){
+            stringBuilder.append(Pattern.quote(literal.toString()));
+            literal.setLength(0);
+        }
+    }
+
+    static final Comparator<Object> VALUE_COMPARATOR = new Comparator<Object>() {
+        @Override
+        public int compare(Object o1, Object o2) {
+            return ConditionEvaluator.compare(o1,o2);
+        }
+    };
+
+    static int compare(Object value1,Object value2){
+        int rank1 = getTypeRank(value1);
+        int rank2 = getTypeRank(value2);
+        if (rank1 != rank2){
+            return rank1 < rank2? -1 : 1;
+        }
+        switch (rank1){
+            case 0:
+                return 0;
+            case 1:
+                if (isIntegral(value1) && isIntegral(value2)){
+                    long long1 = ((Number) value1).longValue();
+                    long long2 = ((Number) value2).longValue();
+                    return long1 < long2? -1 : (long1 == long2? 0 : 1);
+                }
+                return Double.compare(((Number) value1).doubleValue(),((Number) value2).doubleValue());
+            case 2:
+                return value1.toString().compareTo(value2.toString());
+            default:
+                byte[] bytes1 = (byte[]) value1;
+                byte[] bytes2 = (byte[]) value2;
+                for (int i=0,length=Math.min(bytes1.length,bytes2.length);i<length;i++){
+                    int result = (bytes1[i] & 0xff)-(bytes2[i] & 0xff);
+                    if (result != 0){
+                        return result;
+                    }
+                }
+                return bytes1.length-bytes2.length;
+        }
+    }
+
+    private static int getTypeRank(Object value){
+        if (value == null){
+            return 0;
+        }
+        if (value instanceof Number){
+            return 1;
+        }
+        if (value instanceof byte[]){
+            return 3;
+        }
+        return 2;
+    }
+
+    private static boolean isIntegral(Object value){
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    abstract static class Predicate {
+
+        static final Predicate FALSE = new Predicate() {
+            @Override
+            boolean test(Object[] values) {
+                return false;
+            }
+        };
+
+        abstract boolean test(Object[] values);
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.xq.litemapping;
+
+public class ConditionGroup implements ConditionNode {
+
+    private ConditionLink conditionLink;
+    private ConditionNode[] conditionNodes;
+
+    public ConditionGroup(ConditionLink conditionLink, ConditionNode... conditionNodes) {
+        this.conditionLink = conditionLink;
+        this.conditionNodes = conditionNodes;
+    }
+
+    public static ConditionGroup and(ConditionNode... conditionNodes){
+        return new ConditionGroup(ConditionLink.And,conditionNodes);
+    }
+
+    public static ConditionGroup or(ConditionNode... conditionNodes){
+        return new ConditionGroup(ConditionLink.Or,conditionNodes);
+    }
+
+    public ConditionLink getConditionLink() {
+        return conditionLink;
+    }
+
+    public void setConditionLink(ConditionLink conditionLink) {
+        this.conditionLink = conditionLink;
+    }
+
+    public ConditionNode[] getConditionNodes() {
+        return conditionNodes;
+    }
+
+    public void setConditionNodes(ConditionNode[] conditionNodes) {
+        this.conditionNodes = conditionNodes;
+    }
+
+}
@@ -0,0 +1,8 @@
+package com.xq.litemapping;
+
+import java.io.Serializable;
+
+//条件树的节点，Condition为叶子节点，ConditionGroup为and/or组合
+public interface ConditionNode extends Serializable {
+
+}
@@ -0,0 +1,10 @@
+package com.xq.litemapping;
+
+public enum ConflictStrategy {
+    //主键冲突时删除旧行后写入新行，未提供的列恢复为默认值
+    Replace,
+    //主键冲突时保留旧行
+    Ignore,
+    //主键冲突时只更新指定的列
+    Merge,
+}
@@ -0,0 +1,164 @@
+package com.xq.litemapping;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//每个实体类只解析一次字段，之后的读写直接使用缓存的Field
+class EntityAccessor<T> {
+
+    private static final Map<Class<?>,EntityAccessor<?>> accessorMap = new HashMap<>();
+
+    static synchronized <T> EntityAccessor<T> of(Class<T> entityClass){
+        EntityAccessor<T> accessor = (EntityAccessor<T>) accessorMap.get(entityClass);
+        if (accessor == null){
+            accessor = new EntityAccessor<>(entityClass);
+            accessorMap.put(entityClass,accessor);
+        }
+        return accessor;
+    }
+
+    private final Constructor<T> constructor;
+    private final Field[] fields;
+    private final Map<String,Integer> fieldIndexMap = new HashMap<>();
+    private final Set<String> columnSet;
+    private final Set<String> columnSetWithoutPrimaryKey;
+    private final int primaryKeyIndex;
+    private final boolean autoincrement;
+
+    private EntityAccessor(Class<T> entityClass) {
+        try {
+            this.constructor = entityClass.getDeclaredConstructor();
+            this.constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(String.format("%s must declare a no-argument constructor",entityClass.getName()),e);
+        }
+        List<Field> fieldList = new ArrayList<>();
+        for (Class<?> cla = entityClass;cla != null && cla != Object.class;cla = cla.getSuperclass()){
+            for (Field field : cla.getDeclaredFields()){
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic() || !LiteMapping.isSupportedType(field.getType())){
+                    continue;
+                }
+                field.setAccessible(true);
+                fieldList.add(field);
+            }
+        }
+        this.fields = fieldList.toArray(new Field[fieldList.size()]);
+        int primaryKeyIndex = -1;
+        Set<String> columnSet = new LinkedHashSet<>();
+        for (int i=0;i<fields.length;i++){
+            fieldIndexMap.put(fields[i].getName(),i);
+            columnSet.add(fields[i].getName());
+            if (fields[i].isAnnotationPresent(PrimaryKey.class)){
+                if (primaryKeyIndex >= 0){
+                    throw new IllegalArgumentException(String.format("%s has more than one field annotated with @PrimaryKey: %s and %s",entityClass.getName(),fields[primaryKeyIndex].getName(),fields[i].getName()));
+                }
+                primaryKeyIndex = i;
+            }
+        }
+        if (primaryKeyIndex < 0){
+            throw new IllegalArgumentException(String.format("%s has no field annotated with @PrimaryKey",entityClass.getName()));
+        }
+        this.primaryKeyIndex = primaryKeyIndex;
+        this.autoincrement = fields[primaryKeyIndex].getAnnotation(PrimaryKey.class).autoincrement();
+        this.columnSet = Collections.unmodifiableSet(columnSet);
+        Set<String> columnSetWithoutPrimaryKey = new LinkedHashSet<>(columnSet);
+        columnSetWithoutPrimaryKey.remove(fields[primaryKeyIndex].getName());
+        this.columnSetWithoutPrimaryKey = Collections.unmodifiableSet(columnSetWithoutPrimaryKey);
+    }
+
+    //分开捕获，合并的catch会编译为API 19才有的ReflectiveOperationException，在更低版本上校验失败
+    T newInstance(){
+        try {
+            return constructor.newInstance();
+        } catch (InstantiationException e) {
+            throw new IllegalStateException(e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    String getPrimaryKeyName(){
+        return fields[primaryKeyIndex].getName();
+    }
+
+    Class<?> getPrimaryKeyType(){
+        return fields[primaryKeyIndex].getType();
+    }
+
+    boolean isAutoincrement(){
+        return autoincrement;
+    }
+
+    Map<String,Class<?>> getOtherKeyMap(){
+        Map<String,Class<?>> otherKeyMap = new LinkedHashMap<>();
+        for (int i=0;i<fields.length;i++){
+            if (i != primaryKeyIndex){
+                otherKeyMap.put(fields[i].getName(),fields[i].getType());
+            }
+        }
+        return otherKeyMap;
+    }
+
+    int getFieldIndex(String name){
+        Integer index = fieldIndexMap.get(name);
+        return index == null? -1 : index;
+    }
+
+    Field getField(int index){
+        return fields[index];
+    }
+
+    Object getValue(T entity,int index){
+        try {
+            return fields[index].get(entity);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    Object getId(T entity){
+        return getValue(entity,primaryKeyIndex);
+    }
+
+    //自增主键为null或0时视为尚未分配
+    boolean hasId(T entity){
+        Object id = getId(entity);
+        return id != null && !(autoincrement && id instanceof Number && ((Number) id).longValue() == 0);
+    }
+
+    void setId(T entity,long id){
+        Field field = fields[primaryKeyIndex];
+        try {
+            Class<?> type = field.getType();
+            if (type == long.class){
+                field.setLong(entity,id);
+            } else if (type == int.class){
+                field.setInt(entity,(int) id);
+            } else if (type == Long.class){
+                field.set(entity,id);
+            } else if (type == Integer.class){
+                field.set(entity,(int) id);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    Set<String> getColumnSet(boolean includePrimaryKey){
+        return includePrimaryKey? columnSet : columnSetWithoutPrimaryKey;
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.xq.litemapping;
+
+import android.content.Context;
+import android.util.Pair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class EntityMapping<T> {
+
+    private final EntityAccessor<T> accessor;
+    private final LiteMapping liteMapping;
+
+    public EntityMapping(Context context, String path, Class<T> entityClass){
+        this(context,LiteMapping.SqliteHelperPool.getDefault(),path,entityClass,new ArrayList<Index>());
+    }
+
+    //列名与类型取自实体类的字段，主键由@PrimaryKey标注，static与transient字段不参与映射
+    public EntityMapping(Context context, LiteMapping.SqliteHelperPool sqliteHelperPool, String path, Class<T> entityClass, List<Index> indexList){
+        this.accessor = EntityAccessor.of(entityClass);
+        this.liteMapping = new LiteMapping(context,sqliteHelperPool,path,accessor.isAutoincrement(),new Pair<String,Class<?>>(accessor.getPrimaryKeyName(),accessor.getPrimaryKeyType()),accessor.getOtherKeyMap(),indexList);
+    }
+
+    public LiteMapping getLiteMapping() {
+        return liteMapping;
+    }
+
+    //自增主键未赋值时由数据库生成，并回写到对象中
+    public long insert(T entity){
+        boolean hasId = accessor.hasId(entity);
+        long rowId = liteMapping.insert(new EntityRow<>(accessor,entity,hasId));
+        if (!hasId && rowId >= 0){
+            accessor.setId(entity,rowId);
+        }
+        return rowId;
+    }
+
+    public long[] insertAll(List<T> entities){
+        List<Map<String,?>> rows = new ArrayList<>(entities.size());
+        boolean[] hasIds = new boolean[entities.size()];
+        for (int i=0;i<entities.size();i++){
+            hasIds[i] = accessor.hasId(entities.get(i));
+            rows.add(new EntityRow<>(accessor,entities.get(i),hasIds[i]));
+        }
+        List<Long> idList = liteMapping.insertAll(rows);
+        long[] ids = new long[idList.size()];
+        for (int i=0;i<ids.length;i++){
+            ids[i] = idList.get(i);
+            if (!hasIds[i] && ids[i] >= 0){
+                accessor.setId(entities.get(i),ids[i]);
+            }
+        }
+        return ids;
+    }
+
+    public boolean update(T entity){
+        return liteMapping.update(accessor.getId(entity),new EntityRow<>(accessor,entity,false));
+    }
+
+    public int upsert(T entity,ConflictStrategy conflictStrategy,String... mergeColumns){
+        return liteMapping.upsert(new EntityRow<>(accessor,entity,accessor.hasId(entity)),conflictStrategy,mergeColumns);
+    }
+
+    public boolean delete(T entity){
+        return liteMapping.delete(accessor.getId(entity));
+    }
+
+    public boolean deleteById(Object id){
+        return liteMapping.delete(id);
+    }
+
+    public T queryById(Object id){
+        return liteMapping.queryEntityById(id,accessor);
+    }
+
+    public List<T> query(){
+        return query(new QueryArgument());
+    }
+
+    public List<T> query(QueryArgument queryArgument){
+        return liteMapping.queryEntities(queryArgument,accessor);
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.xq.litemapping;
+
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+//把实体对象包装成只读的Map视图交给写入路径，按列名直接从字段取值，不复制数据
+class EntityRow<T> extends AbstractMap<String,Object> {
+
+    private final EntityAccessor<T> accessor;
+    private final T entity;
+    private final Set<String> columnSet;
+
+    EntityRow(EntityAccessor<T> accessor, T entity, boolean includePrimaryKey) {
+        this.accessor = accessor;
+        this.entity = entity;
+        this.columnSet = accessor.getColumnSet(includePrimaryKey);
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (!columnSet.contains(key)){
+            return null;
+        }
+        return accessor.getValue(entity,accessor.getFieldIndex((String) key));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return columnSet.contains(key);
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return columnSet;
+    }
+
+    @Override
+    public int size() {
+        return columnSet.size();
+    }
+
+    @Override
+    public Set<Entry<String,Object>> entrySet() {
+        Map<String,Object> map = new LinkedHashMap<>(columnSet.size());
+        for (String key : columnSet){
+            map.put(key,get(key));
+        }
+        return map.entrySet();
+    }
+
+}
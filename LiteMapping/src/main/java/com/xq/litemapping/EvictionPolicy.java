@@ -0,0 +1,8 @@
+package com.xq.litemapping;
+
+public enum EvictionPolicy {
+    //优先淘汰最久没有被读取的行
+    Lru,
+    //优先淘汰读取次数最少的行，次数相同时淘汰最久没有被读取的行
+    Lfu,
+}
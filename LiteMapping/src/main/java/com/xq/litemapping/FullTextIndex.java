@@ -0,0 +1,87 @@
+package com.xq.litemapping;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+//为String列建立FTS4全文索引，索引表以原表为外部内容表，只保存分词结果，由触发器与原表保持同步
+public class FullTextIndex implements Serializable {
+
+    static final String TABLE_SUFFIX = "_fts";
+
+    private final Tokenizer tokenizer;
+    private final String[] columns;
+
+    public FullTextIndex(String... columns) {
+        this(Tokenizer.Simple,columns);
+    }
+
+    public FullTextIndex(Tokenizer tokenizer, String... columns) {
+        if (columns == null || columns.length == 0){
+            throw new IllegalArgumentException("full text index must contain at least one column");
+        }
+        this.tokenizer = tokenizer == null? Tokenizer.Simple : tokenizer;
+        this.columns = columns.clone();
+    }
+
+    public Tokenizer getTokenizer() {
+        return tokenizer;
+    }
+
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    static String getTableName(String tableName){
+        return tableName+TABLE_SUFFIX;
+    }
+
+    static String[] getTriggerNames(String tableName){
+        String ftsTableName = getTableName(tableName);
+        return new String[]{ftsTableName+"_bu",ftsTableName+"_bd",ftsTableName+"_au",ftsTableName+"_ai"};
+    }
+
+    String getCreateSQL(String tableName){
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("content=\"").append(tableName).append("\"");
+        for (String column : columns){
+            stringBuilder.append(",").append(column);
+        }
+        if (tokenizer != Tokenizer.Simple){
+            stringBuilder.append(",tokenize=").append(tokenizer.name().toLowerCase());
+        }
+        return String.format("create virtual table if not exists %s using fts4(%s)",getTableName(tableName),stringBuilder);
+    }
+
+    //外部内容表删除索引时需要读取旧的列值，所以删除放在before触发器中
+    List<String> getTriggerSQLs(String tableName,String primaryKeyName){
+        String ftsTableName = getTableName(tableName);
+        String[] triggerNames = getTriggerNames(tableName);
+        StringBuilder columnBuilder = new StringBuilder();
+        StringBuilder newValueBuilder = new StringBuilder();
+        for (String column : columns){
+            columnBuilder.append(",").append(column);
+            newValueBuilder.append(",new.").append(column);
+        }
+        //主键为integer时即为rowid，修改主键后需要按新的docid重新索引
+        String updateColumns = primaryKeyName+columnBuilder;
+        String insert = String.format("insert into %s(docid%s) values(new.rowid%s);",ftsTableName,columnBuilder,newValueBuilder);
+        String delete = String.format("delete from %s where docid = old.rowid;",ftsTableName);
+        List<String> list = new ArrayList<>(4);
+        list.add(String.format("create trigger if not exists %s before update of %s on %s begin %s end",triggerNames[0],updateColumns,tableName,delete));
+        list.add(String.format("create trigger if not exists %s before delete on %s begin %s end",triggerNames[1],tableName,delete));
+        list.add(String.format("create trigger if not exists %s after update of %s on %s begin %s end",triggerNames[2],updateColumns,tableName,insert));
+        list.add(String.format("create trigger if not exists %s after insert on %s begin %s end",triggerNames[3],tableName,insert));
+        return list;
+    }
+
+    public enum Tokenizer{
+        //按ASCII字母与数字切分，只对ASCII字母忽略大小写
+        Simple,
+        //在Simple的基础上提取英文词干
+        Porter,
+        //按Unicode规则切分并忽略大小写与变音符号，需要Android 5.0(Sqlite 3.8)及以上
+        Unicode61,
+    }
+
+}
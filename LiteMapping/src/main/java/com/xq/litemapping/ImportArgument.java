@@ -0,0 +1,51 @@
+package com.xq.litemapping;
+
+public class ImportArgument {
+
+    private int chunkSize = 1000;
+    private long skipRows;
+    private boolean collectIds;
+    private ImportListener importListener;
+
+    //每chunkSize行提交一次事务，失败时只回滚当前分块
+    public ImportArgument setChunkSize(int chunkSize) {
+        if (chunkSize <= 0){
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    //跳过数据源开头的行，传入上次ImportResult.getCommittedRows()即可从失败的分块继续导入
+    public ImportArgument setSkipRows(long skipRows) {
+        this.skipRows = skipRows;
+        return this;
+    }
+
+    //为true时ImportResult.getIds()返回每一行的id，大量数据时只使用id范围可以省下这部分内存
+    public ImportArgument setCollectIds(boolean collectIds) {
+        this.collectIds = collectIds;
+        return this;
+    }
+
+    public ImportArgument setImportListener(ImportListener importListener) {
+        this.importListener = importListener;
+        return this;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public long getSkipRows() {
+        return skipRows;
+    }
+
+    public boolean isCollectIds() {
+        return collectIds;
+    }
+
+    public ImportListener getImportListener() {
+        return importListener;
+    }
+}
@@ -0,0 +1,8 @@
+package com.xq.litemapping;
+
+public interface ImportListener {
+
+    //每个分块提交后在导入线程回调，committedRows包含setSkipRows跳过的行
+    void onProgress(long committedRows);
+
+}
@@ -0,0 +1,60 @@
+package com.xq.litemapping;
+
+//只包含已提交分块的信息，失败分块中的行已回滚
+public class ImportResult {
+
+    private final long committedRows;
+    private final long importedRows;
+    private final long[] ids;
+    private final long firstId;
+    private final long lastId;
+    private final boolean contiguous;
+    private final Exception error;
+
+    ImportResult(long committedRows, long importedRows, long[] ids, long firstId, long lastId, boolean contiguous, Exception error) {
+        this.committedRows = committedRows;
+        this.importedRows = importedRows;
+        this.ids = ids;
+        this.firstId = firstId;
+        this.lastId = lastId;
+        this.contiguous = contiguous;
+        this.error = error;
+    }
+
+    //从数据源开头算起已提交的行数(包含跳过的行)，用于ImportArgument.setSkipRows续传
+    public long getCommittedRows() {
+        return committedRows;
+    }
+
+    //本次导入写入的行数
+    public long getImportedRows() {
+        return importedRows;
+    }
+
+    //未开启ImportArgument.setCollectIds时返回null
+    public long[] getIds() {
+        return ids;
+    }
+
+    //没有写入任何行时返回-1
+    public long getFirstId() {
+        return firstId;
+    }
+
+    public long getLastId() {
+        return lastId;
+    }
+
+    //为true时本次写入的id恰好是[firstId,lastId]
+    public boolean isContiguous() {
+        return contiguous;
+    }
+
+    public Exception getError() {
+        return error;
+    }
+
+    public boolean isComplete() {
+        return error == null;
+    }
+}
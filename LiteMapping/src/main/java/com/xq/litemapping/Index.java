@@ -0,0 +1,56 @@
+package com.xq.litemapping;
+
+import java.io.Serializable;
+
+public class Index implements Serializable {
+
+    static final String NAME_PREFIX = "index_";
+    static final String UNIQUE_NAME_PREFIX = "unique_index_";
+
+    private final boolean unique;
+    private final String[] columns;
+
+    public Index(String... columns) {
+        this(false,columns);
+    }
+
+    public Index(boolean unique, String... columns) {
+        if (columns == null || columns.length == 0){
+            throw new IllegalArgumentException("index must contain at least one column");
+        }
+        this.unique = unique;
+        this.columns = columns.clone();
+    }
+
+    public boolean isUnique() {
+        return unique;
+    }
+
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    //索引名包含表名、唯一性与列顺序，定义变化时名称随之变化，便于按名称增删
+    String getName(String tableName){
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append(unique? UNIQUE_NAME_PREFIX : NAME_PREFIX);
+        stringBuilder.append(tableName);
+        for (String column : columns){
+            stringBuilder.append("_");
+            stringBuilder.append(column);
+        }
+        return stringBuilder.toString();
+    }
+
+    String getCreateSQL(String tableName){
+        StringBuilder stringBuilder = new StringBuilder();
+        for (int i=0;i<columns.length;i++){
+            if (i > 0){
+                stringBuilder.append(",");
+            }
+            stringBuilder.append(columns[i]);
+        }
+        return String.format("create %sindex if not exists %s on %s (%s)",unique? "unique " : "",getName(tableName),tableName,stringBuilder);
+    }
+
+}
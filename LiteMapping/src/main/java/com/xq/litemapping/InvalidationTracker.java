@@ -0,0 +1,70 @@
+package com.xq.litemapping;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//同一数据库文件共享一个实例，写操作只标记表已变化，事务提交后再统一通知观察者
+class InvalidationTracker {
+
+    private final Map<String,List<Runnable>> observerMap = new HashMap<>();
+    private final Set<String> changedTables = new LinkedHashSet<>();
+
+    void addObserver(String tableName,Runnable observer){
+        synchronized (observerMap){
+            List<Runnable> observers = observerMap.get(tableName);
+            if (observers == null){
+                observers = new ArrayList<>();
+                observerMap.put(tableName,observers);
+            }
+            observers.add(observer);
+        }
+    }
+
+    void removeObserver(String tableName,Runnable observer){
+        synchronized (observerMap){
+            List<Runnable> observers = observerMap.get(tableName);
+            if (observers != null && observers.remove(observer) && observers.isEmpty()){
+                observerMap.remove(tableName);
+            }
+        }
+    }
+
+    void markChanged(String tableName){
+        synchronized (observerMap){
+            if (!observerMap.containsKey(tableName)){
+                return;
+            }
+        }
+        synchronized (changedTables){
+            changedTables.add(tableName);
+        }
+    }
+
+    void flush(){
+        List<String> tableNames;
+        synchronized (changedTables){
+            if (changedTables.isEmpty()){
+                return;
+            }
+            tableNames = new ArrayList<>(changedTables);
+            changedTables.clear();
+        }
+        List<Runnable> observers = new ArrayList<>();
+        synchronized (observerMap){
+            for (String tableName : tableNames){
+                List<Runnable> list = observerMap.get(tableName);
+                if (list != null){
+                    observers.addAll(list);
+                }
+            }
+        }
+        for (Runnable observer : observers){
+            observer.run();
+        }
+    }
+
+}
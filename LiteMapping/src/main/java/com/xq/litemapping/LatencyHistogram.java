@@ -0,0 +1,82 @@
+package com.xq.litemapping;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//按2的幂划分微秒级的桶，第i个桶记录[2^(i-1),2^i)微秒的耗时，记录时不加锁
+public class LatencyHistogram {
+
+    private static final int BUCKET_COUNT = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos){
+        long micros = nanos/1000;
+        int bucket = micros <= 0? 0 : Math.min(BUCKET_COUNT-1,64-Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max,nanos)){
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    public long getMeanNanos() {
+        long count = getCount();
+        return count == 0? 0 : getTotalNanos()/count;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    //返回所在桶的上界，percentile取值0~100
+    public long getPercentileNanos(double percentile){
+        long count = getCount();
+        if (count == 0){
+            return 0;
+        }
+        long target = (long) Math.ceil(count*percentile/100);
+        long seen = 0;
+        for (int i=0;i<BUCKET_COUNT;i++){
+            seen += buckets.get(i);
+            if (seen >= target){
+                return Math.min(getBucketUpperBoundNanos(i),getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    public int getBucketCount() {
+        return BUCKET_COUNT;
+    }
+
+    public long getBucketUpperBoundNanos(int bucket){
+        return bucket == BUCKET_COUNT-1? Long.MAX_VALUE : (1L << bucket)*1000;
+    }
+
+    public long getBucketValue(int bucket){
+        return buckets.get(bucket);
+    }
+
+    public void reset(){
+        for (int i=0;i<BUCKET_COUNT;i++){
+            buckets.set(i,0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+}
@@ -1,23 +1,64 @@
 package com.xq.litemapping;
 
 import static android.database.Cursor.FIELD_TYPE_NULL;
+import static android.database.Cursor.FIELD_TYPE_STRING;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteQuery;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Base64;
 import android.util.Pair;
 
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.Set;
-
-public class LiteMapping {
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LiteMapping implements StorageEngine {
 
     private final String dbName;
     private final String tableName;
@@ -26,8 +67,36 @@ public class LiteMapping {
 
     private final Map<String,Class<?>> allKeyMap = new LinkedHashMap<>();
 
+    private final FullTextIndex fullTextIndex;
+
     private final SQLiteOpenHelper innerHelper;
 
+    private final ConditionCompiler conditionCompiler = new ConditionCompiler();
+
+    private final InvalidationTracker invalidationTracker;
+
+    private final ConditionCompiler.Selection idSelection;
+
+    private volatile OperationListener operationListener;
+    private volatile long slowQueryThresholdNanos = -1;
+    private final ConcurrentMap<String,LatencyHistogram> latencyHistogramMap = new ConcurrentHashMap<>();
+
+    private static final long DEFAULT_OBSERVE_DEBOUNCE_MILLIS = 50;
+
+    private volatile WriteBehindQueue writeBehindQueue;
+    private volatile boolean readPendingWrites;
+
+    private final RowCacheState rowCacheState;
+
+    private final BlobStore blobStore;
+    private final Set<String> blobColumns = new LinkedHashSet<>();
+    private volatile int externalBlobThreshold = -1;
+
+    private static ScheduledExecutorService cleanupExecutor;
+    //超过上限后不再记录新的行，直到下一次清理把记录写入数据库
+    private static final int MAX_ACCESS_RECORDS = 10000;
+    private final CacheState cacheState;
+
     public LiteMapping(Context context, String path, String autoPrimaryKeyName, Map<String,Class<?>> otherKeyMap){
         this(context,path,true,new Pair<String,Class<?>>(autoPrimaryKeyName,Long.class),otherKeyMap);
     }
@@ -37,10 +106,18 @@ public class LiteMapping {
     }
 
     public LiteMapping(Context context, String path, boolean autoincrement, Pair<String,Class<?>> primaryKeyPair, Map<String,Class<?>> otherKeyMap){
-        this(context,new SqliteHelperPool(),path,autoincrement,primaryKeyPair,otherKeyMap);
+        this(context,SqliteHelperPool.getDefault(),path,autoincrement,primaryKeyPair,otherKeyMap);
     }
 
     public LiteMapping(Context context, SqliteHelperPool sqliteHelperPool, String path, boolean autoincrement, Pair<String,Class<?>> primaryKeyPair, Map<String,Class<?>> otherKeyMap){
+        this(context,sqliteHelperPool,path,autoincrement,primaryKeyPair,otherKeyMap,new ArrayList<Index>());
+    }
+
+    public LiteMapping(Context context, SqliteHelperPool sqliteHelperPool, String path, boolean autoincrement, Pair<String,Class<?>> primaryKeyPair, Map<String,Class<?>> otherKeyMap, List<Index> indexList){
+        this(context,sqliteHelperPool,path,autoincrement,primaryKeyPair,otherKeyMap,indexList,null);
+    }
+
+    public LiteMapping(Context context, SqliteHelperPool sqliteHelperPool, String path, boolean autoincrement, Pair<String,Class<?>> primaryKeyPair, Map<String,Class<?>> otherKeyMap, List<Index> indexList, FullTextIndex fullTextIndex){
 
         String[] array = path.split("/");
         this.dbName = array[0];
@@ -51,502 +128,3172 @@ public class LiteMapping {
         this.allKeyMap.put(primaryKeyPair.first,primaryKeyPair.second);
         this.allKeyMap.putAll(otherKeyMap);
 
-        this.innerHelper = sqliteHelperPool.getOrCreateHelper(context,dbName,tableName,autoincrement,primaryKeyPair,otherKeyMap);
+        for (Index index : indexList){
+            for (String column : index.getColumns()){
+                if (!allKeyMap.containsKey(column)){
+                    throw new IllegalArgumentException(String.format("index column %s is not declared in table %s",column,tableName));
+                }
+            }
+        }
+        if (fullTextIndex != null){
+            for (String column : fullTextIndex.getColumns()){
+                if (allKeyMap.get(column) != String.class){
+                    throw new IllegalArgumentException(String.format("full text index column %s is not a String column in table %s",column,tableName));
+                }
+            }
+        }
+        this.fullTextIndex = fullTextIndex;
+
+        InnerHelper helper = sqliteHelperPool.getOrCreateHelper(context,dbName,tableName,autoincrement,primaryKeyPair,otherKeyMap,indexList,fullTextIndex);
+        this.innerHelper = helper;
+        this.invalidationTracker = helper.invalidationTracker;
+        this.cacheState = helper.getCacheState(tableName);
+        this.rowCacheState = helper.getRowCacheState(tableName);
+        this.idSelection = new ConditionCompiler.Selection(String.format("%s = ?",primaryKeyName),new String[]{primaryKeyName},new Object[1]);
+
+        //主键即使是byte[]也始终保存在行中
+        for (Map.Entry<String,Class<?>> entry : allKeyMap.entrySet()){
+            if (getMimeType(entry.getValue()) == MimeType.Blob && !entry.getKey().equals(primaryKeyName)){
+                blobColumns.add(entry.getKey());
+            }
+        }
+        this.blobStore = helper.getBlobStore(tableName,new File(context.getDatabasePath(dbName+".db").getParentFile(),dbName+".blobs"+File.separator+tableName));
+    }
+
+    //每个操作结束后回调，包含耗时、行数与SQL
+    public void setOperationListener(OperationListener operationListener) {
+        this.operationListener = operationListener;
+    }
+
+    //耗时超过阈值的操作标记为慢操作，查询会附带EXPLAIN QUERY PLAN的结果，小于0时关闭
+    public void setSlowQueryThreshold(long thresholdMillis) {
+        this.slowQueryThresholdNanos = thresholdMillis < 0? -1 : thresholdMillis*1000000;
+    }
+
+    //key为操作名，与OperationEvent.getOperation()一致
+    public Map<String,LatencyHistogram> getLatencyHistograms() {
+        return Collections.unmodifiableMap(latencyHistogramMap);
+    }
+
+    private OperationEvent startOperation(String operation){
+        return new OperationEvent(operation,dbName,tableName);
+    }
+
+    private void finishOperation(OperationEvent operationEvent){
+        long latencyNanos = operationEvent.finish();
+        LatencyHistogram latencyHistogram = latencyHistogramMap.get(operationEvent.getOperation());
+        if (latencyHistogram == null){
+            latencyHistogramMap.putIfAbsent(operationEvent.getOperation(),new LatencyHistogram());
+            latencyHistogram = latencyHistogramMap.get(operationEvent.getOperation());
+        }
+        latencyHistogram.record(latencyNanos);
+        long threshold = slowQueryThresholdNanos;
+        if (threshold >= 0 && latencyNanos >= threshold){
+            operationEvent.markSlow(operationEvent.getQueryShape() == null? null : explainQueryPlan(operationEvent.getSql()));
+        }
+        //在finally中调用，监听抛出的异常不能覆盖操作本身的结果或异常，只打印
+        OperationListener listener = operationListener;
+        if (listener != null){
+            try {
+                listener.onOperation(operationEvent);
+            } catch (RuntimeException e){
+                e.printStackTrace();
+            }
+        }
+    }
+
+    //批量方法内部捕获的异常通过OperationEvent上报，没有设置监听时仍然打印
+    //operationEvent为null时(异步写入)只打印
+    private void reportError(OperationEvent operationEvent,Exception e){
+        if (operationEvent != null){
+            operationEvent.fail(e);
+        }
+        if (operationEvent == null || operationListener == null){
+            e.printStackTrace();
+        }
+    }
+
+    //参数未绑定时按null处理，不影响索引的选择
+    private String explainQueryPlan(String sql){
+        Cursor cursor = null;
+        try {
+            cursor = innerHelper.getReadableDatabase().rawQuery("explain query plan "+sql,null);
+            int detailIndex = cursor.getColumnIndex("detail");
+            StringBuilder stringBuilder = new StringBuilder();
+            while (cursor.moveToNext()){
+                if (stringBuilder.length() > 0){
+                    stringBuilder.append("\n");
+                }
+                stringBuilder.append(cursor.getString(detailIndex));
+            }
+            return stringBuilder.toString();
+        } catch (SQLException e){
+            return null;
+        } finally {
+            if (cursor != null){
+                cursor.close();
+            }
+        }
     }
 
     public boolean insertById(Object id){
         return insertById(id,new LinkedHashMap<String,Object>());
     }
 
+    @Override
     public boolean insertById(Object id,Map<String,?> columns){
-        Map<String,Object> columnsWithId = new LinkedHashMap<>(columns);
-        columnsWithId.put(primaryKeyName,id);
-        return insert(columnsWithId) >= 0;
+        OperationEvent operationEvent = startOperation("insertById");
+        try {
+            awaitPendingWrites();
+            boolean result = executeInsert(innerHelper.getWritableDatabase(),id,columns,operationEvent) >= 0;
+            operationEvent.setRowCount(result? 1 : 0);
+            return result;
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
+        } finally {
+            finishOperation(operationEvent);
+        }
     }
 
+    @Override
     public long insert(Map<String,?> columns){
-        //
-        ContentValues contentValues = new ContentValues();
-        mapToContentValues(columns,contentValues);
-        //
-        return innerHelper.getWritableDatabase().insert(tableName,null,contentValues);
+        OperationEvent operationEvent = startOperation("insert");
+        try {
+            awaitPendingWrites();
+            long result = executeInsert(innerHelper.getWritableDatabase(),columns,operationEvent);
+            operationEvent.setRowCount(result >= 0? 1 : 0);
+            return result;
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
+        } finally {
+            finishOperation(operationEvent);
+        }
     }
 
     public List<Boolean> insertAllById(List<?> ids){
+        OperationEvent operationEvent = startOperation("insertAllById");
+        awaitPendingWrites();
         //
         SQLiteDatabase db = innerHelper.getWritableDatabase();
         //
         try {
             List<Boolean> successList = new ArrayList<>(ids.size());
-            db.beginTransaction();
+            beginTransaction(db);
+            Map<String,?> columns = Collections.emptyMap();
             for (Object id : ids) {
-                ContentValues contentValues = new ContentValues();
-                putToContentValue(primaryKeyName,id,contentValues);
-                successList.add(db.insert(tableName,null,contentValues) >= 0);
+                successList.add(executeInsert(db,id,columns,operationEvent) >= 0);
             }
             db.setTransactionSuccessful();
+            operationEvent.setRowCount(countSuccess(successList));
             return successList;
         } catch (Exception e) {
-            e.printStackTrace();
+            reportError(operationEvent,e);
             return new ArrayList<>();
         } finally {
-            db.endTransaction();
+            endTransaction(db);
+            finishOperation(operationEvent);
         }
     }
 
     public List<Boolean> insertAllById(Map<?,Map<String,?>> columnsIdMap){
+        OperationEvent operationEvent = startOperation("insertAllById");
+        awaitPendingWrites();
         //
         SQLiteDatabase db = innerHelper.getWritableDatabase();
         //
         try {
             List<Boolean> successList = new ArrayList<>(columnsIdMap.size());
-            db.beginTransaction();
+            beginTransaction(db);
             for (Map.Entry<?,Map<String,?>> entry: columnsIdMap.entrySet()) {
                 //
                 Object id = entry.getKey();
                 Map<String,?> columns = entry.getValue();
                 //
-                ContentValues contentValues = new ContentValues();
-                putToContentValue(primaryKeyName,id,contentValues);
-                mapToContentValues(columns,contentValues);
-                successList.add(db.insert(tableName,null,contentValues) >= 0);
+                successList.add(executeInsert(db,id,columns,operationEvent) >= 0);
             }
             db.setTransactionSuccessful();
+            operationEvent.setRowCount(countSuccess(successList));
             return successList;
         } catch (Exception e) {
-            e.printStackTrace();
+            reportError(operationEvent,e);
             return new ArrayList<>();
         } finally {
-            db.endTransaction();
+            endTransaction(db);
+            finishOperation(operationEvent);
         }
     }
 
     public List<Boolean> insertAllById(List<?> ids,Map<String,?> columns){
+        OperationEvent operationEvent = startOperation("insertAllById");
+        awaitPendingWrites();
         //
         SQLiteDatabase db = innerHelper.getWritableDatabase();
         //
         try {
             List<Boolean> successList = new ArrayList<>(ids.size());
-            db.beginTransaction();
+            beginTransaction(db);
             for (Object id : ids) {
-                ContentValues contentValues = new ContentValues();
-                putToContentValue(primaryKeyName,id,contentValues);
-                mapToContentValues(columns,contentValues);
-                successList.add(db.insert(tableName,null,contentValues) >= 0);
+                successList.add(executeInsert(db,id,columns,operationEvent) >= 0);
             }
             db.setTransactionSuccessful();
+            operationEvent.setRowCount(countSuccess(successList));
             return successList;
         } catch (Exception e) {
-            e.printStackTrace();
+            reportError(operationEvent,e);
             return new ArrayList<>();
         } finally {
-            db.endTransaction();
+            endTransaction(db);
+            finishOperation(operationEvent);
         }
     }
 
     public List<Long> insertAll(List<Map<String,?>> columnsList){
+        OperationEvent operationEvent = startOperation("insertAll");
+        awaitPendingWrites();
         //
         SQLiteDatabase db = innerHelper.getWritableDatabase();
         //
         try {
             List<Long> idList = new ArrayList<>(columnsList.size());
-            db.beginTransaction();
+            beginTransaction(db);
             for (Map<String,?> column : columnsList) {
-                ContentValues contentValues = new ContentValues();
-                mapToContentValues(column,contentValues);
-                idList.add(db.insert(tableName,null,contentValues));
+                idList.add(executeInsert(db,column,operationEvent));
             }
             db.setTransactionSuccessful();
+            operationEvent.setRowCount(countInserted(idList));
             return idList;
         } catch (Exception e) {
-            e.printStackTrace();
+            reportError(operationEvent,e);
             return new ArrayList<>();
         } finally {
-            db.endTransaction();
+            endTransaction(db);
+            finishOperation(operationEvent);
         }
     }
 
     public List<Long> batchInsert(int count,Map<String,?> columns){
+        OperationEvent operationEvent = startOperation("batchInsert");
+        awaitPendingWrites();
         //
         SQLiteDatabase db = innerHelper.getWritableDatabase();
         //
         try {
             List<Long> idList = new ArrayList<>(count);
-            db.beginTransaction();
+            beginTransaction(db);
             for (int i=0;i<count;i++) {
-                ContentValues contentValues = new ContentValues();
-                mapToContentValues(columns,contentValues);
-                idList.add(db.insert(tableName,null,contentValues));
+                idList.add(executeInsert(db,columns,operationEvent));
             }
             db.setTransactionSuccessful();
+            operationEvent.setRowCount(countInserted(idList));
             return idList;
         } catch (Exception e) {
-            e.printStackTrace();
+            reportError(operationEvent,e);
             return new ArrayList<>();
         } finally {
-            db.endTransaction();
+            endTransaction(db);
+            finishOperation(operationEvent);
         }
     }
 
-    public boolean delete(Object id){
-        return innerHelper.getWritableDatabase().delete(tableName,String.format("%s = ?", primaryKeyName),objArrayToStringArray(new Object[]{id})) == 1;
+    public int upsert(Map<String,?> columns){
+        return upsert(columns,ConflictStrategy.Merge);
     }
 
-    public List<Boolean> deleteAll(List<?> ids){
+    public int upsert(Map<String,?> columns,ConflictStrategy conflictStrategy,String... mergeColumns){
+        OperationEvent operationEvent = startOperation("upsert");
+        try {
+            awaitPendingWrites();
+            SQLiteDatabase db = innerHelper.getWritableDatabase();
+            Set<String> blobReferences = queryUpsertBlobReferences(db,columns,conflictStrategy,mergeColumns);
+            int result = executeUpsert(db,columns,conflictStrategy,mergeColumns,operationEvent);
+            releaseBlobs(db,blobReferences);
+            operationEvent.setRowCount(result == UpsertOutcome.INSERTED || result == UpsertOutcome.UPDATED? 1 : 0);
+            return result;
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
+        } finally {
+            finishOperation(operationEvent);
+        }
+    }
+
+    //返回值与columnsList一一对应，取值见UpsertOutcome
+    public int[] upsertAll(List<Map<String,?>> columnsList,ConflictStrategy conflictStrategy,String... mergeColumns){
+        OperationEvent operationEvent = startOperation("upsertAll");
+        awaitPendingWrites();
         //
         SQLiteDatabase db = innerHelper.getWritableDatabase();
         //
+        Set<String> blobReferences = new HashSet<>();
         try {
-            List<Boolean> successList = new ArrayList<>(ids.size());
-            db.beginTransaction();
-            for (Object id : ids) {
-                successList.add(db.delete(tableName,String.format("%s = ?", primaryKeyName),objArrayToStringArray(new Object[]{id})) == 1);
+            int[] outcomes = new int[columnsList.size()];
+            beginTransaction(db);
+            for (int i=0;i<outcomes.length;i++) {
+                blobReferences.addAll(queryUpsertBlobReferences(db,columnsList.get(i),conflictStrategy,mergeColumns));
+                outcomes[i] = executeUpsert(db,columnsList.get(i),conflictStrategy,mergeColumns,operationEvent);
             }
             db.setTransactionSuccessful();
-            return successList;
+            int rowCount = 0;
+            for (int outcome : outcomes){
+                if (outcome == UpsertOutcome.INSERTED || outcome == UpsertOutcome.UPDATED){
+                    rowCount++;
+                }
+            }
+            operationEvent.setRowCount(rowCount);
+            return outcomes;
         } catch (Exception e) {
-            e.printStackTrace();
-            return new ArrayList<>();
+            reportError(operationEvent,e);
+            return new int[0];
         } finally {
-            db.endTransaction();
+            endTransaction(db);
+            releaseBlobs(db,blobReferences);
+            finishOperation(operationEvent);
         }
     }
 
-    public void clear(){
-        innerHelper.getWritableDatabase().delete(tableName,null,null);
-    }
-
-    public boolean update(Object id, Map<String,?> columns){
-        //
-        ContentValues contentValues = new ContentValues();
-        mapToContentValues(columns,contentValues);
-        //
-        return innerHelper.getWritableDatabase().update(tableName,contentValues,String.format("%s = ?", primaryKeyName),objArrayToStringArray(new Object[]{id})) == 1;
+    @Override
+    public boolean delete(Object id){
+        OperationEvent operationEvent = startOperation("delete");
+        try {
+            awaitPendingWrites();
+            boolean result = deleteRow(innerHelper.getWritableDatabase(),id);
+            operationEvent.setRowCount(result? 1 : 0);
+            return result;
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
+        } finally {
+            finishOperation(operationEvent);
+        }
     }
 
-    public List<Boolean> updateAll(List<?> ids, Map<String,?> columns){
-        //
-        ContentValues contentValues = new ContentValues();
-        mapToContentValues(columns,contentValues);
+    public List<Boolean> deleteAll(List<?> ids){
+        OperationEvent operationEvent = startOperation("deleteAll");
+        awaitPendingWrites();
         //
         SQLiteDatabase db = innerHelper.getWritableDatabase();
         //
+        Set<String> blobReferences = new HashSet<>();
         try {
             List<Boolean> successList = new ArrayList<>(ids.size());
-            db.beginTransaction();
+            beginTransaction(db);
+            List<Object> distinctIds = distinctIds(ids);
+            Set<String> existIdKeys = new HashSet<>(distinctIds.size());
+            for (int start=0;start<distinctIds.size();start+=MAX_SQL_VARIABLE_NUMBER){
+                List<Object> chunk = distinctIds.subList(start,Math.min(start+MAX_SQL_VARIABLE_NUMBER,distinctIds.size()));
+                purgeExpiredRows(db,chunk);
+                existIdKeys.addAll(queryExistIdKeys(db,chunk));
+                blobReferences.addAll(queryBlobReferences(db,chunk,blobColumns));
+                executeDeleteIn(db,chunk);
+            }
+            //同一id重复出现时只有第一次算作删除成功
             for (Object id : ids) {
-                successList.add(db.update(tableName,contentValues,String.format("%s = ?", primaryKeyName),objArrayToStringArray(new Object[]{id})) == 1);
+                successList.add(existIdKeys.remove(idToKey(id)));
             }
             db.setTransactionSuccessful();
+            operationEvent.setRowCount(countSuccess(successList));
             return successList;
         } catch (Exception e) {
-            e.printStackTrace();
+            reportError(operationEvent,e);
             return new ArrayList<>();
         } finally {
-            db.endTransaction();
+            endTransaction(db);
+            //回滚时引用依然存在，releaseBlobs不会删除文件
+            releaseBlobs(db,blobReferences);
+            finishOperation(operationEvent);
         }
     }
 
-    public <T> List<T> queryId(){
-        return queryId(new QueryArgument());
+    //逐行读取并按chunkSize分块提交，内存中不保留全部数据，某个分块失败时只回滚该分块，已提交的进度通过ImportResult返回
+    public ImportResult importRows(Iterator<? extends Map<String,?>> iterator,ImportArgument importArgument){
+        for (long i=0;i<importArgument.getSkipRows() && iterator.hasNext();i++){
+            iterator.next();
+        }
+        return importRows(iterator,importArgument,false);
     }
 
-    public <T> List<T> queryId(QueryArgument queryArgument){
-        Pair<String,String[]> selectionPair = conditionToSelection(queryArgument.getConditions(),queryArgument.getConditionLink());
-        return queryIdListByCursor(innerHelper.getReadableDatabase().query(tableName,new String[]{primaryKeyName},selectionPair.first,selectionPair.second,null,null,orderColumnAndReverseToOrderBy(queryArgument.getOrderColumn(),queryArgument.isReverse()),pageAndSizeToLimit(queryArgument.getPage(),queryArgument.getPageSize())));
+    //每行一个JSON对象，值按列声明的类型转换，blob列使用Base64字符串，inputStream由调用方关闭
+    public ImportResult importJsonLines(InputStream inputStream,ImportArgument importArgument){
+        try {
+            return importRows(RowReader.jsonLines(inputStream,importArgument.getSkipRows()),importArgument,true);
+        } catch (RuntimeException e){
+            return new ImportResult(importArgument.getSkipRows(),0,importArgument.isCollectIds()? new long[0] : null,-1,-1,true,e);
+        }
     }
 
-    public List<Map<String,?>> query(){
-        return query(new QueryArgument());
+    //第一行为列名，值按列声明的类型转换，blob列使用Base64字符串，inputStream由调用方关闭
+    public ImportResult importCsv(InputStream inputStream,ImportArgument importArgument){
+        try {
+            return importRows(RowReader.csv(inputStream,importArgument.getSkipRows()),importArgument,true);
+        } catch (RuntimeException e){
+            return new ImportResult(importArgument.getSkipRows(),0,importArgument.isCollectIds()? new long[0] : null,-1,-1,true,e);
+        }
     }
 
-    public List<Map<String,?>> query(QueryArgument queryArgument){
-        Pair<String,String[]> selectionPair = conditionToSelection(queryArgument.getConditions(),queryArgument.getConditionLink());
-        return queryDataListByCursor(innerHelper.getReadableDatabase().query(tableName,new String[]{"*"},selectionPair.first,selectionPair.second,null,null,orderColumnAndReverseToOrderBy(queryArgument.getOrderColumn(),queryArgument.isReverse()),pageAndSizeToLimit(queryArgument.getPage(),queryArgument.getPageSize())));
+    private ImportResult importRows(Iterator<? extends Map<String,?>> iterator,ImportArgument importArgument,boolean convertValues){
+        OperationEvent operationEvent = startOperation("importRows");
+        awaitPendingWrites();
+        //
+        SQLiteDatabase db = innerHelper.getWritableDatabase();
+        //
+        int chunkSize = importArgument.getChunkSize();
+        ImportListener importListener = importArgument.getImportListener();
+        long committedRows = importArgument.getSkipRows();
+        long[] chunkIds = new long[chunkSize];
+        long[] ids = importArgument.isCollectIds()? new long[Math.min(chunkSize,1024)] : null;
+        int idCount = 0;
+        long importedRows = 0;
+        long firstId = -1;
+        long lastId = -1;
+        boolean contiguous = true;
+        Exception error = null;
+        try {
+            while (iterator.hasNext()){
+                int count = 0;
+                beginTransaction(db);
+                try {
+                    while (count < chunkSize && iterator.hasNext()){
+                        Map<String,?> row = iterator.next();
+                        chunkIds[count++] = executeInsertOrThrow(db,StatementType.Insert,convertValues? convertImportRow(row) : row);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    endTransaction(db);
+                }
+                //分块提交之后才计入结果
+                for (int i=0;i<count;i++){
+                    long id = chunkIds[i];
+                    if (firstId == -1){
+                        firstId = id;
+                    } else if (id != lastId+1){
+                        contiguous = false;
+                    }
+                    lastId = id;
+                }
+                if (ids != null){
+                    if (idCount+count > ids.length){
+                        ids = Arrays.copyOf(ids,Math.max(ids.length*2,idCount+count));
+                    }
+                    System.arraycopy(chunkIds,0,ids,idCount,count);
+                    idCount += count;
+                }
+                importedRows += count;
+                committedRows += count;
+                if (importListener != null){
+                    importListener.onProgress(committedRows);
+                }
+            }
+        } catch (Exception e){
+            error = operationEvent.fail(e);
+        }
+        operationEvent.setRowCount(importedRows);
+        finishOperation(operationEvent);
+        return new ImportResult(committedRows,importedRows,ids == null? null : Arrays.copyOf(ids,idCount),firstId,lastId,contiguous,error);
     }
 
-    private String pageAndSizeToLimit(Integer page,Integer pageSize){
-        if (pageSize == null && page == null){
+    private Map<String,?> convertImportRow(Map<String,?> row){
+        Map<String,Object> columns = new LinkedHashMap<>(row.size());
+        for (Map.Entry<String,?> entry : row.entrySet()){
+            columns.put(entry.getKey(),convertImportValue(entry.getKey(),entry.getValue()));
+        }
+        return columns;
+    }
+
+    private Object convertImportValue(String key,Object value){
+        Class<?> cla = allKeyMap.get(key);
+        if (value == null || value == JSONObject.NULL){
             return null;
         }
-        if (page == null){
-            return String.valueOf(pageSize);
+        if (cla == null){
+            return value;
         }
-        return String.format("%s, %s",page*pageSize,pageSize);
+        boolean number = value instanceof Number;
+        switch (getMimeType(cla)){
+            case Byte: return number? ((Number) value).byteValue() : Byte.valueOf(value.toString().trim());
+            case Short: return number? ((Number) value).shortValue() : Short.valueOf(value.toString().trim());
+            case Int: return number? ((Number) value).intValue() : Integer.valueOf(value.toString().trim());
+            case Long: return number? ((Number) value).longValue() : Long.valueOf(value.toString().trim());
+            case Float: return number? ((Number) value).floatValue() : Float.valueOf(value.toString().trim());
+            case Double: return number? ((Number) value).doubleValue() : Double.valueOf(value.toString().trim());
+            case Boolean: return value instanceof Boolean? value : Boolean.valueOf(value.toString().trim());
+            case Char: return value.toString().isEmpty()? null : value.toString().charAt(0);
+            case String: return value.toString();
+            case Blob: return value instanceof byte[]? value : Base64.decode(value.toString(),Base64.DEFAULT);
+        }
+        return value;
     }
 
-    private Pair<String,String[]> conditionToSelection(Condition[] conditions,ConditionLink conditionLink){
-        if (conditions == null){
-            return new Pair<>(null,null);
+    //按allKeyMap的列把整张表写成二进制快照
+    //按rowid分段读取，不持有写锁，导出期间其它写入照常进行；每一段各自一致，导出过程中提交的写入可能只有一部分出现在快照中
+    public long exportSnapshot(File file) throws IOException {
+        OperationEvent operationEvent = startOperation("exportSnapshot");
+        try {
+            long rowCount = exportSnapshotInternal(file);
+            operationEvent.setRowCount(rowCount);
+            return rowCount;
+        } catch (IOException e){
+            throw operationEvent.fail(e);
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
+        } finally {
+            finishOperation(operationEvent);
         }
-        String[] selectionArgs = new String[conditions.length];
-        StringBuilder stringBuilder = new StringBuilder();
-        for (int i = 0; i< conditions.length; i++){
-            Condition condition = conditions[i];
-            //
-            selectionArgs[i] = condition.getValue() == null?"":condition.getValue().toString();
-            //
-            stringBuilder.append(condition.getKey());
-            stringBuilder.append(" ");
-            stringBuilder.append(getCompareTypeCharacter(condition.getCompare()));
-            stringBuilder.append(" ");
-            stringBuilder.append("?");
-            if (i < conditions.length-1){
-                stringBuilder.append(" ");
-                stringBuilder.append(getConditionLinkCharacter(conditionLink));
-                stringBuilder.append(" ");
+    }
+
+    //导出时每段读取的行数
+    private static final int EXPORT_CHUNK_SIZE = 1000;
+
+    private long exportSnapshotInternal(File file) throws IOException {
+        awaitPendingWrites();
+        String[] columns = allKeyMap.keySet().toArray(new String[allKeyMap.size()]);
+        MimeType[] mimeTypes = new MimeType[columns.length];
+        byte[] types = new byte[columns.length];
+        for (int i=0;i<columns.length;i++){
+            mimeTypes[i] = getMimeType(allKeyMap.get(columns[i]));
+            types[i] = mimeTypeToSnapshotType(mimeTypes[i]);
+        }
+        //
+        SQLiteDatabase db = innerHelper.getReadableDatabase();
+        //
+        String[] projection = Arrays.copyOf(columns,columns.length+1);
+        projection[columns.length] = String.format("rowid as %s",ROWID_ALIAS);
+        SnapshotWriter snapshotWriter = new SnapshotWriter(file,columns,types);
+        boolean finished = false;
+        try {
+            //beginTransactionNonExclusive是BEGIN IMMEDIATE，会在整个导出期间阻塞所有写入，这里每段只执行一条查询
+            long lastRowId = Long.MIN_VALUE;
+            while (true){
+                int count = 0;
+                Cursor cursor = db.query(tableName,projection,"rowid > ?",new String[]{String.valueOf(lastRowId)},null,null,"rowid",String.valueOf(EXPORT_CHUNK_SIZE));
+                try {
+                    while (cursor.moveToNext()){
+                        for (int i=0;i<columns.length;i++){
+                            writeSnapshotValue(snapshotWriter,cursor,i,mimeTypes[i],types[i]);
+                        }
+                        snapshotWriter.endRow();
+                        lastRowId = cursor.getLong(columns.length);
+                        count++;
+                    }
+                } finally {
+                    cursor.close();
+                }
+                if (count < EXPORT_CHUNK_SIZE){
+                    break;
+                }
+            }
+            snapshotWriter.finish();
+            finished = true;
+            return snapshotWriter.getRowCount();
+        } finally {
+            snapshotWriter.close();
+            if (!finished){
+                file.delete();
             }
         }
-        return new Pair<>(stringBuilder.toString(),selectionArgs);
     }
 
-    private final Map<Condition.CompareType,String> compareTypeStringMap = new HashMap<>();{
-        compareTypeStringMap.put(Condition.CompareType.LessThan,"<");
-        compareTypeStringMap.put(Condition.CompareType.LessThanOrEqualTo,"<=");
-        compareTypeStringMap.put(Condition.CompareType.EqualTo,"=");
-        compareTypeStringMap.put(Condition.CompareType.GreaterThanOrEqualTo,">=");
-        compareTypeStringMap.put(Condition.CompareType.GreaterThan,">");
-        compareTypeStringMap.put(Condition.CompareType.NotEqualTo,"!=");
-    }
-    private String getCompareTypeCharacter(Condition.CompareType compareType){
-        return compareTypeStringMap.get(compareType);
+    //用快照替换表中的全部数据，在同一个事务中执行，失败时表保持原样
+    //快照中当前schema没有的列会被忽略，快照中没有的列写入null
+    public long importSnapshot(File file) throws IOException {
+        OperationEvent operationEvent = startOperation("importSnapshot");
+        try {
+            long rowCount = importSnapshotInternal(file);
+            operationEvent.setRowCount(rowCount);
+            return rowCount;
+        } catch (IOException e){
+            throw operationEvent.fail(e);
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
+        } finally {
+            finishOperation(operationEvent);
+        }
     }
 
-    private final Map<ConditionLink,String> conditionLinkStringMap = new HashMap<>();{
-        conditionLinkStringMap.put(ConditionLink.And,"and");
-        conditionLinkStringMap.put(ConditionLink.Or,"or");
+    private long importSnapshotInternal(File file) throws IOException {
+        awaitPendingWrites();
+        SnapshotReader snapshotReader = new SnapshotReader(file);
+        try {
+            String[] columns = snapshotReader.getColumns();
+            boolean[] knownColumns = new boolean[columns.length];
+            StringBuilder columnBuilder = new StringBuilder();
+            StringBuilder valueBuilder = new StringBuilder();
+            for (int i=0;i<columns.length;i++){
+                knownColumns[i] = allKeyMap.containsKey(columns[i]);
+                if (knownColumns[i]){
+                    if (columnBuilder.length() > 0){
+                        columnBuilder.append(",");
+                        valueBuilder.append(",");
+                    }
+                    columnBuilder.append(columns[i]);
+                    valueBuilder.append("?");
+                }
+            }
+            if (columnBuilder.length() == 0){
+                throw new IOException(String.format("snapshot has no column of table %s",tableName));
+            }
+            //
+            SQLiteDatabase db = innerHelper.getWritableDatabase();
+            //
+            SQLiteStatement statement = db.compileStatement(String.format("insert or replace into %s (%s) values (%s)",tableName,columnBuilder,valueBuilder));
+            try {
+                beginTransaction(db);
+                try {
+                    db.delete(tableName,null,null);
+                    for (long row=0;row<snapshotReader.getRowCount();row++){
+                        int bindIndex = 0;
+                        for (int i=0;i<columns.length;i++){
+                            byte type = snapshotReader.readType();
+                            if (knownColumns[i]){
+                                bindSnapshotValue(statement,++bindIndex,columns[i],snapshotReader,type);
+                            } else {
+                                snapshotReader.skipValue(type);
+                            }
+                        }
+                        statement.executeInsert();
+                    }
+                    notifyTableChanged(db);
+                    db.setTransactionSuccessful();
+                } finally {
+                    endTransaction(db);
+                }
+            } finally {
+                statement.close();
+            }
+            invalidateAllRows();
+            sweepBlobs(db);
+            return snapshotReader.getRowCount();
+        } finally {
+            snapshotReader.close();
+        }
     }
-    private String getConditionLinkCharacter(ConditionLink conditionLink){
-        return conditionLinkStringMap.get(conditionLink);
+
+    private byte mimeTypeToSnapshotType(MimeType mimeType){
+        switch (mimeType){
+            case Byte: return SnapshotWriter.TYPE_BYTE;
+            case Short: return SnapshotWriter.TYPE_SHORT;
+            case Int: return SnapshotWriter.TYPE_INT;
+            case Long: return SnapshotWriter.TYPE_LONG;
+            case Float: return SnapshotWriter.TYPE_FLOAT;
+            case Double: return SnapshotWriter.TYPE_DOUBLE;
+            case Boolean: return SnapshotWriter.TYPE_BOOLEAN;
+            case Char: return SnapshotWriter.TYPE_CHAR;
+            case String: return SnapshotWriter.TYPE_STRING;
+            case Blob: return SnapshotWriter.TYPE_BLOB;
+        }
+        throw new IllegalArgumentException(String.valueOf(mimeType));
     }
 
-    private String orderColumnAndReverseToOrderBy(String orderColumn,Boolean reverse){
-        if (orderColumn == null && reverse == null){
-            return null;
+    private void writeSnapshotValue(SnapshotWriter snapshotWriter,Cursor cursor,int columnIndex,MimeType mimeType,byte type) throws IOException {
+        if (cursor.isNull(columnIndex)){
+            snapshotWriter.putNull();
+            return;
         }
-        if (reverse == null){
-            return orderColumn;
+        switch (mimeType){
+            case Byte:
+            case Short:
+            case Int:
+            case Long:
+                snapshotWriter.putLong(type,cursor.getLong(columnIndex));
+                break;
+            case Float:
+            case Double:
+                snapshotWriter.putDouble(type,cursor.getDouble(columnIndex));
+                break;
+            case Boolean:
+                snapshotWriter.putLong(type,Boolean.valueOf(cursor.getString(columnIndex))? 1 : 0);
+                break;
+            case Char:
+                String string = cursor.getString(columnIndex);
+                if (string.isEmpty()){
+                    snapshotWriter.putNull();
+                } else {
+                    snapshotWriter.putLong(type,string.charAt(0));
+                }
+                break;
+            case String:
+                snapshotWriter.putString(cursor.getString(columnIndex));
+                break;
+            case Blob:
+                snapshotWriter.putBlob(getBlobBytesFromCursor(cursor,columnIndex));
+                break;
         }
-        return String.format("%s %s",orderColumn,reverse?"desc":"asc");
     }
 
-    public boolean containByQueryArgument(QueryArgument queryArgument){
-        Cursor cursor = null;
-        try {
-            Pair<String,String[]> selectionPair = conditionToSelection(queryArgument.getConditions(),queryArgument.getConditionLink());
-            cursor = innerHelper.getReadableDatabase().query(tableName, new String[]{"*"}, selectionPair.first, selectionPair.second, null, null, orderColumnAndReverseToOrderBy(queryArgument.getOrderColumn(), queryArgument.isReverse()), pageAndSizeToLimit(queryArgument.getPage(), queryArgument.getPageSize()));
-            return cursor.getCount() > 0;
-        } finally {
-            if (cursor != null){
-                cursor.close();
-            }
+    //Boolean与Char按bindValue的方式以字符串写入，保证与普通写入的数据一致
+    private void bindSnapshotValue(SQLiteStatement statement,int index,String key,SnapshotReader snapshotReader,byte type) throws IOException {
+        switch (type){
+            case SnapshotWriter.TYPE_NULL:
+                statement.bindNull(index);
+                break;
+            case SnapshotWriter.TYPE_BOOLEAN:
+                statement.bindString(index,String.valueOf(snapshotReader.readLong(type) != 0));
+                break;
+            case SnapshotWriter.TYPE_CHAR:
+                statement.bindString(index,String.valueOf((char) snapshotReader.readLong(type)));
+                break;
+            case SnapshotWriter.TYPE_FLOAT:
+            case SnapshotWriter.TYPE_DOUBLE:
+                statement.bindDouble(index,snapshotReader.readDouble(type));
+                break;
+            case SnapshotWriter.TYPE_STRING:
+                statement.bindString(index,snapshotReader.readString());
+                break;
+            case SnapshotWriter.TYPE_BLOB:
+                Object blob = toExternalBlob(key,snapshotReader.readBlob());
+                if (blob instanceof BlobHandle){
+                    statement.bindString(index,blob.toString());
+                } else {
+                    statement.bindBlob(index,(byte[]) blob);
+                }
+                break;
+            case SnapshotWriter.TYPE_BYTE:
+            case SnapshotWriter.TYPE_SHORT:
+            case SnapshotWriter.TYPE_INT:
+            case SnapshotWriter.TYPE_LONG:
+                statement.bindLong(index,snapshotReader.readLong(type));
+                break;
+            default:
+                throw new IOException("unknown value type in snapshot: "+type);
         }
     }
 
-    public boolean contain(Object id){
-        Cursor cursor = null;
+    @Override
+    public void clear(){
+        OperationEvent operationEvent = startOperation("clear");
         try {
-            cursor = innerHelper.getReadableDatabase().query(tableName,new String[]{"*"},String.format("%s = ?",primaryKeyName),objArrayToStringArray(new Object[]{id}),null,null,null,null);
-            return cursor.getCount() == 1;
+            awaitPendingWrites();
+            SQLiteDatabase db = innerHelper.getWritableDatabase();
+            operationEvent.setRowCount(db.delete(tableName,"1",null));
+            invalidateAllRows();
+            notifyTableChanged(db);
+            sweepBlobs(db);
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
         } finally {
-            if (cursor != null){
-                cursor.close();
-            }
+            finishOperation(operationEvent);
         }
     }
 
-    public Map<String,?> queryById(Object id){
+    @Override
+    public boolean update(Object id, Map<String,?> columns){
+        OperationEvent operationEvent = startOperation("update");
         try {
-            return queryDataListByCursor(innerHelper.getReadableDatabase().query(tableName,new String[]{"*"},String.format("%s = ?",primaryKeyName),objArrayToStringArray(new Object[]{id}),null,null,null,null)).get(0);
-        } catch (IndexOutOfBoundsException e){
-            return null;
+            awaitPendingWrites();
+            boolean result = updateRow(innerHelper.getWritableDatabase(),id,columns);
+            operationEvent.setRowCount(result? 1 : 0);
+            return result;
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
+        } finally {
+            finishOperation(operationEvent);
         }
     }
 
-    public List<Map<String,?>> queryByIdList(List<?> ids){
+    public List<Boolean> updateAll(List<?> ids, Map<String,?> columns){
+        List<String> updateColumns = getKnownColumns(columns.keySet());
+        //每个分块至少要为一个主键留出参数，否则分块大小为0或负数
+        if (updateColumns.size() >= MAX_SQL_VARIABLE_NUMBER){
+            throw new IllegalArgumentException(String.format("cannot update %d columns at once, at most %d are supported",updateColumns.size(),MAX_SQL_VARIABLE_NUMBER-1));
+        }
+        OperationEvent operationEvent = startOperation("updateAll");
+        awaitPendingWrites();
         //
         SQLiteDatabase db = innerHelper.getWritableDatabase();
         //
+        Set<String> blobReferences = new HashSet<>();
         try {
-            List<Map<String,?>> list = new ArrayList<>(ids.size());
-            db.beginTransaction();
+            List<Boolean> successList = new ArrayList<>(ids.size());
+            beginTransaction(db);
+            int chunkSize = MAX_SQL_VARIABLE_NUMBER - updateColumns.size();
+            List<Object> distinctIds = distinctIds(ids);
+            Set<String> existIdKeys = new HashSet<>(distinctIds.size());
+            for (int start=0;start<distinctIds.size();start+=chunkSize){
+                List<Object> chunk = distinctIds.subList(start,Math.min(start+chunkSize,distinctIds.size()));
+                purgeExpiredRows(db,chunk);
+                existIdKeys.addAll(queryExistIdKeys(db,chunk));
+                blobReferences.addAll(queryBlobReferences(db,chunk,updateColumns));
+                executeUpdateIn(db,chunk,updateColumns,columns);
+            }
             for (Object id : ids) {
-                list.addAll(queryDataListByCursor(db.query(tableName,new String[]{"*"},String.format("%s = ?",primaryKeyName),objArrayToStringArray(new Object[]{id}),null,null,null,null)));
+                successList.add(existIdKeys.contains(idToKey(id)));
             }
             db.setTransactionSuccessful();
-            return list;
+            operationEvent.setRowCount(countSuccess(successList));
+            return successList;
         } catch (Exception e) {
-            e.printStackTrace();
+            reportError(operationEvent,e);
             return new ArrayList<>();
         } finally {
-            db.endTransaction();
+            endTransaction(db);
+            releaseBlobs(db,blobReferences);
+            finishOperation(operationEvent);
         }
     }
 
-    private String[] objArrayToStringArray(Object[] objArray){
-        String[] stringArray = new String[objArray.length];
-        for (int i=0;i<stringArray.length;i++){
-            stringArray[i] = objArray[i] == null? null : objArray[i].toString();
+    //超过thresholdBytes的byte[]写入时转存为数据库旁的文件，行中只保存引用，读取时返回BlobHandle而不是byte[]
+    //关闭后已转存的字段依然可以读取，新写入的值恢复保存在行中
+    public void enableExternalBlobs(int thresholdBytes){
+        if (thresholdBytes < 0){
+            throw new IllegalArgumentException("thresholdBytes must not be negative");
         }
-        return stringArray;
+        externalBlobThreshold = thresholdBytes;
     }
 
-    private void mapToContentValues(Map<String,?> map,ContentValues contentValues){
-        for (Map.Entry<String,?> entry : map.entrySet()){
-            putToContentValue(entry.getKey(),entry.getValue(),contentValues);
-        }
+    public void disableExternalBlobs(){
+        externalBlobThreshold = -1;
     }
 
-    private boolean putToContentValue(String key, Object value,ContentValues contentValues){
-        if (value == null){
-            contentValues.putNull(key);
-        } else {
-            if (allKeyMap.containsKey(key)){
-                MimeType mimeType = getMimeType(allKeyMap.get(key));
-                switch (mimeType){
-                    case Boolean:
-                    case Char:
-                    case String:
-                        contentValues.put(key,value.toString());
-                        break;
-                    case Byte:
-                        contentValues.put(key,((Number) value).byteValue());
-                        break;
-                    case Short:
-                        contentValues.put(key,((Number) value).shortValue());
-                        break;
-                    case Int:
-                        contentValues.put(key,((Number) value).intValue());
-                        break;
-                    case Long:
-                        contentValues.put(key,((Number) value).longValue());
-                        break;
-                    case Float:
-                        contentValues.put(key,((Number) value).floatValue());
-                        break;
-                    case Double:
-                        contentValues.put(key,((Number) value).doubleValue());
-                        break;
-                    case Blob:
-                        contentValues.put(key,(byte[])value);
-                        break;
-                    default:
-                        return false;
-                }
-            } else {
-                return false;
-            }
+    //以流的方式写入大字段，返回的BlobHandle可以直接作为列值写入，不要求开启外部存储
+    //文件在引用它的行提交之前没有任何行引用，需要在宽限期(见setBlobGracePeriod)内写入并提交，超过后可能被回收删除
+    public BlobHandle writeBlob(InputStream inputStream) throws IOException {
+        return blobStore.store(inputStream);
+    }
+
+    //文件保存后的宽限期内不会被回收，默认60秒，保存文件与提交引用它的行间隔较长时(如在长事务中使用writeBlob的结果)需要调大
+    //宽限期按表保存在共用的BlobStore中
+    public void setBlobGracePeriod(long gracePeriodMillis){
+        if (gracePeriodMillis < 0){
+            throw new IllegalArgumentException("gracePeriodMillis must not be negative");
         }
-        return true;
+        blobStore.setGracePeriod(gracePeriodMillis);
     }
 
-    private <T> List<T> queryIdListByCursor(Cursor cursor){
+    public long getBlobGracePeriod(){
+        return blobStore.getGracePeriod();
+    }
+
+    //扫描全表删除没有被任何行引用的文件，用于回收插入被忽略、导入时整行被替换等写入遗留的文件
+    public int collectGarbageBlobs(){
+        OperationEvent operationEvent = startOperation("collectGarbageBlobs");
         try {
-            List<T> list = new ArrayList<>(cursor.getCount());
-            while (cursor.moveToNext()){
-                list.add((T) getValueFromCursor(cursor,primaryKeyName,cursor.getColumnIndex(primaryKeyName)).second);
-            }
-            return list;
+            awaitPendingWrites();
+            int count = sweepBlobs(innerHelper.getWritableDatabase());
+            operationEvent.setRowCount(count);
+            return count;
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
         } finally {
-            cursor.close();
+            finishOperation(operationEvent);
         }
     }
 
-    private List<Map<String,?>>queryDataListByCursor(Cursor cursor){
-        try {
-            List<Map<String,?>> list = new ArrayList<>(cursor.getCount());
-            while (cursor.moveToNext()){
-                Map<String,Object> map = new LinkedHashMap<>(cursor.getColumnCount());
-                list.add(map);
-                for (int i=0;i<cursor.getColumnCount();i++){
-                    String name = cursor.getColumnName(i);
-                    Pair<Boolean,Object> pair = getValueFromCursor(cursor,name,i);
-                    if (pair.first){
-                        map.put(name,pair.second);
-                    }
-                }
+    //设置后按策略隐藏并在后台删除过期的行，超出容量时淘汰最少使用的行，传入null关闭
+    //策略与清理任务按表保存在共用的InnerHelper中直到进程结束，同一张表的任意LiteMapping再次设置时替换而不是叠加
+    //策略不会保存在数据库中，进程重启后需要重新设置
+    public void setCachePolicy(CachePolicy cachePolicy){
+        if (cachePolicy != null){
+            cachePolicy.validate();
+        }
+        synchronized (cacheState){
+            if (cacheState.cleanupFuture != null){
+                cacheState.cleanupFuture.cancel(false);
+                cacheState.cleanupFuture = null;
             }
-            return list;
-        } finally {
-            cursor.close();
+            applyCachePolicy(cachePolicy);
         }
     }
 
+    private void applyCachePolicy(CachePolicy cachePolicy){
+        awaitPendingWrites();
+        //
+        SQLiteDatabase db = innerHelper.getWritableDatabase();
+        //
+        beginTransaction(db);
+        try {
+            for (String triggerName : CachePolicy.getTriggerNames(tableName)){
+                db.execSQL(String.format("drop trigger if exists %s",triggerName));
+            }
+            if (cachePolicy != null){
+                Set<String> existColumns = ((InnerHelper) innerHelper).queryPragmaNames(db,String.format("pragma table_info(%s)",tableName));
+                for (Map.Entry<String,String> entry : CachePolicy.getColumnDefinitions().entrySet()){
+                    if (!existColumns.contains(entry.getKey())){
+                        db.execSQL(String.format("alter table %s add column %s %s",tableName,entry.getKey(),entry.getValue()));
+                    }
+                }
+                for (String sql : cachePolicy.getIndexSQLs(tableName)){
+                    db.execSQL(sql);
+                }
+                for (String sql : cachePolicy.getTriggerSQLs(tableName,allKeyMap.keySet())){
+                    db.execSQL(sql);
+                }
+                for (String sql : cachePolicy.getBackfillSQLs(tableName,allKeyMap.keySet())){
+                    db.execSQL(sql);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            endTransaction(db);
+        }
+        cacheState.cachePolicy = cachePolicy;
+        cacheState.accessRecordMap.clear();
+        //缓存中的项没有记录过期时间
+        invalidateAllRows();
+        if (cachePolicy != null){
+            final CachePolicy policy = cachePolicy;
+            cacheState.cleanupFuture = getCleanupExecutor().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        trimCache(policy);
+                    } catch (RuntimeException e){
+                        //异常会终止周期任务，这里只打印，等待下一次清理
+                        e.printStackTrace();
+                    }
+                }
+            },cachePolicy.getCleanupInterval(),cachePolicy.getCleanupInterval(),TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public CachePolicy getCachePolicy() {
+        return cacheState.cachePolicy;
+    }
+
+    //立即执行一次后台清理，返回删除的行数
+    public int trimCache(){
+        OperationEvent operationEvent = startOperation("trimCache");
+        try {
+            CachePolicy policy = cacheState.cachePolicy;
+            int count = policy == null? 0 : trimCache(policy);
+            operationEvent.setRowCount(count);
+            return count;
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
+        } finally {
+            finishOperation(operationEvent);
+        }
+    }
+
+    //先写入访问记录，再删除过期的行，最后按淘汰顺序删除超出容量的行，每批在单独的短事务中完成
+    private int trimCache(CachePolicy policy){
+        awaitPendingWrites();
+        //
+        SQLiteDatabase db = innerHelper.getWritableDatabase();
+        //
+        flushAccessRecords(db,policy);
+        int count = 0;
+        if (policy.hasTimeToLive()){
+            String selection = String.format("%s <= %d",CachePolicy.EXPIRE_AT_COLUMN,System.currentTimeMillis());
+            int deleted;
+            do {
+                deleted = deleteCacheRows(db,selection,null,policy.getCleanupBatchSize(),Long.MAX_VALUE);
+                count += deleted;
+            } while (deleted == policy.getCleanupBatchSize());
+        }
+        if (policy.getMaxRowCount() > 0){
+            long excess = DatabaseUtils.queryNumEntries(db,tableName)-policy.getMaxRowCount();
+            while (excess > 0){
+                int deleted = deleteCacheRows(db,null,policy.getEvictionOrderBy(),(int) Math.min(excess,policy.getCleanupBatchSize()),Long.MAX_VALUE);
+                if (deleted == 0){
+                    break;
+                }
+                excess -= deleted;
+                count += deleted;
+            }
+        }
+        if (policy.getMaxBytes() > 0){
+            long excessBytes = DatabaseUtils.longForQuery(db,String.format("select ifnull(sum(%s),0) from %s",CachePolicy.SIZE_COLUMN,tableName),null)-policy.getMaxBytes();
+            while (excessBytes > 0){
+                long[] deletedBytes = new long[1];
+                int deleted = deleteCacheRows(db,null,policy.getEvictionOrderBy(),policy.getCleanupBatchSize(),excessBytes,deletedBytes);
+                if (deleted == 0){
+                    break;
+                }
+                excessBytes -= deletedBytes[0];
+                count += deleted;
+            }
+        }
+        if (count > 0){
+            invalidateAllRows();
+            sweepBlobs(db);
+        }
+        return count;
+    }
+
+    private int deleteCacheRows(SQLiteDatabase db,String selection,String orderBy,int limit,long maxBytes){
+        return deleteCacheRows(db,selection,orderBy,limit,maxBytes,new long[1]);
+    }
+
+    //按顺序选出最多limit行，累计大小达到maxBytes后停止，deletedBytes返回删除的字节数
+    private int deleteCacheRows(SQLiteDatabase db,String selection,String orderBy,int limit,long maxBytes,long[] deletedBytes){
+        beginTransaction(db);
+        try {
+            List<Long> rowIds = new ArrayList<>();
+            Cursor cursor = db.query(tableName,new String[]{"rowid",CachePolicy.SIZE_COLUMN},selection,null,null,null,orderBy,String.valueOf(limit));
+            try {
+                while (deletedBytes[0] < maxBytes && cursor.moveToNext()){
+                    rowIds.add(cursor.getLong(0));
+                    deletedBytes[0] += cursor.getLong(1);
+                }
+            } finally {
+                cursor.close();
+            }
+            if (rowIds.isEmpty()){
+                return 0;
+            }
+            StringBuilder stringBuilder = new StringBuilder();
+            for (Long rowId : rowIds){
+                if (stringBuilder.length() > 0){
+                    stringBuilder.append(",");
+                }
+                stringBuilder.append(rowId);
+            }
+            int count = db.delete(tableName,String.format("rowid in (%s)",stringBuilder),null);
+            if (count > 0){
+                notifyTableChanged(db);
+            }
+            db.setTransactionSuccessful();
+            return count;
+        } finally {
+            endTransaction(db);
+        }
+    }
+
+    private boolean isTrackingAccess(){
+        CachePolicy policy = cacheState.cachePolicy;
+        return policy != null && policy.isBounded();
+    }
+
+    private void recordAccess(List<Map<String,?>> rows){
+        if (!isTrackingAccess()){
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Map<String,?> row : rows){
+            recordAccess(row.get(primaryKeyName),now);
+        }
+    }
+
+    //读取时只在内存中记录，由后台清理批量写入，读操作不需要获取写锁
+    private void recordAccess(Object id,long now){
+        if (id == null){
+            return;
+        }
+        String key = idToKey(id);
+        AccessRecord accessRecord = cacheState.accessRecordMap.get(key);
+        if (accessRecord == null){
+            if (cacheState.accessRecordMap.size() >= MAX_ACCESS_RECORDS){
+                return;
+            }
+            AccessRecord newRecord = new AccessRecord(id);
+            accessRecord = cacheState.accessRecordMap.putIfAbsent(key,newRecord);
+            if (accessRecord == null){
+                accessRecord = newRecord;
+            }
+        }
+        accessRecord.time = now;
+        accessRecord.count.incrementAndGet();
+    }
+
+    private void flushAccessRecords(SQLiteDatabase db,CachePolicy policy){
+        if (cacheState.accessRecordMap.isEmpty()){
+            return;
+        }
+        List<AccessRecord> accessRecords = new ArrayList<>(cacheState.accessRecordMap.size());
+        for (Map.Entry<String,AccessRecord> entry : cacheState.accessRecordMap.entrySet()){
+            if (cacheState.accessRecordMap.remove(entry.getKey(),entry.getValue())){
+                accessRecords.add(entry.getValue());
+            }
+        }
+        SQLiteStatement statement = db.compileStatement(String.format("update %s set %s = max(ifnull(%s,0),?), %s = %s+? where %s = ?",
+                tableName,CachePolicy.ACCESS_TIME_COLUMN,CachePolicy.ACCESS_TIME_COLUMN,CachePolicy.ACCESS_COUNT_COLUMN,CachePolicy.ACCESS_COUNT_COLUMN,primaryKeyName));
+        try {
+            for (int start=0;start<accessRecords.size();start+=policy.getCleanupBatchSize()){
+                beginTransaction(db);
+                try {
+                    for (AccessRecord accessRecord : accessRecords.subList(start,Math.min(start+policy.getCleanupBatchSize(),accessRecords.size()))){
+                        statement.bindLong(1,accessRecord.time);
+                        statement.bindLong(2,accessRecord.count.get());
+                        bindValue(statement,3,primaryKeyName,accessRecord.id);
+                        statement.executeUpdateDelete();
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    endTransaction(db);
+                }
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    //同一张表的行缓存，由InnerHelper按表保存一份，任意LiteMapping的写入都会让其它实例缓存的行失效
+    static class RowCacheState {
+
+        private volatile RowCache rowCache;
+        private long generation;
+        private int activeTransactionCount;
+
+    }
+
+    //同一张表的策略、清理任务与访问记录，由InnerHelper按表保存一份
+    static class CacheState {
+
+        private volatile CachePolicy cachePolicy;
+        private ScheduledFuture<?> cleanupFuture;
+        private final ConcurrentMap<String,AccessRecord> accessRecordMap = new ConcurrentHashMap<>();
+
+    }
+
+    private static class AccessRecord {
+
+        private final Object id;
+        private volatile long time;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private AccessRecord(Object id) {
+            this.id = id;
+        }
+
+    }
+
+    //所有表共用一个后台线程，各表的清理依次执行
+    private static synchronized ScheduledExecutorService getCleanupExecutor(){
+        if (cleanupExecutor == null){
+            cleanupExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable,"LiteMapping-Cleanup");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return cleanupExecutor;
+    }
+
+    public void enableWriteBehind(int capacity,int batchSize,long flushIntervalMillis){
+        enableWriteBehind(capacity,batchSize,flushIntervalMillis,true);
+    }
+
+    //开启后insertAsync/updateAsync/deleteAsync进入有界队列，由后台线程按batchSize或flushIntervalMillis合并为一个事务提交
+    //readPendingWrites为true时，查询前会先等待队列中的写操作提交，保证能读到自己的写入
+    public synchronized void enableWriteBehind(int capacity,int batchSize,long flushIntervalMillis,boolean readPendingWrites){
+        if (writeBehindQueue != null){
+            writeBehindQueue.shutdown();
+        }
+        this.writeBehindQueue = new WriteBehindQueue(innerHelper,dbName+"/"+tableName,capacity,batchSize,flushIntervalMillis,new Runnable() {
+            @Override
+            public void run() {
+                invalidationTracker.flush();
+            }
+        });
+        this.readPendingWrites = readPendingWrites;
+    }
+
+    public synchronized void disableWriteBehind(){
+        if (writeBehindQueue != null){
+            writeBehindQueue.shutdown();
+            writeBehindQueue = null;
+        }
+    }
+
+    public void flush(){
+        awaitPendingWrites();
+    }
+
+    public Future<Long> insertAsync(final Map<String,?> columns){
+        return submitWrite(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return executeInsert(innerHelper.getWritableDatabase(),columns,null);
+            }
+        });
+    }
+
+    public Future<Boolean> insertByIdAsync(final Object id,final Map<String,?> columns){
+        return submitWrite(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return executeInsert(innerHelper.getWritableDatabase(),id,columns,null) >= 0;
+            }
+        });
+    }
+
+    public Future<Boolean> updateAsync(final Object id,final Map<String,?> columns){
+        return submitWrite(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return updateRow(innerHelper.getWritableDatabase(),id,columns);
+            }
+        });
+    }
+
+    public Future<Boolean> deleteAsync(final Object id){
+        return submitWrite(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return deleteRow(innerHelper.getWritableDatabase(),id);
+            }
+        });
+    }
+
+    //未开启write-behind时直接同步执行
+    private <V> Future<V> submitWrite(Callable<V> callable){
+        WriteBehindQueue queue = writeBehindQueue;
+        if (queue != null){
+            return queue.submit(callable);
+        }
+        FutureTask<V> futureTask = new FutureTask<>(callable);
+        futureTask.run();
+        return futureTask;
+    }
+
+    //同步写操作需排在已入队的异步写操作之后执行
+    private void awaitPendingWrites(){
+        WriteBehindQueue queue = writeBehindQueue;
+        if (queue != null && queue.hasPendingWrites()){
+            queue.flush();
+        }
+    }
+
+    private void awaitPendingWritesBeforeRead(){
+        if (readPendingWrites){
+            awaitPendingWrites();
+        }
+    }
+
+    public <T> List<T> queryId(){
+        return queryId(new QueryArgument());
+    }
+
+    @Override
+    public <T> List<T> queryId(QueryArgument queryArgument){
+        OperationEvent operationEvent = startOperation("queryId");
+        try {
+            awaitPendingWritesBeforeRead();
+            ConditionCompiler.Selection selection = compileSelection(queryArgument.getConditionNode());
+            QueryShape queryShape = new QueryShape(tableName,new String[]{primaryKeyName},selection,null,orderColumnAndReverseToOrderBy(queryArgument.getOrderColumn(),queryArgument.isReverse()),pageAndSizeToLimit(queryArgument.getPage(),queryArgument.getPageSize()));
+            operationEvent.setQueryShape(queryShape);
+            List<T> list = queryIdListByCursor(querySelection(queryShape));
+            operationEvent.setRowCount(list.size());
+            return list;
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
+        } finally {
+            finishOperation(operationEvent);
+        }
+    }
+
+    public List<Map<String,?>> query(){
+        return query(new QueryArgument());
+    }
+
+    @Override
+    public List<Map<String,?>> query(QueryArgument queryArgument){
+        OperationEvent operationEvent = startOperation("query");
+        try {
+            List<Map<String,?>> list = queryDataListByCursor(queryCursor(queryArgument,operationEvent));
+            operationEvent.setRowCount(list.size());
+            recordAccess(list);
+            return list;
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
+        } finally {
+            finishOperation(operationEvent);
+        }
+    }
+
+    public void query(QueryArgument queryArgument,RowVisitor rowVisitor){
+        OperationEvent operationEvent = startOperation("query");
+        RowIterator rowIterator = null;
+        try {
+            rowIterator = new RowIterator(queryCursor(queryArgument,operationEvent),true);
+            long rowCount = 0;
+            boolean trackAccess = isTrackingAccess();
+            while (rowIterator.hasNext()){
+                rowCount++;
+                Map<String,?> row = rowIterator.next();
+                if (trackAccess){
+                    recordAccess(row.get(primaryKeyName),System.currentTimeMillis());
+                }
+                if (!rowVisitor.visit(row)){
+                    break;
+                }
+            }
+            operationEvent.setRowCount(rowCount);
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
+        } finally {
+            if (rowIterator != null){
+                rowIterator.close();
+            }
+            finishOperation(operationEvent);
+        }
+    }
+
+    //游标由调用方逐行读取，不计入操作统计
+    public RowIterator queryIterator(QueryArgument queryArgument){
+        return queryIterator(queryArgument,false);
+    }
+
+    public RowIterator queryIterator(QueryArgument queryArgument,boolean reuseRow){
+        return new RowIterator(queryCursor(queryArgument,null),reuseRow);
+    }
+
+    public ColumnarResult queryColumnar(){
+        return queryColumnar(new QueryArgument());
+    }
+
+    public ColumnarResult queryColumnar(QueryArgument queryArgument){
+        OperationEvent operationEvent = startOperation("queryColumnar");
+        try {
+            ColumnarResult columnarResult = queryColumnarByCursor(queryCursor(queryArgument,operationEvent));
+            operationEvent.setRowCount(columnarResult.getRowCount());
+            return columnarResult;
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
+        } finally {
+            finishOperation(operationEvent);
+        }
+    }
+
+    public Page queryPage(QueryArgument queryArgument){
+        OperationEvent operationEvent = startOperation("queryPage");
+        try {
+            List<Map<String,?>> rows = queryDataListByCursor(queryCursor(queryArgument,true,operationEvent));
+            operationEvent.setRowCount(rows.size());
+            recordAccess(rows);
+            PageToken nextPageToken = null;
+            Integer pageSize = queryArgument.getPageSize();
+            if (pageSize != null && !rows.isEmpty() && rows.size() >= pageSize){
+                Map<String,?> lastRow = rows.get(rows.size()-1);
+                String orderColumn = getSeekOrderColumn(queryArgument);
+                nextPageToken = new PageToken(orderColumn == null? null : lastRow.get(orderColumn),lastRow.get(primaryKeyName));
+            }
+            return new Page(rows,nextPageToken);
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
+        } finally {
+            finishOperation(operationEvent);
+        }
+    }
+
+    private Cursor queryCursor(QueryArgument queryArgument,OperationEvent operationEvent){
+        return queryCursor(queryArgument,queryArgument.getPageToken() != null,operationEvent);
+    }
+
+    private Cursor queryCursor(QueryArgument queryArgument,boolean keyset,OperationEvent operationEvent){
+        awaitPendingWritesBeforeRead();
+        ConditionCompiler.Selection selection = compileSelection(queryArgument.getConditionNode());
+        QueryShape queryShape;
+        if (keyset){
+            selection = appendSeekSelection(selection,queryArgument);
+            //生成下一页的PageToken需要排序列与主键
+            queryShape = new QueryShape(tableName,getProjection(queryArgument.getColumns(),queryArgument.getExcludeColumns(),getSeekOrderColumn(queryArgument)),selection,null,getSeekOrderBy(queryArgument),pageAndSizeToLimit(null,queryArgument.getPageSize()));
+        } else {
+            queryShape = new QueryShape(tableName,getProjection(queryArgument.getColumns(),queryArgument.getExcludeColumns()),selection,null,orderColumnAndReverseToOrderBy(queryArgument.getOrderColumn(),queryArgument.isReverse()),pageAndSizeToLimit(queryArgument.getPage(),queryArgument.getPageSize()));
+        }
+        if (operationEvent != null){
+            operationEvent.setQueryShape(queryShape);
+        }
+        return querySelection(queryShape);
+    }
+
+    //设置了过期时间时过滤掉已过期但还没有被后台清理的行
+    private ConditionCompiler.Selection compileSelection(ConditionNode conditionNode){
+        ConditionCompiler.Selection selection = conditionCompiler.compile(conditionNode);
+        CachePolicy policy = cacheState.cachePolicy;
+        if (policy != null && policy.hasTimeToLive()){
+            selection = selection.and(String.format("(%s is null or %s > ?)",CachePolicy.EXPIRE_AT_COLUMN,CachePolicy.EXPIRE_AT_COLUMN),new String[]{null},new Object[]{System.currentTimeMillis()});
+        }
+        return selection;
+    }
+
+    //用于按主键读取的字符串参数查询，时间以字面量拼接
+    private String getExpirySelection(){
+        CachePolicy policy = cacheState.cachePolicy;
+        if (policy == null || !policy.hasTimeToLive()){
+            return "";
+        }
+        return String.format(" and (%s is null or %s > %d)",CachePolicy.EXPIRE_AT_COLUMN,CachePolicy.EXPIRE_AT_COLUMN,System.currentTimeMillis());
+    }
+
+    //SQLiteDatabase.query只接受String参数，这里通过CursorFactory拿到SQLiteQuery后按列声明的类型绑定参数
+    private Cursor querySelection(QueryShape queryShape){
+        final ConditionCompiler.Selection selection = queryShape.selection;
+        SQLiteDatabase.CursorFactory cursorFactory = new SQLiteDatabase.CursorFactory() {
+            @Override
+            public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query) {
+                String[] keys = selection.getKeys();
+                Object[] args = selection.getArgs();
+                for (int i=0;i<args.length;i++){
+                    bindConditionValue(query,i+1,keys[i],args[i]);
+                }
+                return new SQLiteCursor(masterQuery,editTable,query);
+            }
+        };
+        return innerHelper.getReadableDatabase().queryWithFactory(cursorFactory,false,queryShape.tableName,queryShape.columns,selection.getSelection(),null,queryShape.groupBy,null,queryShape.orderBy,queryShape.limit);
+    }
+
+    private String[] getProjection(String[] columns,String[] excludeColumns,String... requiredColumns){
+        Set<String> projection;
+        if (columns != null){
+            projection = new LinkedHashSet<>(Arrays.asList(columns));
+        } else if (excludeColumns != null){
+            projection = new LinkedHashSet<>(allKeyMap.keySet());
+            projection.removeAll(Arrays.asList(excludeColumns));
+        } else {
+            return new String[]{"*"};
+        }
+        projection.add(primaryKeyName);
+        for (String requiredColumn : requiredColumns){
+            if (requiredColumn != null){
+                projection.add(requiredColumn);
+            }
+        }
+        return projection.toArray(new String[projection.size()]);
+    }
+
+    private String getSeekOrderColumn(QueryArgument queryArgument){
+        String orderColumn = queryArgument.getOrderColumn();
+        return orderColumn == null || orderColumn.equals(primaryKeyName)? null : orderColumn;
+    }
+
+    private String getSeekOrderBy(QueryArgument queryArgument){
+        String direction = Boolean.TRUE.equals(queryArgument.isReverse())? "desc" : "asc";
+        String orderColumn = getSeekOrderColumn(queryArgument);
+        if (orderColumn == null){
+            return String.format("%s %s",primaryKeyName,direction);
+        }
+        return String.format("%s %s, %s %s",orderColumn,direction,primaryKeyName,direction);
+    }
+
+    //Sqlite在3.15之前不支持(a,b) > (?,?)的行值比较，这里展开成等价的or条件，null按Sqlite的排序规则处理(升序时最先，降序时最后)
+    private ConditionCompiler.Selection appendSeekSelection(ConditionCompiler.Selection selection,QueryArgument queryArgument){
+        PageToken pageToken = queryArgument.getPageToken();
+        if (pageToken == null){
+            return selection;
+        }
+        boolean reverse = Boolean.TRUE.equals(queryArgument.isReverse());
+        String compare = reverse? "<" : ">";
+        String orderColumn = getSeekOrderColumn(queryArgument);
+        String seekSelection;
+        String[] seekKeys;
+        Object[] seekArgs;
+        if (orderColumn == null){
+            seekSelection = String.format("%s %s ?",primaryKeyName,compare);
+            seekKeys = new String[]{primaryKeyName};
+            seekArgs = new Object[]{pageToken.getId()};
+        } else if (pageToken.getOrderValue() == null){
+            if (reverse){
+                seekSelection = String.format("(%s is null and %s < ?)",orderColumn,primaryKeyName);
+            } else {
+                seekSelection = String.format("((%s is null and %s > ?) or %s is not null)",orderColumn,primaryKeyName,orderColumn);
+            }
+            seekKeys = new String[]{primaryKeyName};
+            seekArgs = new Object[]{pageToken.getId()};
+        } else {
+            seekSelection = String.format("(%s %s ? or (%s = ? and %s %s ?)%s)",orderColumn,compare,orderColumn,primaryKeyName,compare,reverse? String.format(" or %s is null",orderColumn) : "");
+            seekKeys = new String[]{orderColumn,orderColumn,primaryKeyName};
+            seekArgs = new Object[]{pageToken.getOrderValue(),pageToken.getOrderValue(),pageToken.getId()};
+        }
+        return selection.and(seekSelection,seekKeys,seekArgs);
+    }
+
+    private String pageAndSizeToLimit(Integer page,Integer pageSize){
+        if (pageSize == null && page == null){
+            return null;
+        }
+        if (page == null){
+            return String.valueOf(pageSize);
+        }
+        return String.format("%s, %s",page*pageSize,pageSize);
+    }
+
+    private String orderColumnAndReverseToOrderBy(String orderColumn,Boolean reverse){
+        if (orderColumn == null && reverse == null){
+            return null;
+        }
+        if (reverse == null){
+            return orderColumn;
+        }
+        return String.format("%s %s",orderColumn,reverse?"desc":"asc");
+    }
+
+    public List<Map<String,?>> search(String match){
+        return search(match,new QueryArgument());
+    }
+
+    //match为FTS4的查询语法，如 sqlite android、sql*、"full text"，queryArgument中的条件、列与page/pageSize照常生效
+    //未设置排序列时按BM25相关度从高到低返回，设置排序列后由Sqlite排序与分页
+    public List<Map<String,?>> search(String match,QueryArgument queryArgument){
+        OperationEvent operationEvent = startOperation("search");
+        try {
+            String[] projection = getProjection(queryArgument.getColumns(),queryArgument.getExcludeColumns());
+            List<Map<String,?>> list;
+            if (queryArgument.getOrderColumn() != null){
+                list = queryDataListByCursor(searchCursor(match,queryArgument,projection,operationEvent));
+            } else {
+                list = queryRowsByRowId(rankSearch(match,queryArgument,operationEvent),projection);
+            }
+            operationEvent.setRowCount(list.size());
+            return list;
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
+        } finally {
+            finishOperation(operationEvent);
+        }
+    }
+
+    public <T> List<T> searchId(String match){
+        return searchId(match,new QueryArgument());
+    }
+
+    public <T> List<T> searchId(String match,QueryArgument queryArgument){
+        OperationEvent operationEvent = startOperation("searchId");
+        try {
+            String[] projection = new String[]{primaryKeyName};
+            List<T> list;
+            if (queryArgument.getOrderColumn() != null){
+                list = queryIdListByCursor(searchCursor(match,queryArgument,projection,operationEvent));
+            } else {
+                List<Map<String,?>> rows = queryRowsByRowId(rankSearch(match,queryArgument,operationEvent),projection);
+                list = new ArrayList<>(rows.size());
+                for (Map<String,?> row : rows){
+                    list.add((T) row.get(primaryKeyName));
+                }
+            }
+            operationEvent.setRowCount(list.size());
+            return list;
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
+        } finally {
+            finishOperation(operationEvent);
+        }
+    }
+
+    private String getFullTextTableName(){
+        if (fullTextIndex == null){
+            throw new IllegalStateException(String.format("table %s has no full text index",tableName));
+        }
+        return FullTextIndex.getTableName(tableName);
+    }
+
+    private Cursor searchCursor(String match,QueryArgument queryArgument,String[] projection,OperationEvent operationEvent){
+        awaitPendingWritesBeforeRead();
+        String ftsTableName = getFullTextTableName();
+        ConditionCompiler.Selection selection = compileSelection(queryArgument.getConditionNode())
+                .and(String.format("rowid in (select docid from %s where %s match ?)",ftsTableName,ftsTableName),new String[]{null},new Object[]{match});
+        QueryShape queryShape = new QueryShape(tableName,projection,selection,null,orderColumnAndReverseToOrderBy(queryArgument.getOrderColumn(),queryArgument.isReverse()),pageAndSizeToLimit(queryArgument.getPage(),queryArgument.getPageSize()));
+        operationEvent.setQueryShape(queryShape);
+        return querySelection(queryShape);
+    }
+
+    //只从索引表读取docid与matchinfo计算相关度，排序分页后再按rowid读取当前页的行
+    private long[] rankSearch(String match,QueryArgument queryArgument,OperationEvent operationEvent){
+        awaitPendingWritesBeforeRead();
+        String ftsTableName = getFullTextTableName();
+        ConditionCompiler.Selection selection = new ConditionCompiler.Selection(String.format("%s match ?",ftsTableName),new String[]{null},new Object[]{match});
+        ConditionCompiler.Selection conditionSelection = compileSelection(queryArgument.getConditionNode());
+        if (conditionSelection.getSelection() != null){
+            selection = selection.and(String.format("docid in (select rowid from %s where %s)",tableName,conditionSelection.getSelection()),conditionSelection.getKeys(),conditionSelection.getArgs());
+        }
+        QueryShape queryShape = new QueryShape(ftsTableName,new String[]{"docid",String.format("matchinfo(%s,'pcnalx')",ftsTableName)},selection,null,null,null);
+        operationEvent.setQueryShape(queryShape);
+        long[] rowIds;
+        double[] scores;
+        Cursor cursor = querySelection(queryShape);
+        try {
+            rowIds = new long[cursor.getCount()];
+            scores = new double[rowIds.length];
+            for (int i=0;cursor.moveToNext();i++){
+                rowIds[i] = cursor.getLong(0);
+                scores[i] = bm25(cursor.getBlob(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        Integer page = queryArgument.getPage();
+        Integer pageSize = queryArgument.getPageSize();
+        int offset = page == null || pageSize == null? 0 : page*pageSize;
+        int end = pageSize == null? rowIds.length : (int) Math.min(rowIds.length,(long) offset+pageSize);
+        if (offset >= end){
+            return new long[0];
+        }
+        int[] order = topIndexes(rowIds,scores,end);
+        return subRowIds(rowIds,order,offset,end);
+    }
+
+    private long[] subRowIds(long[] rowIds,int[] order,int start,int end){
+        long[] pageRowIds = new long[end-start];
+        for (int i=start;i<end;i++){
+            pageRowIds[i-start] = rowIds[order[i]];
+        }
+        return pageRowIds;
+    }
+
+    //只需要前count个时用大小为count的堆，避免对全部匹配行排序
+    private int[] topIndexes(final long[] rowIds,final double[] scores,int count){
+        final Comparator<Integer> rankComparator = new Comparator<Integer>() {
+            @Override
+            public int compare(Integer index1, Integer index2) {
+                int result = Double.compare(scores[index2],scores[index1]);
+                if (result != 0){
+                    return result;
+                }
+                return rowIds[index1] < rowIds[index2]? -1 : (rowIds[index1] == rowIds[index2]? 0 : 1);
+            }
+        };
+        PriorityQueue<Integer> queue = new PriorityQueue<>(Math.max(1,count),Collections.reverseOrder(rankComparator));
+        for (int i=0;i<rowIds.length;i++){
+            queue.offer(i);
+            if (queue.size() > count){
+                queue.poll();
+            }
+        }
+        int[] indexes = new int[queue.size()];
+        for (int i=indexes.length-1;i>=0;i--){
+            indexes[i] = queue.poll();
+        }
+        return indexes;
+    }
+
+    private static final double BM25_K1 = 1.2;
+    private static final double BM25_B = 0.75;
+
+    //matchinfo的pcnalx格式：短语数、列数、总行数、每列平均词数、当前行每列词数、每个短语在每列的(本行命中,全部命中,命中行数)
+    private double bm25(byte[] matchInfo){
+        IntBuffer buffer = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int phraseCount = buffer.get(0);
+        int columnCount = buffer.get(1);
+        long rowCount = buffer.get(2) & 0xffffffffL;
+        double score = 0;
+        for (int phrase=0;phrase<phraseCount;phrase++){
+            for (int column=0;column<columnCount;column++){
+                int hitIndex = 3+2*columnCount+3*(phrase*columnCount+column);
+                long hits = buffer.get(hitIndex) & 0xffffffffL;
+                if (hits == 0){
+                    continue;
+                }
+                long rowsWithHits = buffer.get(hitIndex+2) & 0xffffffffL;
+                double averageLength = Math.max(1,buffer.get(3+column) & 0xffffffffL);
+                double length = buffer.get(3+columnCount+column) & 0xffffffffL;
+                double idf = Math.max(1e-6,Math.log((rowCount-rowsWithHits+0.5)/(rowsWithHits+0.5)));
+                score += idf*hits*(BM25_K1+1)/(hits+BM25_K1*(1-BM25_B+BM25_B*length/averageLength));
+            }
+        }
+        return score;
+    }
+
+    private static final String ROWID_ALIAS = "lite_mapping_rowid";
+
+    //按rowIds的顺序返回
+    private List<Map<String,?>> queryRowsByRowId(long[] rowIds,String[] projection){
+        if (rowIds.length == 0){
+            return new ArrayList<>();
+        }
+        String[] columns = Arrays.copyOf(projection,projection.length+1);
+        columns[projection.length] = String.format("rowid as %s",ROWID_ALIAS);
+        SQLiteDatabase db = innerHelper.getReadableDatabase();
+        LongHashMap<Map<String,?>> rowMap = new LongHashMap<>(rowIds.length);
+        for (int start=0;start<rowIds.length;start+=MAX_SQL_VARIABLE_NUMBER){
+            int end = Math.min(start+MAX_SQL_VARIABLE_NUMBER,rowIds.length);
+            StringBuilder selection = new StringBuilder("rowid in (");
+            String[] selectionArgs = new String[end-start];
+            for (int i=start;i<end;i++){
+                selection.append(i == start? "?" : ",?");
+                selectionArgs[i-start] = String.valueOf(rowIds[i]);
+            }
+            selection.append(")");
+            Cursor cursor = db.query(tableName,columns,selection.toString(),selectionArgs,null,null,null,null);
+            try {
+                String[] columnNames = cursor.getColumnNames();
+                int rowIdIndex = cursor.getColumnIndex(ROWID_ALIAS);
+                while (cursor.moveToNext()){
+                    Map<String,Object> map = new LinkedHashMap<>(columnNames.length);
+                    readRowFromCursor(cursor,columnNames,map);
+                    rowMap.put(cursor.getLong(rowIdIndex),map);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        List<Map<String,?>> list = new ArrayList<>(rowIds.length);
+        for (long rowId : rowIds){
+            Map<String,?> row = rowMap.get(rowId);
+            if (row != null){
+                list.add(row);
+            }
+        }
+        return list;
+    }
+
+    public boolean containByQueryArgument(QueryArgument queryArgument){
+        if (queryArgument.getPage() == null){
+            return exists(queryArgument);
+        }
+        OperationEvent operationEvent = startOperation("containByQueryArgument");
+        Cursor cursor = null;
+        try {
+            awaitPendingWritesBeforeRead();
+            ConditionCompiler.Selection selection = compileSelection(queryArgument.getConditionNode());
+            QueryShape queryShape = new QueryShape(tableName, new String[]{primaryKeyName}, selection, null, orderColumnAndReverseToOrderBy(queryArgument.getOrderColumn(), queryArgument.isReverse()), pageAndSizeToLimit(queryArgument.getPage(), queryArgument.getPageSize()));
+            operationEvent.setQueryShape(queryShape);
+            cursor = querySelection(queryShape);
+            operationEvent.setRowCount(cursor.getCount());
+            return cursor.getCount() > 0;
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
+        } finally {
+            if (cursor != null){
+                cursor.close();
+            }
+            finishOperation(operationEvent);
+        }
+    }
+
+    public boolean exists(QueryArgument queryArgument){
+        OperationEvent operationEvent = startOperation("exists");
+        Cursor cursor = null;
+        try {
+            awaitPendingWritesBeforeRead();
+            ConditionCompiler.Selection selection = compileSelection(queryArgument.getConditionNode());
+            QueryShape queryShape = new QueryShape(tableName,new String[]{"1"},selection,null,null,"1");
+            operationEvent.setQueryShape(queryShape);
+            cursor = querySelection(queryShape);
+            boolean exists = cursor.moveToFirst();
+            operationEvent.setRowCount(exists? 1 : 0);
+            return exists;
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
+        } finally {
+            if (cursor != null){
+                cursor.close();
+            }
+            finishOperation(operationEvent);
+        }
+    }
+
+    public long count(){
+        return count(new QueryArgument());
+    }
+
+    //只使用查询条件，排序与分页不影响计数
+    @Override
+    public long count(QueryArgument queryArgument){
+        Long count = aggregate(Aggregate.Count,"*",queryArgument);
+        return count == null? 0 : count;
+    }
+
+    public <T> T aggregate(Aggregate aggregate,String column){
+        return aggregate(aggregate,column,new QueryArgument());
+    }
+
+    //Count/Sum返回Long或Double，Avg返回Double，Min/Max按列声明的类型返回，没有匹配行时Sum/Min/Max/Avg返回null
+    public <T> T aggregate(Aggregate aggregate,String column,QueryArgument queryArgument){
+        List<Map<String,?>> rows = aggregate(aggregate,column,new String[0],queryArgument);
+        return rows.isEmpty()? null : (T) rows.get(0).get(column);
+    }
+
+    //每行包含分组列的值，聚合结果以被聚合的列名为key
+    public List<Map<String,?>> aggregate(Aggregate aggregate,String column,String[] groupColumns,QueryArgument queryArgument){
+        OperationEvent operationEvent = startOperation("aggregate");
+        try {
+            awaitPendingWritesBeforeRead();
+            List<Map<String,?>> list = aggregate(aggregate,column,groupColumns,queryArgument,operationEvent);
+            operationEvent.setRowCount(list.size());
+            return list;
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
+        } finally {
+            finishOperation(operationEvent);
+        }
+    }
+
+    private List<Map<String,?>> aggregate(Aggregate aggregate,String column,String[] groupColumns,QueryArgument queryArgument,OperationEvent operationEvent){
+        ConditionCompiler.Selection selection = compileSelection(queryArgument.getConditionNode());
+        String[] selectColumns = Arrays.copyOf(groupColumns,groupColumns.length+1);
+        selectColumns[groupColumns.length] = String.format("%s(%s)",aggregateToFunction(aggregate),column);
+        StringBuilder groupBy = new StringBuilder();
+        for (int i=0;i<groupColumns.length;i++){
+            if (i > 0){
+                groupBy.append(",");
+            }
+            groupBy.append(groupColumns[i]);
+        }
+        QueryShape queryShape = new QueryShape(tableName,selectColumns,selection,groupColumns.length == 0? null : groupBy.toString(),null,null);
+        operationEvent.setQueryShape(queryShape);
+        Cursor cursor = querySelection(queryShape);
+        try {
+            List<Map<String,?>> list = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()){
+                Map<String,Object> map = new LinkedHashMap<>(selectColumns.length);
+                for (int i=0;i<groupColumns.length;i++){
+                    Pair<Boolean,Object> pair = getValueFromCursor(cursor,groupColumns[i],i);
+                    if (pair.first){
+                        map.put(groupColumns[i],pair.second);
+                    }
+                }
+                map.put(column,getAggregateValueFromCursor(cursor,aggregate,column,groupColumns.length));
+                list.add(map);
+            }
+            return list;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private String aggregateToFunction(Aggregate aggregate){
+        switch (aggregate){
+            case Count: return "count";
+            case Sum: return "sum";
+            case Min: return "min";
+            case Max: return "max";
+            case Avg: return "avg";
+        }
+        throw new IllegalArgumentException(String.valueOf(aggregate));
+    }
+
+    private Object getAggregateValueFromCursor(Cursor cursor,Aggregate aggregate,String column,int columnIndex){
+        if (cursor.getType(columnIndex) == FIELD_TYPE_NULL){
+            return null;
+        }
+        if ((aggregate == Aggregate.Min || aggregate == Aggregate.Max) && allKeyMap.containsKey(column)){
+            return getValueFromCursor(cursor,column,columnIndex).second;
+        }
+        if (aggregate == Aggregate.Avg || cursor.getType(columnIndex) == Cursor.FIELD_TYPE_FLOAT){
+            return cursor.getDouble(columnIndex);
+        }
+        return cursor.getLong(columnIndex);
+    }
+
+    @Override
+    public boolean contain(Object id){
+        OperationEvent operationEvent = startOperation("contain");
+        try {
+            boolean exist = containWithCache(id);
+            operationEvent.setRowCount(exist? 1 : 0);
+            return exist;
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
+        } finally {
+            finishOperation(operationEvent);
+        }
+    }
+
+    private boolean containWithCache(Object id){
+        awaitPendingWritesBeforeRead();
+        RowCache cache = rowCacheState.rowCache;
+        String key = idToKey(id);
+        if (cache != null){
+            RowCache.Entry entry = cache.get(key);
+            if (entry != null && !entry.isExpired(System.currentTimeMillis())){
+                return entry.exists();
+            }
+        }
+        long readGeneration = getRowCacheGeneration();
+        boolean exist = DatabaseUtils.longForQuery(innerHelper.getReadableDatabase(),String.format("select count(*) from %s where %s = ?%s",tableName,primaryKeyName,getExpirySelection()),objArrayToStringArray(new Object[]{id})) == 1;
+        if (cache != null && !exist){
+            cacheRow(cache,key,null,Long.MAX_VALUE,readGeneration);
+        }
+        return exist;
+    }
+
+    @Override
+    public Map<String,?> queryById(Object id){
+        return queryById(id,null);
+    }
+
+    //columns为null时查询全部列，否则只查询指定列与主键
+    public Map<String,?> queryById(Object id,String[] columns){
+        OperationEvent operationEvent = startOperation("queryById");
+        try {
+            operationEvent.setQueryShape(new QueryShape(tableName,getProjection(columns,null),idSelection,null,null,null));
+            Map<String,?> row = queryByIdWithCache(id,columns);
+            operationEvent.setRowCount(row == null? 0 : 1);
+            if (row != null && isTrackingAccess()){
+                recordAccess(id,System.currentTimeMillis());
+            }
+            return row;
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
+        } finally {
+            finishOperation(operationEvent);
+        }
+    }
+
+    private Map<String,?> queryByIdWithCache(Object id,String[] columns){
+        awaitPendingWritesBeforeRead();
+        RowCache cache = rowCacheState.rowCache;
+        if (cache == null){
+            return queryByIdFromDatabase(id,columns);
+        }
+        String key = idToKey(id);
+        RowCache.Entry entry = cache.get(key);
+        if (entry != null && !entry.isExpired(System.currentTimeMillis())){
+            return columns == null? entry.copyRow() : entry.copyRow(getProjection(columns,null));
+        }
+        if (columns != null){
+            //部分列不写入缓存
+            return queryByIdFromDatabase(id,columns);
+        }
+        long readGeneration = getRowCacheGeneration();
+        long[] expireAt = new long[]{Long.MAX_VALUE};
+        Map<String,?> row = queryByIdFromDatabase(id,null,expireAt);
+        cacheRow(cache,key,row,expireAt[0],readGeneration);
+        return row == null? null : new LinkedHashMap<>(row);
+    }
+
+    private Map<String,?> queryByIdFromDatabase(Object id,String[] columns){
+        return queryByIdFromDatabase(id,columns,null);
+    }
+
+    //expireAt不为null时同时读出该行的过期时间，行缓存中的项不会比行本身更晚过期
+    private Map<String,?> queryByIdFromDatabase(Object id,String[] columns,long[] expireAt){
+        Cursor cursor = innerHelper.getReadableDatabase().query(tableName,getProjection(columns,null),String.format("%s = ?%s",primaryKeyName,getExpirySelection()),objArrayToStringArray(new Object[]{id}),null,null,null,null);
+        try {
+            if (!cursor.moveToFirst()){
+                return null;
+            }
+            Map<String,Object> map = new LinkedHashMap<>(cursor.getColumnCount());
+            readRowFromCursor(cursor,cursor.getColumnNames(),map);
+            int expireAtIndex = expireAt == null? -1 : cursor.getColumnIndex(CachePolicy.EXPIRE_AT_COLUMN);
+            if (expireAtIndex >= 0 && !cursor.isNull(expireAtIndex)){
+                expireAt[0] = cursor.getLong(expireAtIndex);
+            }
+            return map;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void enableRowCache(int maxSize){
+        enableRowCache(maxSize,null,true);
+    }
+
+    //maxSize在rowWeigher为null时表示最大行数，否则表示最大权重
+    //缓存按表保存在共用的InnerHelper中，同一张表的任意LiteMapping开启、关闭或写入都作用于同一份缓存
+    public void enableRowCache(int maxSize,RowWeigher rowWeigher,boolean cacheMissingRows){
+        synchronized (rowCacheState){
+            rowCacheState.rowCache = new RowCache(maxSize,rowWeigher,cacheMissingRows);
+        }
+    }
+
+    public void disableRowCache(){
+        synchronized (rowCacheState){
+            rowCacheState.rowCache = null;
+        }
+    }
+
+    public RowCacheStats getRowCacheStats(){
+        RowCache cache = rowCacheState.rowCache;
+        return cache == null? null : cache.getStats();
+    }
+
+    private long getRowCacheGeneration(){
+        synchronized (rowCacheState){
+            return rowCacheState.generation;
+        }
+    }
+
+    //读取期间若有写操作发生、事务未结束或异步写未提交，读到的可能是旧数据，不写入缓存
+    private void cacheRow(RowCache cache,String key,Map<String,?> row,long expireAt,long readGeneration){
+        if (row == null && !cache.isCacheMissingRows()){
+            return;
+        }
+        synchronized (rowCacheState){
+            WriteBehindQueue queue = writeBehindQueue;
+            if (rowCacheState.rowCache == cache && rowCacheState.generation == readGeneration && rowCacheState.activeTransactionCount == 0 && (queue == null || !queue.hasPendingWrites())){
+                cache.put(key,new RowCache.Entry(row,expireAt));
+            }
+        }
+    }
+
+    private void invalidateRow(Object id){
+        synchronized (rowCacheState){
+            rowCacheState.generation++;
+            if (rowCacheState.rowCache != null && id != null){
+                rowCacheState.rowCache.remove(idToKey(id));
+            }
+        }
+    }
+
+    private void invalidateAllRows(){
+        synchronized (rowCacheState){
+            rowCacheState.generation++;
+            if (rowCacheState.rowCache != null){
+                rowCacheState.rowCache.evictAll();
+            }
+        }
+    }
+
+    private void beginTransaction(SQLiteDatabase db){
+        synchronized (rowCacheState){
+            rowCacheState.activeTransactionCount++;
+        }
+        db.beginTransaction();
+    }
+
+    private void endTransaction(SQLiteDatabase db){
+        try {
+            db.endTransaction();
+        } finally {
+            synchronized (rowCacheState){
+                rowCacheState.activeTransactionCount--;
+                rowCacheState.generation++;
+            }
+        }
+        //最外层事务结束后才通知观察者，重新查询时才能读到提交的数据
+        if (!db.inTransaction()){
+            invalidationTracker.flush();
+        }
+    }
+
+    //事务中只做标记，由endTransaction统一通知
+    private void notifyTableChanged(SQLiteDatabase db){
+        invalidationTracker.markChanged(tableName);
+        if (!db.inTransaction()){
+            invalidationTracker.flush();
+        }
+    }
+
+    //监听查询结果的变化，同一数据库中任意LiteMapping对该表的写操作提交后都会触发重新查询
+    public QuerySubscription observe(QueryArgument queryArgument,QueryObserver queryObserver){
+        return observe(queryArgument,queryObserver,DEFAULT_OBSERVE_DEBOUNCE_MILLIS);
+    }
+
+    public QuerySubscription observe(final QueryArgument queryArgument,QueryObserver queryObserver,long debounceMillis){
+        QuerySubscription querySubscription = new QuerySubscription(invalidationTracker,tableName,primaryKeyName,new Callable<List<Map<String,?>>>() {
+            @Override
+            public List<Map<String,?>> call() {
+                return query(queryArgument);
+            }
+        },queryObserver,debounceMillis);
+        querySubscription.start();
+        return querySubscription;
+    }
+
+    public List<Map<String,?>> queryByIdList(List<?> ids){
+        return queryByIdList(ids,null);
+    }
+
+    public List<Map<String,?>> queryByIdList(List<?> ids,String[] columns){
+        OperationEvent operationEvent = startOperation("queryByIdList");
+        operationEvent.setQueryShape(new QueryShape(tableName,getProjection(columns,null),new ConditionCompiler.Selection(getInSelection(1),new String[0],new Object[0]),null,null,null));
+        awaitPendingWritesBeforeRead();
+        //
+        SQLiteDatabase db = innerHelper.getReadableDatabase();
+        //
+        try {
+            List<Map<String,?>> list = new ArrayList<>(ids.size());
+            List<Object> distinctIds = distinctIds(ids);
+            Map<String,Map<String,?>> rowMap = new HashMap<>(distinctIds.size());
+            for (int start=0;start<distinctIds.size();start+=MAX_SQL_VARIABLE_NUMBER){
+                List<Object> chunk = distinctIds.subList(start,Math.min(start+MAX_SQL_VARIABLE_NUMBER,distinctIds.size()));
+                for (Map<String,?> row : queryDataListByCursor(db.query(tableName,getProjection(columns,null),getInSelection(chunk.size())+getExpirySelection(),objArrayToStringArray(chunk.toArray()),null,null,null,null))){
+                    rowMap.put(idToKey(row.get(primaryKeyName)),row);
+                }
+            }
+            //按调用方传入的id顺序返回
+            for (Object id : ids) {
+                Map<String,?> row = rowMap.get(idToKey(id));
+                if (row != null){
+                    list.add(row);
+                }
+            }
+            operationEvent.setRowCount(list.size());
+            recordAccess(list);
+            return list;
+        } catch (Exception e) {
+            reportError(operationEvent,e);
+            return new ArrayList<>();
+        } finally {
+            finishOperation(operationEvent);
+        }
+    }
+
+    //SQLITE_MAX_VARIABLE_NUMBER在3.32.0之前默认为999
+    private static final int MAX_SQL_VARIABLE_NUMBER = 999;
+
+    private List<Object> distinctIds(List<?> ids){
+        Map<String,Object> distinctIdMap = new LinkedHashMap<>(ids.size());
+        for (Object id : ids){
+            if (id != null){
+                distinctIdMap.put(idToKey(id),id);
+            }
+        }
+        return new ArrayList<>(distinctIdMap.values());
+    }
+
+    private String idToKey(Object id){
+        return id instanceof byte[]? Arrays.toString((byte[]) id) : String.valueOf(id);
+    }
+
+    private String getInSelection(int count){
+        return getInSelection(primaryKeyName,count);
+    }
+
+    private String getInSelection(String column,int count){
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append(column);
+        stringBuilder.append(" in (");
+        for (int i=0;i<count;i++){
+            if (i > 0){
+                stringBuilder.append(",");
+            }
+            stringBuilder.append("?");
+        }
+        stringBuilder.append(")");
+        return stringBuilder.toString();
+    }
+
+    //过期但还没有被后台清理的行对读取不可见，按主键写入前先删除，写入看到的行与读取一致
+    //否则插入会与不可见的行发生主键冲突，更新会命中它并由触发器重新计算过期时间，使其重新出现
+    //被删除的行中的外部文件由之后的清理回收
+    private void purgeExpiredRows(SQLiteDatabase db,List<?> ids){
+        CachePolicy policy = cacheState.cachePolicy;
+        if (policy == null || !policy.hasTimeToLive() || ids.isEmpty()){
+            return;
+        }
+        String selection = String.format("%s and %s <= %d",getInSelection(ids.size()),CachePolicy.EXPIRE_AT_COLUMN,System.currentTimeMillis());
+        if (db.delete(tableName,selection,objArrayToStringArray(ids.toArray())) > 0){
+            for (Object id : ids){
+                invalidateRow(id);
+            }
+        }
+    }
+
+    private Set<String> queryExistIdKeys(SQLiteDatabase db,List<Object> ids){
+        Cursor cursor = db.query(tableName,new String[]{primaryKeyName},getInSelection(ids.size()),objArrayToStringArray(ids.toArray()),null,null,null,null);
+        try {
+            Set<String> idKeys = new HashSet<>(cursor.getCount());
+            int columnIndex = cursor.getColumnIndex(primaryKeyName);
+            while (cursor.moveToNext()){
+                idKeys.add(idToKey(getValueFromCursor(cursor,primaryKeyName,columnIndex).second));
+            }
+            return idKeys;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static int countSuccess(List<Boolean> successList){
+        int count = 0;
+        for (Boolean success : successList){
+            if (success){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int countInserted(List<Long> idList){
+        int count = 0;
+        for (Long id : idList){
+            if (id >= 0){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int executeDeleteIn(SQLiteDatabase db,List<Object> ids){
+        SQLiteStatement statement = db.compileStatement(String.format("delete from %s where %s",tableName,getInSelection(ids.size())));
+        try {
+            for (int i=0;i<ids.size();i++){
+                bindValue(statement,i+1,primaryKeyName,ids.get(i));
+            }
+            int count = statement.executeUpdateDelete();
+            for (Object id : ids){
+                invalidateRow(id);
+            }
+            if (count > 0){
+                notifyTableChanged(db);
+            }
+            return count;
+        } finally {
+            statement.close();
+        }
+    }
+
+    private int executeUpdateIn(SQLiteDatabase db,List<Object> ids,List<String> updateColumns,Map<String,?> columns){
+        if (updateColumns.isEmpty()){
+            throw new IllegalArgumentException("Empty values");
+        }
+        StringBuilder stringBuilder = new StringBuilder();
+        for (int i=0;i<updateColumns.size();i++){
+            if (i > 0){
+                stringBuilder.append(",");
+            }
+            stringBuilder.append(updateColumns.get(i));
+            stringBuilder.append(" = ?");
+        }
+        SQLiteStatement statement = db.compileStatement(String.format("update %s set %s where %s",tableName,stringBuilder,getInSelection(ids.size())));
+        try {
+            for (int i=0;i<updateColumns.size();i++){
+                String key = updateColumns.get(i);
+                bindColumnValue(statement,i+1,key,columns.get(key));
+            }
+            for (int i=0;i<ids.size();i++){
+                bindValue(statement,updateColumns.size()+i+1,primaryKeyName,ids.get(i));
+            }
+            int count = statement.executeUpdateDelete();
+            for (Object id : ids){
+                invalidateRow(id);
+            }
+            if (columns.containsKey(primaryKeyName)){
+                invalidateRow(columns.get(primaryKeyName));
+            }
+            if (count > 0){
+                notifyTableChanged(db);
+            }
+            return count;
+        } finally {
+            statement.close();
+        }
+    }
+
+    private String[] objArrayToStringArray(Object[] objArray){
+        String[] stringArray = new String[objArray.length];
+        for (int i=0;i<stringArray.length;i++){
+            stringArray[i] = objArray[i] == null? null : objArray[i].toString();
+        }
+        return stringArray;
+    }
+
+    //ON CONFLICT DO UPDATE需要Sqlite 3.24(Android 11)，这里先insert or ignore，发生冲突时再replace或只更新指定列
+    private int executeUpsert(SQLiteDatabase db,Map<String,?> columns,ConflictStrategy conflictStrategy,String[] mergeColumns,OperationEvent operationEvent){
+        if (columns.get(primaryKeyName) == null){
+            return executeInsert(db,StatementType.Insert,columns,operationEvent) >= 0? UpsertOutcome.INSERTED : UpsertOutcome.FAILED;
+        }
+        if (executeInsert(db,StatementType.InsertOrIgnore,columns,operationEvent) >= 0){
+            return UpsertOutcome.INSERTED;
+        }
+        //or ignore同样会跳过唯一索引的冲突，主键对应的行存在时才是主键冲突，否则按普通insert重新执行，让约束错误正常上报
+        if (!existsRow(db,columns.get(primaryKeyName))){
+            return executeInsert(db,StatementType.Insert,columns,operationEvent) >= 0? UpsertOutcome.INSERTED : UpsertOutcome.FAILED;
+        }
+        switch (conflictStrategy){
+            case Replace:
+                return executeInsert(db,StatementType.InsertOrReplace,columns,operationEvent) >= 0? UpsertOutcome.UPDATED : UpsertOutcome.FAILED;
+            case Merge:
+                Set<String> updateKeys = getMergeKeys(columns,mergeColumns);
+                if (getKnownColumns(updateKeys).isEmpty()){
+                    return UpsertOutcome.IGNORED;
+                }
+                try {
+                    return executeUpdate(db,columns.get(primaryKeyName),updateKeys,columns) == 1? UpsertOutcome.UPDATED : UpsertOutcome.FAILED;
+                } catch (SQLException e){
+                    reportError(operationEvent,e);
+                    return UpsertOutcome.FAILED;
+                }
+            default:
+                return UpsertOutcome.IGNORED;
+        }
+    }
+
+    //在写入所用的连接上查询，能看到同一事务中尚未提交的行
+    private boolean existsRow(SQLiteDatabase db,Object id){
+        return DatabaseUtils.longForQuery(db,String.format("select count(*) from %s where %s = ?",tableName,primaryKeyName),objArrayToStringArray(new Object[]{id})) > 0;
+    }
+
+    private Set<String> getMergeKeys(Map<String,?> columns,String[] mergeColumns){
+        Set<String> updateKeys = new LinkedHashSet<>();
+        if (mergeColumns == null || mergeColumns.length == 0){
+            updateKeys.addAll(columns.keySet());
+        } else {
+            for (String mergeColumn : mergeColumns){
+                if (columns.containsKey(mergeColumn)){
+                    updateKeys.add(mergeColumn);
+                }
+            }
+        }
+        updateKeys.remove(primaryKeyName);
+        return updateKeys;
+    }
+
+    private long executeInsert(SQLiteDatabase db,Map<String,?> columns,OperationEvent operationEvent){
+        return executeInsert(db,StatementType.Insert,columns,operationEvent);
+    }
+
+    //失败的行返回-1，错误记录到operationEvent中，批量写入的其它行继续执行
+    private long executeInsert(SQLiteDatabase db,StatementType statementType,Map<String,?> columns,OperationEvent operationEvent){
+        try {
+            return executeInsertOrThrow(db,statementType,columns);
+        } catch (SQLException e){
+            reportError(operationEvent,e);
+            return -1;
+        }
+    }
+
+    private long executeInsertOrThrow(SQLiteDatabase db,StatementType statementType,Map<String,?> columns){
+        if (columns.get(primaryKeyName) != null){
+            purgeExpiredRows(db,Collections.singletonList(columns.get(primaryKeyName)));
+        }
+        CompiledStatement compiledStatement = getOrCompileStatement(db,statementType,columns.keySet());
+        synchronized (compiledStatement){
+            try {
+                bindColumns(compiledStatement,0,columns);
+                long rowId = compiledStatement.statement.executeInsert();
+                invalidateRow(columns.containsKey(primaryKeyName)? columns.get(primaryKeyName) : rowId);
+                if (rowId != -1){
+                    notifyTableChanged(db);
+                }
+                return rowId;
+            } finally {
+                compiledStatement.statement.clearBindings();
+            }
+        }
+    }
+
+    private long executeInsert(SQLiteDatabase db,Object id,Map<String,?> columns,OperationEvent operationEvent){
+        purgeExpiredRows(db,Collections.singletonList(id));
+        CompiledStatement compiledStatement = getOrCompileStatement(db,StatementType.InsertWithId,columns.keySet());
+        synchronized (compiledStatement){
+            try {
+                bindValue(compiledStatement.statement,1,primaryKeyName,id);
+                bindColumns(compiledStatement,1,columns);
+                long rowId = compiledStatement.statement.executeInsert();
+                invalidateRow(id);
+                if (rowId != -1){
+                    notifyTableChanged(db);
+                }
+                return rowId;
+            } catch (SQLException e){
+                reportError(operationEvent,e);
+                return -1;
+            } finally {
+                compiledStatement.statement.clearBindings();
+            }
+        }
+    }
+
+    private int executeUpdate(SQLiteDatabase db,Object id,Map<String,?> columns){
+        return executeUpdate(db,id,columns.keySet(),columns);
+    }
+
+    private int executeUpdate(SQLiteDatabase db,Object id,Set<String> keys,Map<String,?> columns){
+        purgeExpiredRows(db,keys.contains(primaryKeyName) && columns.get(primaryKeyName) != null? Arrays.asList(id,columns.get(primaryKeyName)) : Collections.singletonList(id));
+        CompiledStatement compiledStatement = getOrCompileStatement(db,StatementType.Update,keys);
+        synchronized (compiledStatement){
+            try {
+                bindColumns(compiledStatement,0,columns);
+                bindValue(compiledStatement.statement,compiledStatement.columns.length+1,primaryKeyName,id);
+                int count = compiledStatement.statement.executeUpdateDelete();
+                invalidateRow(id);
+                if (keys.contains(primaryKeyName)){
+                    invalidateRow(columns.get(primaryKeyName));
+                }
+                if (count > 0){
+                    notifyTableChanged(db);
+                }
+                return count;
+            } finally {
+                compiledStatement.statement.clearBindings();
+            }
+        }
+    }
+
+    private int executeDelete(SQLiteDatabase db,Object id){
+        purgeExpiredRows(db,Collections.singletonList(id));
+        CompiledStatement compiledStatement = getOrCompileStatement(db,StatementType.Delete,Collections.<String>emptySet());
+        synchronized (compiledStatement){
+            try {
+                bindValue(compiledStatement.statement,1,primaryKeyName,id);
+                int count = compiledStatement.statement.executeUpdateDelete();
+                invalidateRow(id);
+                if (count > 0){
+                    notifyTableChanged(db);
+                }
+                return count;
+            } finally {
+                compiledStatement.statement.clearBindings();
+            }
+        }
+    }
+
+    //按(操作类型,列集合)缓存预编译语句，同一形状的写入只解析一次SQL
+    private CompiledStatement getOrCompileStatement(SQLiteDatabase db,StatementType statementType,Set<String> keys){
+        synchronized (compiledStatementMap){
+            if (compiledStatementDb != db){
+                for (Map<Set<String>,CompiledStatement> map : compiledStatementMap.values()){
+                    for (CompiledStatement compiledStatement : map.values()){
+                        compiledStatement.statement.close();
+                    }
+                }
+                compiledStatementMap.clear();
+                compiledStatementDb = db;
+            }
+            Map<Set<String>,CompiledStatement> map = compiledStatementMap.get(statementType);
+            if (map == null){
+                map = new HashMap<>();
+                compiledStatementMap.put(statementType,map);
+            }
+            CompiledStatement compiledStatement = map.get(keys);
+            if (compiledStatement == null){
+                compiledStatement = compileStatement(db,statementType,keys);
+                map.put(new HashSet<>(keys),compiledStatement);
+            }
+            return compiledStatement;
+        }
+    }
+
+    private CompiledStatement compileStatement(SQLiteDatabase db,StatementType statementType,Set<String> keys){
+        List<String> columnList = getKnownColumns(keys);
+        if (statementType == StatementType.InsertWithId){
+            columnList.remove(primaryKeyName);
+        }
+        String[] columns = columnList.toArray(new String[columnList.size()]);
+        StringBuilder stringBuilder = new StringBuilder();
+        switch (statementType){
+            case Insert:
+            case InsertWithId:
+            case InsertOrIgnore:
+            case InsertOrReplace:
+                String insert = statementType == StatementType.InsertOrIgnore? "insert or ignore" : statementType == StatementType.InsertOrReplace? "insert or replace" : "insert";
+                if (statementType == StatementType.InsertWithId){
+                    columnList.add(0,primaryKeyName);
+                }
+                if (columnList.isEmpty()){
+                    stringBuilder.append(String.format("%s into %s default values",insert,tableName));
+                    break;
+                }
+                StringBuilder placeholderBuilder = new StringBuilder();
+                for (int i=0;i<columnList.size();i++){
+                    if (i > 0){
+                        stringBuilder.append(",");
+                        placeholderBuilder.append(",");
+                    }
+                    stringBuilder.append(columnList.get(i));
+                    placeholderBuilder.append("?");
+                }
+                stringBuilder.insert(0,String.format("%s into %s (",insert,tableName));
+                stringBuilder.append(") values (");
+                stringBuilder.append(placeholderBuilder);
+                stringBuilder.append(")");
+                break;
+            case Update:
+                if (columns.length == 0){
+                    throw new IllegalArgumentException("Empty values");
+                }
+                stringBuilder.append(String.format("update %s set ",tableName));
+                for (int i=0;i<columns.length;i++){
+                    if (i > 0){
+                        stringBuilder.append(",");
+                    }
+                    stringBuilder.append(columns[i]);
+                    stringBuilder.append(" = ?");
+                }
+                stringBuilder.append(String.format(" where %s = ?",primaryKeyName));
+                break;
+            case Delete:
+                stringBuilder.append(String.format("delete from %s where %s = ?",tableName,primaryKeyName));
+                break;
+        }
+        return new CompiledStatement(db.compileStatement(stringBuilder.toString()),columns);
+    }
+
+    private List<String> getKnownColumns(Set<String> keys){
+        List<String> columnList = new ArrayList<>(keys.size());
+        for (String key : keys){
+            if (allKeyMap.containsKey(key)){
+                columnList.add(key);
+            }
+        }
+        return columnList;
+    }
+
+    private void bindColumns(CompiledStatement compiledStatement,int offset,Map<String,?> columns){
+        for (int i=0;i<compiledStatement.columns.length;i++){
+            String key = compiledStatement.columns[i];
+            bindColumnValue(compiledStatement.statement,offset+i+1,key,columns.get(key));
+        }
+    }
+
+    //只有写入的列值会转存到外部，条件中的值保持原样，查询外部存储的字段需要用BlobHandle作为条件
+    private void bindColumnValue(SQLiteProgram statement,int index,String key,Object value){
+        bindValue(statement,index,key,toExternalBlob(key,value));
+    }
+
+    private Object toExternalBlob(String key,Object value){
+        int threshold = externalBlobThreshold;
+        try {
+            if (value instanceof byte[] && threshold >= 0 && ((byte[]) value).length > threshold && blobColumns.contains(key)){
+                return blobStore.store((byte[]) value);
+            }
+            //来自其他表的BlobHandle复制到本表的目录
+            if (value instanceof BlobHandle && !blobStore.contains((BlobHandle) value)){
+                InputStream inputStream = ((BlobHandle) value).openInputStream();
+                try {
+                    return blobStore.store(inputStream);
+                } finally {
+                    inputStream.close();
+                }
+            }
+        } catch (IOException e){
+            throw new IllegalStateException(e);
+        }
+        return value;
+    }
+
+    //读取即将删除或覆盖的行中的外部引用，表中从未转存过字段时不做额外查询
+    private Set<String> queryBlobReferences(SQLiteDatabase db,List<?> ids,Collection<String> columns){
+        Set<String> references = new HashSet<>();
+        List<String> columnList = new ArrayList<>();
+        for (String column : columns){
+            if (blobColumns.contains(column)){
+                columnList.add(column);
+            }
+        }
+        if (columnList.isEmpty() || ids.isEmpty() || !blobStore.exists()){
+            return references;
+        }
+        Cursor cursor = db.query(tableName,columnList.toArray(new String[columnList.size()]),getInSelection(ids.size()),objArrayToStringArray(ids.toArray()),null,null,null,null);
+        try {
+            while (cursor.moveToNext()){
+                for (int i=0;i<columnList.size();i++){
+                    if (cursor.getType(i) == FIELD_TYPE_STRING){
+                        references.add(cursor.getString(i));
+                    }
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return references;
+    }
+
+    //同步与异步的单行写入共用，执行前读取将被覆盖的外部引用，执行后释放
+    private boolean updateRow(SQLiteDatabase db,Object id,Map<String,?> columns){
+        Set<String> blobReferences = queryBlobReferences(db,Collections.singletonList(id),columns.keySet());
+        boolean result = executeUpdate(db,id,columns) == 1;
+        releaseBlobs(db,blobReferences);
+        return result;
+    }
+
+    private boolean deleteRow(SQLiteDatabase db,Object id){
+        Set<String> blobReferences = queryBlobReferences(db,Collections.singletonList(id),blobColumns);
+        boolean result = executeDelete(db,id) == 1;
+        releaseBlobs(db,blobReferences);
+        return result;
+    }
+
+    //Replace覆盖整行，Merge只覆盖合并的列，没有冲突时读不到旧行
+    private Set<String> queryUpsertBlobReferences(SQLiteDatabase db,Map<String,?> columns,ConflictStrategy conflictStrategy,String[] mergeColumns){
+        Object id = columns.get(primaryKeyName);
+        if (id == null){
+            return new HashSet<>();
+        }
+        switch (conflictStrategy){
+            case Replace:
+                return queryBlobReferences(db,Collections.singletonList(id),blobColumns);
+            case Merge:
+                return queryBlobReferences(db,Collections.singletonList(id),getMergeKeys(columns,mergeColumns));
+            default:
+                return new HashSet<>();
+        }
+    }
+
+    //确认已没有行引用后删除文件，相同内容可能被多行共享，此前留待重试的文件一并重新确认
+    //仍在事务中(调用方的事务或write-behind的批次)时只记录下来，避免外层回滚后引用指向已删除的文件，由之后的写入或延迟重试回收
+    private void releaseBlobs(SQLiteDatabase db,Set<String> references){
+        if (db.inTransaction()){
+            if (!references.isEmpty()){
+                blobStore.defer(toBlobHashes(references));
+                scheduleBlobRetry();
+            }
+            return;
+        }
+        references.addAll(blobStore.takePendingReferences());
+        if (references.isEmpty()){
+            return;
+        }
+        try {
+            List<String> referenceList = new ArrayList<>(references);
+            for (String column : blobColumns){
+                for (int start=0;start<referenceList.size();start+=MAX_SQL_VARIABLE_NUMBER){
+                    List<String> chunk = referenceList.subList(start,Math.min(start+MAX_SQL_VARIABLE_NUMBER,referenceList.size()));
+                    Cursor cursor = db.query(tableName,new String[]{column},getInSelection(column,chunk.size()),chunk.toArray(new String[chunk.size()]),null,null,null,null);
+                    try {
+                        while (cursor.moveToNext()){
+                            references.remove(cursor.getString(0));
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+            }
+            blobStore.delete(toBlobHashes(references));
+        } catch (RuntimeException e){
+            //回收失败不影响已经完成的写入，未确认的文件留待重试
+            blobStore.defer(toBlobHashes(references));
+            e.printStackTrace();
+        }
+        scheduleBlobRetry();
+    }
+
+    private List<String> toBlobHashes(Collection<String> references){
+        List<String> hashes = new ArrayList<>(references.size());
+        for (String reference : references){
+            BlobHandle blobHandle = blobStore.open(reference);
+            if (blobHandle != null){
+                hashes.add(blobHandle.getHash());
+            }
+        }
+        return hashes;
+    }
+
+    //宽限期过后在清理线程上重试一次，期间没有新的写入也能回收
+    private void scheduleBlobRetry(){
+        if (!blobStore.requestRetry()){
+            return;
+        }
+        getCleanupExecutor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                blobStore.onRetry();
+                try {
+                    releaseBlobs(innerHelper.getWritableDatabase(),new HashSet<String>());
+                } catch (RuntimeException e){
+                    e.printStackTrace();
+                }
+            }
+        },blobStore.getGracePeriod(),TimeUnit.MILLISECONDS);
+    }
+
+    //在写事务中扫描，其它线程未提交的写入结束之前不会开始，扫描与删除期间也不会有新的引用提交
+    //读连接只能看到已提交的数据，在读连接上扫描会删除正在写入的事务刚引用的文件
+    private int sweepBlobs(SQLiteDatabase db){
+        if (blobColumns.isEmpty() || !blobStore.exists()){
+            return 0;
+        }
+        int count;
+        beginTransaction(db);
+        try {
+            Set<String> hashes = new HashSet<>();
+            for (String column : blobColumns){
+                Cursor cursor = db.query(tableName,new String[]{column},String.format("typeof(%s) = 'text'",column),null,null,null,null,null);
+                try {
+                    while (cursor.moveToNext()){
+                        BlobHandle blobHandle = blobStore.open(cursor.getString(0));
+                        if (blobHandle != null){
+                            hashes.add(blobHandle.getHash());
+                        }
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            count = blobStore.sweep(hashes);
+            db.setTransactionSuccessful();
+        } finally {
+            endTransaction(db);
+        }
+        scheduleBlobRetry();
+        return count;
+    }
+
+    //条件中的值优先按列声明的类型绑定，类型不匹配(如Like的模式串)或列未声明时按值本身的类型绑定
+    private void bindConditionValue(SQLiteProgram program,int index,String key,Object value){
+        Class<?> cla = allKeyMap.get(key);
+        MimeType mimeType = cla == null? null : getMimeType(cla);
+        if (value == null || (mimeType != null && isBindable(mimeType,value))){
+            bindValue(program,index,key,value);
+        } else if (value instanceof Float || value instanceof Double){
+            program.bindDouble(index,((Number) value).doubleValue());
+        } else if (value instanceof Number){
+            program.bindLong(index,((Number) value).longValue());
+        } else if (value instanceof byte[]){
+            program.bindBlob(index,(byte[]) value);
+        } else {
+            program.bindString(index,value.toString());
+        }
+    }
+
+    private boolean isBindable(MimeType mimeType,Object value){
+        switch (mimeType){
+            case Byte:
+            case Short:
+            case Int:
+            case Long:
+            case Float:
+            case Double:
+                return value instanceof Number;
+            case Blob:
+                return value instanceof byte[] || value instanceof BlobHandle;
+            default:
+                return true;
+        }
+    }
+
+    private void bindValue(SQLiteProgram statement,int index,String key,Object value){
+        if (value == null){
+            statement.bindNull(index);
+        } else {
+            switch (getMimeType(allKeyMap.get(key))){
+                case Boolean:
+                case Char:
+                case String:
+                    statement.bindString(index,value.toString());
+                    break;
+                case Byte:
+                case Short:
+                case Int:
+                case Long:
+                    statement.bindLong(index,((Number) value).longValue());
+                    break;
+                case Float:
+                    statement.bindDouble(index,((Number) value).floatValue());
+                    break;
+                case Double:
+                    statement.bindDouble(index,((Number) value).doubleValue());
+                    break;
+                case Blob:
+                    if (value instanceof BlobHandle){
+                        statement.bindString(index,value.toString());
+                    } else {
+                        statement.bindBlob(index,(byte[])value);
+                    }
+                    break;
+            }
+        }
+    }
+
+    private final Map<StatementType,Map<Set<String>,CompiledStatement>> compiledStatementMap = new EnumMap<>(StatementType.class);
+    private SQLiteDatabase compiledStatementDb;
+
+    private enum StatementType{
+        Insert,
+        InsertWithId,
+        InsertOrIgnore,
+        InsertOrReplace,
+        Update,
+        Delete,
+    }
+
+    private static class CompiledStatement{
+
+        private final SQLiteStatement statement;
+        private final String[] columns;
+
+        private CompiledStatement(SQLiteStatement statement, String[] columns) {
+            this.statement = statement;
+            this.columns = columns;
+        }
+
+    }
+
+    private <T> List<T> queryIdListByCursor(Cursor cursor){
+        try {
+            List<T> list = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()){
+                list.add((T) getValueFromCursor(cursor,primaryKeyName,cursor.getColumnIndex(primaryKeyName)).second);
+            }
+            return list;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private List<Map<String,?>>queryDataListByCursor(Cursor cursor){
+        try {
+            List<Map<String,?>> list = new ArrayList<>(cursor.getCount());
+            String[] columnNames = cursor.getColumnNames();
+            while (cursor.moveToNext()){
+                Map<String,Object> map = new LinkedHashMap<>(columnNames.length);
+                readRowFromCursor(cursor,columnNames,map);
+                list.add(map);
+            }
+            return list;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private ColumnarResult queryColumnarByCursor(Cursor cursor){
+        try {
+            int rowCount = cursor.getCount();
+            //只保留allKeyMap中声明过类型的列
+            List<String> columnNameList = new ArrayList<>();
+            List<Integer> columnIndexList = new ArrayList<>();
+            for (String name : cursor.getColumnNames()){
+                if (allKeyMap.containsKey(name)){
+                    columnNameList.add(name);
+                    columnIndexList.add(cursor.getColumnIndex(name));
+                }
+            }
+            int columnCount = columnNameList.size();
+            int[] columnIndexes = new int[columnCount];
+            MimeType[] mimeTypes = new MimeType[columnCount];
+            Object[] columnArrays = new Object[columnCount];
+            for (int i=0;i<columnCount;i++){
+                columnIndexes[i] = columnIndexList.get(i);
+                mimeTypes[i] = getMimeType(allKeyMap.get(columnNameList.get(i)));
+                columnArrays[i] = newColumnArray(mimeTypes[i],rowCount);
+            }
+            ColumnarResult result = new ColumnarResult(rowCount,columnNameList.toArray(new String[columnCount]),columnArrays);
+            int row = 0;
+            while (cursor.moveToNext() && row < rowCount){
+                for (int i=0;i<columnCount;i++){
+                    int columnIndex = columnIndexes[i];
+                    if (cursor.isNull(columnIndex)){
+                        result.setNull(i,row);
+                        continue;
+                    }
+                    switch (mimeTypes[i]){
+                        case Byte:
+                        case Short:
+                        case Int:
+                            ((int[]) columnArrays[i])[row] = cursor.getInt(columnIndex);
+                            break;
+                        case Long:
+                            ((long[]) columnArrays[i])[row] = cursor.getLong(columnIndex);
+                            break;
+                        case Float:
+                        case Double:
+                            ((double[]) columnArrays[i])[row] = cursor.getDouble(columnIndex);
+                            break;
+                        case Boolean:
+                            ((boolean[]) columnArrays[i])[row] = Boolean.parseBoolean(cursor.getString(columnIndex));
+                            break;
+                        case Char:
+                            ((char[]) columnArrays[i])[row] = cursor.getString(columnIndex).charAt(0);
+                            break;
+                        case String:
+                            ((String[]) columnArrays[i])[row] = cursor.getString(columnIndex);
+                            break;
+                        case Blob:
+                            ((byte[][]) columnArrays[i])[row] = getBlobBytesFromCursor(cursor,columnIndex);
+                            break;
+                    }
+                }
+                row++;
+            }
+            return result;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Object newColumnArray(MimeType mimeType,int rowCount){
+        switch (mimeType){
+            case Byte:
+            case Short:
+            case Int:
+                return new int[rowCount];
+            case Long:
+                return new long[rowCount];
+            case Float:
+            case Double:
+                return new double[rowCount];
+            case Boolean:
+                return new boolean[rowCount];
+            case Char:
+                return new char[rowCount];
+            case Blob:
+                return new byte[rowCount][];
+            default:
+                return new String[rowCount];
+        }
+    }
+
+    <T> List<T> queryEntities(QueryArgument queryArgument,EntityAccessor<T> accessor){
+        OperationEvent operationEvent = startOperation("queryEntities");
+        try {
+            List<T> list = queryEntitiesByCursor(queryCursor(queryArgument,operationEvent),accessor);
+            operationEvent.setRowCount(list.size());
+            return list;
+        } catch (RuntimeException e){
+            throw operationEvent.fail(e);
+        } finally {
+            finishOperation(operationEvent);
+        }
+    }
+
+    <T> T queryEntityById(Object id,EntityAccessor<T> accessor){
+        awaitPendingWritesBeforeRead();
+        List<T> list = queryEntitiesByCursor(innerHelper.getReadableDatabase().query(tableName,new String[]{"*"},String.format("%s = ?%s",primaryKeyName,getExpirySelection()),objArrayToStringArray(new Object[]{id}),null,null,null,null),accessor);
+        if (list.isEmpty()){
+            return null;
+        }
+        if (isTrackingAccess()){
+            recordAccess(id,System.currentTimeMillis());
+        }
+        return list.get(0);
+    }
+
+    //直接从Cursor写入实体字段，不经过中间的Map
+    private <T> List<T> queryEntitiesByCursor(Cursor cursor,EntityAccessor<T> accessor){
+        try {
+            String[] columnNames = cursor.getColumnNames();
+            Field[] fields = new Field[columnNames.length];
+            MimeType[] mimeTypes = new MimeType[columnNames.length];
+            for (int i=0;i<columnNames.length;i++){
+                int fieldIndex = accessor.getFieldIndex(columnNames[i]);
+                if (fieldIndex >= 0 && allKeyMap.containsKey(columnNames[i])){
+                    fields[i] = accessor.getField(fieldIndex);
+                    mimeTypes[i] = getMimeType(fields[i].getType());
+                }
+            }
+            List<T> list = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()){
+                T entity = accessor.newInstance();
+                for (int i=0;i<columnNames.length;i++){
+                    if (fields[i] != null && !cursor.isNull(i)){
+                        setFieldFromCursor(entity,fields[i],mimeTypes[i],cursor,i);
+                    }
+                }
+                list.add(entity);
+            }
+            return list;
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void setFieldFromCursor(Object entity,Field field,MimeType mimeType,Cursor cursor,int columnIndex) throws IllegalAccessException {
+        boolean primitive = field.getType().isPrimitive();
+        switch (mimeType){
+            case Byte:
+                if (primitive) field.setByte(entity,(byte) cursor.getInt(columnIndex)); else field.set(entity,(byte) cursor.getInt(columnIndex));
+                break;
+            case Short:
+                if (primitive) field.setShort(entity,cursor.getShort(columnIndex)); else field.set(entity,cursor.getShort(columnIndex));
+                break;
+            case Int:
+                if (primitive) field.setInt(entity,cursor.getInt(columnIndex)); else field.set(entity,cursor.getInt(columnIndex));
+                break;
+            case Long:
+                if (primitive) field.setLong(entity,cursor.getLong(columnIndex)); else field.set(entity,cursor.getLong(columnIndex));
+                break;
+            case Float:
+                if (primitive) field.setFloat(entity,cursor.getFloat(columnIndex)); else field.set(entity,cursor.getFloat(columnIndex));
+                break;
+            case Double:
+                if (primitive) field.setDouble(entity,cursor.getDouble(columnIndex)); else field.set(entity,cursor.getDouble(columnIndex));
+                break;
+            case Boolean:
+                if (primitive) field.setBoolean(entity,Boolean.parseBoolean(cursor.getString(columnIndex))); else field.set(entity,Boolean.valueOf(cursor.getString(columnIndex)));
+                break;
+            case Char:
+                if (primitive) field.setChar(entity,cursor.getString(columnIndex).charAt(0)); else field.set(entity,cursor.getString(columnIndex).charAt(0));
+                break;
+            case String:
+                field.set(entity,cursor.getString(columnIndex));
+                break;
+            case Blob:
+                field.set(entity,getBlobBytesFromCursor(cursor,columnIndex));
+                break;
+        }
+    }
+
+    private void readRowFromCursor(Cursor cursor,String[] columnNames,Map<String,Object> map){
+        for (int i=0;i<columnNames.length;i++){
+            Pair<Boolean,Object> pair = getValueFromCursor(cursor,columnNames[i],i);
+            if (pair.first){
+                map.put(columnNames[i],pair.second);
+            }
+        }
+    }
+
+    //只返回allKeyMap中声明过的列，CachePolicy的隐藏列等其它列即使为null也不会出现在结果中
     private Pair<Boolean,Object> getValueFromCursor(Cursor cursor,String name,int columnIndex){
+        if (!allKeyMap.containsKey(name)){
+            return new Pair<>(false,null);
+        }
         if(cursor.getType(columnIndex) == FIELD_TYPE_NULL){
             return new Pair<>(true,null);
-        } else {
-            if (allKeyMap.containsKey(name)){
-                switch (getMimeType(allKeyMap.get(name))){
-                    case Byte: return new Pair<Boolean,Object>(true,cursor.getInt(columnIndex));
-                    case Short: return new Pair<Boolean,Object>(true,cursor.getShort(columnIndex));
-                    case Int: return new Pair<Boolean,Object>(true,cursor.getInt(columnIndex));
-                    case Long: return new Pair<Boolean,Object>(true,cursor.getLong(columnIndex));
-                    case Float: return new Pair<Boolean,Object>(true,cursor.getFloat(columnIndex));
-                    case Double: return new Pair<Boolean,Object>(true,cursor.getDouble(columnIndex));
-                    case Boolean: return new Pair<Boolean,Object>(true,Boolean.valueOf(cursor.getString(columnIndex)));
-                    case Char: return new Pair<Boolean,Object>(true,cursor.getString(columnIndex).toCharArray()[0]);
-                    case String: return new Pair<Boolean,Object>(true,cursor.getString(columnIndex));
-                    case Blob: return new Pair<Boolean,Object>(true,cursor.getBlob(columnIndex));
+        }
+        switch (getMimeType(allKeyMap.get(name))){
+            case Byte: return new Pair<Boolean,Object>(true,cursor.getInt(columnIndex));
+            case Short: return new Pair<Boolean,Object>(true,cursor.getShort(columnIndex));
+            case Int: return new Pair<Boolean,Object>(true,cursor.getInt(columnIndex));
+            case Long: return new Pair<Boolean,Object>(true,cursor.getLong(columnIndex));
+            case Float: return new Pair<Boolean,Object>(true,cursor.getFloat(columnIndex));
+            case Double: return new Pair<Boolean,Object>(true,cursor.getDouble(columnIndex));
+            case Boolean: return new Pair<Boolean,Object>(true,Boolean.valueOf(cursor.getString(columnIndex)));
+            case Char: return new Pair<Boolean,Object>(true,cursor.getString(columnIndex).toCharArray()[0]);
+            case String: return new Pair<Boolean,Object>(true,cursor.getString(columnIndex));
+            case Blob: return new Pair<Boolean,Object>(true,getBlobFromCursor(cursor,columnIndex));
+        }
+        return new Pair<>(false,null);
+    }
+
+    //外部存储的字段在行中是文本引用，返回BlobHandle，不读取文件内容
+    private Object getBlobFromCursor(Cursor cursor,int columnIndex){
+        if (cursor.getType(columnIndex) == FIELD_TYPE_STRING){
+            BlobHandle blobHandle = blobStore.open(cursor.getString(columnIndex));
+            if (blobHandle != null){
+                return blobHandle;
+            }
+        }
+        return cursor.getBlob(columnIndex);
+    }
+
+    //实体字段、列式结果与快照需要byte[]，读取完整内容
+    private byte[] getBlobBytesFromCursor(Cursor cursor,int columnIndex){
+        Object value = getBlobFromCursor(cursor,columnIndex);
+        if (value instanceof BlobHandle){
+            try {
+                return ((BlobHandle) value).readBytes();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return (byte[]) value;
+    }
+
+    //游标读完或调用close()后即释放，reuseRow为true时每次next()返回同一个Map对象
+    public class RowIterator implements Iterator<Map<String,?>>,Iterable<Map<String,?>>,Closeable {
+
+        private final Cursor cursor;
+        private final String[] columnNames;
+        private final Map<String,Object> reusableRow;
+
+        private boolean prefetched;
+        private boolean hasNextRow;
+
+        private RowIterator(Cursor cursor,boolean reuseRow) {
+            this.cursor = cursor;
+            this.columnNames = cursor.getColumnNames();
+            this.reusableRow = reuseRow? new LinkedHashMap<String,Object>(columnNames.length) : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!prefetched){
+                hasNextRow = !cursor.isClosed() && cursor.moveToNext();
+                prefetched = true;
+                if (!hasNextRow){
+                    close();
                 }
             }
+            return hasNextRow;
         }
-        return new Pair<>(false,null);
+
+        @Override
+        public Map<String,?> next() {
+            if (!hasNext()){
+                throw new NoSuchElementException();
+            }
+            prefetched = false;
+            Map<String,Object> row;
+            if (reusableRow != null){
+                row = reusableRow;
+                row.clear();
+            } else {
+                row = new LinkedHashMap<>(columnNames.length);
+            }
+            readRowFromCursor(cursor,columnNames,row);
+            return row;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Iterator<Map<String,?>> iterator() {
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (!cursor.isClosed()){
+                cursor.close();
+            }
+        }
+
     }
 
-    private final Map<Class<?>,MimeType> mimeTypeMap = new HashMap<>();{
-        mimeTypeMap.put(byte.class, MimeType.Byte);
-        mimeTypeMap.put(Byte.class, MimeType.Byte);
-        mimeTypeMap.put(short.class, MimeType.Short);
-        mimeTypeMap.put(Short.class, MimeType.Short);
-        mimeTypeMap.put(int.class, MimeType.Int);
-        mimeTypeMap.put(Integer.class, MimeType.Int);
-        mimeTypeMap.put(long.class, MimeType.Long);
-        mimeTypeMap.put(Long.class, MimeType.Long);
-        mimeTypeMap.put(float.class, MimeType.Float);
-        mimeTypeMap.put(Float.class, MimeType.Float);
-        mimeTypeMap.put(double.class, MimeType.Double);
-        mimeTypeMap.put(Double.class, MimeType.Double);
-        mimeTypeMap.put(boolean.class, MimeType.Boolean);
-        mimeTypeMap.put(Boolean.class, MimeType.Boolean);
-        mimeTypeMap.put(char.class, MimeType.Char);
-        mimeTypeMap.put(Character.class, MimeType.Char);
-        mimeTypeMap.put(String.class, MimeType.String);
-        mimeTypeMap.put(byte[].class, MimeType.Blob);
-    }
-    private MimeType getMimeType(Class<?> cla){
-        return mimeTypeMap.get(cla);
-    }
-
-    private enum MimeType{
-        Byte,
-        Short,
-        Int,
-        Long,
-        Float,
-        Double,
-        Boolean,
-        Char,
-        String,
-        Blob,
+    private static MimeType getMimeType(Class<?> cla){
+        return MimeType.of(cla);
+    }
+
+    static boolean isSupportedType(Class<?> cla){
+        return MimeType.of(cla) != null;
     }
 
     public static class SqliteHelperPool{
 
+        private static SqliteHelperPool defaultPool;
+
+        public static synchronized SqliteHelperPool getDefault(){
+            if (defaultPool == null){
+                defaultPool = new SqliteHelperPool();
+            }
+            return defaultPool;
+        }
+
         private final Map<String,InnerHelper> sqliteHelperMap = new HashMap<>();
 
+        private final JournalMode journalMode;
+        private final Synchronous synchronous;
+
+        public SqliteHelperPool(){
+            this(JournalMode.Wal,Synchronous.Normal);
+        }
+
+        public SqliteHelperPool(JournalMode journalMode, Synchronous synchronous){
+            this.journalMode = journalMode;
+            this.synchronous = synchronous;
+        }
+
         public InnerHelper getOrCreateHelper(Context context, String dbName, String tableName, boolean autoincrement, Pair<String,Class<?>> primaryKeyPair,  Map<String,Class<?>> otherKeyMap){
-            InnerHelper helper;
-            if (sqliteHelperMap.containsKey(dbName)){
-                helper = sqliteHelperMap.get(dbName);
-            } else {
-                helper = new InnerHelper(context, dbName);
-                sqliteHelperMap.put(dbName,helper);
+            return getOrCreateHelper(context,dbName,tableName,autoincrement,primaryKeyPair,otherKeyMap,new ArrayList<Index>());
+        }
+
+        public InnerHelper getOrCreateHelper(Context context, String dbName, String tableName, boolean autoincrement, Pair<String,Class<?>> primaryKeyPair,  Map<String,Class<?>> otherKeyMap, List<Index> indexList){
+            return getOrCreateHelper(context,dbName,tableName,autoincrement,primaryKeyPair,otherKeyMap,indexList,null);
+        }
+
+        public InnerHelper getOrCreateHelper(Context context, String dbName, String tableName, boolean autoincrement, Pair<String,Class<?>> primaryKeyPair,  Map<String,Class<?>> otherKeyMap, List<Index> indexList, FullTextIndex fullTextIndex){
+            InnerHelper helper = getOrCreateHelper(context,dbName);
+            //同一数据库的建表与索引变更串行执行，不同数据库之间互不阻塞
+            synchronized (helper){
+                helper.ensureSchema(tableName,autoincrement,primaryKeyPair,otherKeyMap,indexList,fullTextIndex);
             }
-            helper.createOrUpdateTable(helper.getWritableDatabase(),tableName,autoincrement,primaryKeyPair,otherKeyMap);
             return helper;
         }
 
+        //在runnable中创建的同一数据库的LiteMapping，其表结构检查与变更合并到一个事务中提交
+        public void runInSchemaTransaction(Context context, String dbName, Runnable runnable){
+            InnerHelper helper = getOrCreateHelper(context,dbName);
+            synchronized (helper){
+                SQLiteDatabase db = helper.getWritableDatabase();
+                boolean success = false;
+                db.beginTransaction();
+                try {
+                    runnable.run();
+                    db.setTransactionSuccessful();
+                    success = true;
+                } finally {
+                    db.endTransaction();
+                    if (!success){
+                        //事务回滚后内存中的表结构摘要已不可信，下次重新读取
+                        helper.schemaHashMap = null;
+                    }
+                }
+            }
+        }
+
+        private InnerHelper getOrCreateHelper(Context context, String dbName){
+            synchronized (sqliteHelperMap){
+                InnerHelper helper = sqliteHelperMap.get(dbName);
+                if (helper == null){
+                    helper = new InnerHelper(context,dbName,journalMode,synchronous);
+                    sqliteHelperMap.put(dbName,helper);
+                }
+                return helper;
+            }
+        }
+
+    }
+
+    //Wal模式下SQLiteDatabase内部维护一个写连接与多个读连接，事务外的查询走读连接，不会等待批量写入的事务
+    public enum JournalMode{
+        Delete,
+        Truncate,
+        Persist,
+        Memory,
+        Wal,
+    }
+
+    public enum Synchronous{
+        Off,
+        Normal,
+        Full,
     }
 
     private static class InnerHelper extends SQLiteOpenHelper {
@@ -555,19 +3302,172 @@ public class LiteMapping {
 
         private final String dbName;
 
-        private final String KEY_ALL_COLUMN = "AllColumn";
+        private final JournalMode journalMode;
+        private final Synchronous synchronous;
+
+        private static final String SCHEMA_TABLE = "lite_mapping_schema";
+        private static final String SCHEMA_TABLE_NAME = "table_name";
+        private static final String SCHEMA_HASH = "schema_hash";
+
+        private Map<String,String> schemaHashMap;
+
+        private final InvalidationTracker invalidationTracker = new InvalidationTracker();
 
-        public InnerHelper(Context context,String dbName) {
+        private final Map<String,CacheState> cacheStateMap = new HashMap<>();
+        private final Map<String,RowCacheState> rowCacheStateMap = new HashMap<>();
+        private final Map<String,BlobStore> blobStoreMap = new HashMap<>();
+
+        public InnerHelper(Context context,String dbName,JournalMode journalMode,Synchronous synchronous) {
             super(context,dbName+".db",null,1);
-            this.context = context;
+            //helper会被连接池长期持有，避免引用Activity
+            this.context = context.getApplicationContext() == null? context : context.getApplicationContext();
             this.dbName = dbName;
+            this.journalMode = journalMode;
+            this.synchronous = synchronous;
+            setWriteAheadLoggingEnabled(journalMode == JournalMode.Wal);
+        }
+
+        private synchronized CacheState getCacheState(String tableName){
+            CacheState cacheState = cacheStateMap.get(tableName);
+            if (cacheState == null){
+                cacheState = new CacheState();
+                cacheStateMap.put(tableName,cacheState);
+            }
+            return cacheState;
+        }
+
+        private synchronized RowCacheState getRowCacheState(String tableName){
+            RowCacheState rowCacheState = rowCacheStateMap.get(tableName);
+            if (rowCacheState == null){
+                rowCacheState = new RowCacheState();
+                rowCacheStateMap.put(tableName,rowCacheState);
+            }
+            return rowCacheState;
+        }
+
+        //同一张表的所有LiteMapping共用一个BlobStore，写入、回收与待重试的文件在同一把锁下
+        private synchronized BlobStore getBlobStore(String tableName,File directory){
+            BlobStore blobStore = blobStoreMap.get(tableName);
+            if (blobStore == null){
+                blobStore = new BlobStore(directory);
+                blobStoreMap.put(tableName,blobStore);
+            }
+            return blobStore;
+        }
+
+        @Override
+        public void onConfigure(SQLiteDatabase db) {
+            if (journalMode != JournalMode.Wal){
+                executePragma(db,String.format("pragma journal_mode = %s",journalMode.name().toLowerCase()));
+            }
+            executePragma(db,String.format("pragma synchronous = %s",synchronous.name().toLowerCase()));
+            //insert or replace删除冲突行时也触发delete触发器，保证全文索引同步
+            executePragma(db,"pragma recursive_triggers = on");
+        }
+
+        //部分pragma会返回结果行，execSQL在低版本上会因此抛出异常，统一用rawQuery执行
+        private void executePragma(SQLiteDatabase db,String sql){
+            Cursor cursor = db.rawQuery(sql,null);
+            try {
+                cursor.moveToFirst();
+            } finally {
+                cursor.close();
+            }
+        }
+
+        //声明的表结构摘要与上次一致时直接返回，不执行任何DDL与写入
+        private void ensureSchema(String tableName,boolean autoincrement,Pair<String,Class<?>> primaryKeyPair,Map<String,Class<?>> otherKeyMap,List<Index> indexList,FullTextIndex fullTextIndex){
+            String schemaHash = getSchemaHash(autoincrement,primaryKeyPair,otherKeyMap,indexList,fullTextIndex);
+            SQLiteDatabase db = getWritableDatabase();
+            Map<String,String> schemaHashMap = getSchemaHashMap(db);
+            if (schemaHash.equals(schemaHashMap.get(tableName))){
+                return;
+            }
+            String fullTextSignature;
+            db.beginTransaction();
+            try {
+                createOrUpdateTable(db,tableName,autoincrement,primaryKeyPair,otherKeyMap);
+                updateIndex(db,tableName,indexList);
+                fullTextSignature = updateFullTextIndex(db,tableName,primaryKeyPair.first,fullTextIndex,schemaHashMap);
+                SQLiteStatement statement = db.compileStatement(String.format("insert or replace into %s (%s,%s) values (?,?)",SCHEMA_TABLE,SCHEMA_TABLE_NAME,SCHEMA_HASH));
+                try {
+                    statement.bindString(1,tableName);
+                    statement.bindString(2,schemaHash);
+                    statement.executeInsert();
+                } finally {
+                    statement.close();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            schemaHashMap.put(tableName,schemaHash);
+            if (fullTextSignature == null){
+                schemaHashMap.remove(FullTextIndex.getTableName(tableName));
+            } else {
+                schemaHashMap.put(FullTextIndex.getTableName(tableName),fullTextSignature);
+            }
+            //旧版本的列信息保存在SharedPreferences中，迁移后不再需要
+            context.getSharedPreferences(getSPName(tableName),Context.MODE_PRIVATE).edit().clear().apply();
+        }
+
+        //同一个helper只读取一次元数据表，之后的表结构检查都在内存中完成
+        private Map<String,String> getSchemaHashMap(SQLiteDatabase db){
+            if (schemaHashMap == null){
+                db.execSQL(String.format("create table if not exists %s (%s text primary key,%s text)",SCHEMA_TABLE,SCHEMA_TABLE_NAME,SCHEMA_HASH));
+                Map<String,String> map = new HashMap<>();
+                Cursor cursor = db.query(SCHEMA_TABLE,new String[]{SCHEMA_TABLE_NAME,SCHEMA_HASH},null,null,null,null,null);
+                try {
+                    while (cursor.moveToNext()){
+                        map.put(cursor.getString(0),cursor.getString(1));
+                    }
+                } finally {
+                    cursor.close();
+                }
+                schemaHashMap = map;
+            }
+            return schemaHashMap;
+        }
+
+        private String getSchemaHash(boolean autoincrement,Pair<String,Class<?>> primaryKeyPair,Map<String,Class<?>> otherKeyMap,List<Index> indexList,FullTextIndex fullTextIndex){
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append(autoincrement);
+            stringBuilder.append("|");
+            stringBuilder.append(primaryKeyPair.first);
+            stringBuilder.append(" ");
+            stringBuilder.append(primaryKeyPair.second.getName());
+            for (Map.Entry<String,Class<?>> entry : otherKeyMap.entrySet()){
+                stringBuilder.append(",");
+                stringBuilder.append(entry.getKey());
+                stringBuilder.append(" ");
+                stringBuilder.append(entry.getValue().getName());
+            }
+            for (Index index : indexList){
+                stringBuilder.append("|");
+                stringBuilder.append(index.getName(""));
+            }
+            if (fullTextIndex != null){
+                stringBuilder.append("|");
+                stringBuilder.append(fullTextIndex.getCreateSQL(""));
+            }
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-1").digest(stringBuilder.toString().getBytes("UTF-8"));
+                StringBuilder hexBuilder = new StringBuilder(digest.length*2);
+                for (byte b : digest){
+                    hexBuilder.append(String.format("%02x",b));
+                }
+                return hexBuilder.toString();
+            } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+                return stringBuilder.toString();
+            }
         }
 
         private void createOrUpdateTable(SQLiteDatabase db,String tableName,boolean autoincrement,Pair<String,Class<?>> primaryKeyPair,Map<String,Class<?>> otherKeyMap){
-            if (!context.getSharedPreferences(getSPName(tableName),Context.MODE_PRIVATE).contains(KEY_ALL_COLUMN)){
+            Set<String> existColumns = queryPragmaNames(db,String.format("pragma table_info(%s)",tableName));
+            if (existColumns.isEmpty()){
                 createTable(db,tableName,autoincrement,primaryKeyPair,otherKeyMap);
             } else {
-                updateTable(db,tableName,otherKeyMap);
+                updateTable(db,tableName,existColumns,otherKeyMap);
             }
         }
 
@@ -592,28 +3492,98 @@ public class LiteMapping {
             stringBuilder.deleteCharAt(stringBuilder.length()-1);
 
             db.execSQL(String.format("create table if not exists %s (%s);", tableName,stringBuilder));
-
-            context.getSharedPreferences(getSPName(tableName),Context.MODE_PRIVATE).edit().putStringSet(KEY_ALL_COLUMN,otherKeyMap.keySet()).apply();
         }
 
-        private void updateTable(SQLiteDatabase db,String tableName,Map<String,Class<?>> otherKeyMap){
-            Set<String> oldList = context.getSharedPreferences(getSPName(tableName),Context.MODE_PRIVATE).getStringSet(KEY_ALL_COLUMN,new LinkedHashSet<String>());
-            Set<String> newList = otherKeyMap.keySet();
+        //以数据库中实际存在的列为准，不会与声明的列信息产生偏差
+        private void updateTable(SQLiteDatabase db,String tableName,Set<String> existColumns,Map<String,Class<?>> otherKeyMap){
             //新增的列
-            Set<String> addColumnList = new LinkedHashSet<>(newList);
-            addColumnList.removeAll(oldList);
+            Set<String> addColumnList = new LinkedHashSet<>(otherKeyMap.keySet());
+            addColumnList.removeAll(existColumns);
             for (String key:addColumnList){
                 db.execSQL(String.format("alter table %s add column %s %s",tableName,key,getClassTypeInSQL(otherKeyMap.get(key))));
             }
-            //由于Sqlite不支持删除列，以下代码暂时未实现
-//                //移除的列
-//                Set<String> dropColumnList = new LinkedHashSet<>(oldList);
-//                dropColumnList.removeAll(newList);
-//                for (String key:dropColumnList){
-//                    db.execSQL(String.format("alter table %s drop column %s",tableName,key));
-//                }
-            //写入最新列信息
-            context.getSharedPreferences(getSPName(tableName),Context.MODE_PRIVATE).edit().putStringSet(KEY_ALL_COLUMN,otherKeyMap.keySet()).apply();
+            //由于Sqlite不支持删除列，移除的列暂时保留在表中
+        }
+
+        private void updateIndex(SQLiteDatabase db,String tableName,List<Index> indexList){
+            //只管理由Index创建的索引，sqlite_autoindex等其它索引不受影响
+            Set<String> oldList = new LinkedHashSet<>();
+            for (String name : queryPragmaNames(db,String.format("pragma index_list(%s)",tableName))){
+                if (name.startsWith(Index.NAME_PREFIX) || name.startsWith(Index.UNIQUE_NAME_PREFIX)){
+                    oldList.add(name);
+                }
+            }
+            Map<String,Index> newIndexMap = new LinkedHashMap<>();
+            for (Index index : indexList){
+                newIndexMap.put(index.getName(tableName),index);
+            }
+            //移除的索引
+            Set<String> dropIndexList = new LinkedHashSet<>(oldList);
+            dropIndexList.removeAll(newIndexMap.keySet());
+            for (String name : dropIndexList){
+                db.execSQL(String.format("drop index if exists %s",name));
+            }
+            //新增的索引
+            for (Map.Entry<String,Index> entry : newIndexMap.entrySet()){
+                if (!oldList.contains(entry.getKey())){
+                    db.execSQL(entry.getValue().getCreateSQL(tableName));
+                }
+            }
+        }
+
+        //全文索引的定义记录在元数据表中，定义不变时保留已有的索引数据，变化时删除重建并从原表重新生成索引
+        private String updateFullTextIndex(SQLiteDatabase db,String tableName,String primaryKeyName,FullTextIndex fullTextIndex,Map<String,String> schemaHashMap){
+            String ftsTableName = FullTextIndex.getTableName(tableName);
+            String signature = null;
+            List<String> triggerSQLs = null;
+            if (fullTextIndex != null){
+                triggerSQLs = fullTextIndex.getTriggerSQLs(tableName,primaryKeyName);
+                StringBuilder stringBuilder = new StringBuilder(fullTextIndex.getCreateSQL(tableName));
+                for (String triggerSQL : triggerSQLs){
+                    stringBuilder.append(";");
+                    stringBuilder.append(triggerSQL);
+                }
+                signature = stringBuilder.toString();
+                if (signature.equals(schemaHashMap.get(ftsTableName))){
+                    return signature;
+                }
+            }
+            for (String triggerName : FullTextIndex.getTriggerNames(tableName)){
+                db.execSQL(String.format("drop trigger if exists %s",triggerName));
+            }
+            db.execSQL(String.format("drop table if exists %s",ftsTableName));
+            if (fullTextIndex == null){
+                db.delete(SCHEMA_TABLE,String.format("%s = ?",SCHEMA_TABLE_NAME),new String[]{ftsTableName});
+                return null;
+            }
+            db.execSQL(fullTextIndex.getCreateSQL(tableName));
+            for (String triggerSQL : triggerSQLs){
+                db.execSQL(triggerSQL);
+            }
+            db.execSQL(String.format("insert into %s(%s) values('rebuild')",ftsTableName,ftsTableName));
+            SQLiteStatement statement = db.compileStatement(String.format("insert or replace into %s (%s,%s) values (?,?)",SCHEMA_TABLE,SCHEMA_TABLE_NAME,SCHEMA_HASH));
+            try {
+                statement.bindString(1,ftsTableName);
+                statement.bindString(2,signature);
+                statement.executeInsert();
+            } finally {
+                statement.close();
+            }
+            return signature;
+        }
+
+        private Set<String> queryPragmaNames(SQLiteDatabase db,String sql){
+            Cursor cursor = db.rawQuery(sql,null);
+            try {
+                Set<String> names = new LinkedHashSet<>();
+                int columnIndex = cursor.getColumnIndex("name");
+                while (cursor.moveToNext()){
+                    names.add(cursor.getString(columnIndex));
+                }
+                return names;
+            } finally {
+                cursor.close();
+            }
         }
 
         private final Map<Class<?>,String> classTypeMap = new HashMap<>();{
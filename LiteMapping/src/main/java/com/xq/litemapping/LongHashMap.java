@@ -0,0 +1,159 @@
+package com.xq.litemapping;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//以long为key的开放寻址哈希表，线性探测，删除时回移后续元素，不为key装箱也不创建Entry对象
+class LongHashMap<V> {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    LongHashMap() {
+        this(16);
+    }
+
+    LongHashMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity*LOAD_FACTOR < expectedSize){
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity){
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity-1;
+        resizeThreshold = (int) (capacity*LOAD_FACTOR);
+    }
+
+    private int slot(long key){
+        long hash = key*0x9E3779B97F4A7C15L;
+        return (int) (hash^(hash >>> 32)) & mask;
+    }
+
+    V get(long key){
+        for (int i=slot(key);values[i] != null;i=(i+1) & mask){
+            if (keys[i] == key){
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    boolean containsKey(long key){
+        return get(key) != null;
+    }
+
+    //value不能为null，返回被替换的旧值
+    V put(long key,V value){
+        if (value == null){
+            throw new NullPointerException("value");
+        }
+        int i = slot(key);
+        for (;values[i] != null;i=(i+1) & mask){
+            if (keys[i] == key){
+                V oldValue = (V) values[i];
+                values[i] = value;
+                return oldValue;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > resizeThreshold){
+            resize(keys.length << 1);
+        }
+        return null;
+    }
+
+    V remove(long key){
+        int i = slot(key);
+        for (;values[i] != null;i=(i+1) & mask){
+            if (keys[i] == key){
+                V oldValue = (V) values[i];
+                shiftBack(i);
+                size--;
+                return oldValue;
+            }
+        }
+        return null;
+    }
+
+    //把探测链上位于空位之后的元素前移，保证查找不会在空位处提前结束
+    private void shiftBack(int gap){
+        int i = gap;
+        while (true){
+            i = (i+1) & mask;
+            if (values[i] == null){
+                break;
+            }
+            int home = slot(keys[i]);
+            if (((i-home) & mask) >= ((i-gap) & mask)){
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = 0;
+        values[gap] = null;
+    }
+
+    private void resize(int capacity){
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i=0;i<oldValues.length;i++){
+            if (oldValues[i] != null){
+                int j = slot(oldKeys[i]);
+                while (values[j] != null){
+                    j = (j+1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    int size(){
+        return size;
+    }
+
+    boolean isEmpty(){
+        return size == 0;
+    }
+
+    void clear(){
+        Arrays.fill(keys,0);
+        Arrays.fill(values,null);
+        size = 0;
+    }
+
+    long[] keys(){
+        long[] array = new long[size];
+        int index = 0;
+        for (int i=0;i<values.length;i++){
+            if (values[i] != null){
+                array[index++] = keys[i];
+            }
+        }
+        return array;
+    }
+
+    List<V> values(){
+        List<V> list = new ArrayList<>(size);
+        for (Object value : values){
+            if (value != null){
+                list.add((V) value);
+            }
+        }
+        return list;
+    }
+
+}
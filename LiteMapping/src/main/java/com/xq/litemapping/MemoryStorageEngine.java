@@ -0,0 +1,752 @@
+package com.xq.litemapping;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//数据只保存在内存中，进程结束后丢失，适合会话级的临时表，也可以在普通JVM上运行
+//行按rowid保存在LongHashMap中，整数主键即为rowid，其它类型的主键通过HashMap映射到rowid，索引为按列值排序的TreeMap
+//查询、分页、排序与返回值的类型与LiteMapping保持一致
+public class MemoryStorageEngine implements StorageEngine {
+
+    private final String primaryKeyName;
+    private final boolean autoincrement;
+    private final boolean integerPrimaryKey;
+
+    private final String[] columnNames;
+    private final MimeType[] mimeTypes;
+    private final Map<String,Integer> columnIndexMap = new HashMap<>();
+
+    private final ConditionEvaluator conditionEvaluator;
+
+    private final LongHashMap<Row> rowMap = new LongHashMap<>();
+    private final Map<Object,Long> primaryKeyMap;
+    private final List<SortedIndex> sortedIndexList = new ArrayList<>();
+    private long maxRowId;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public MemoryStorageEngine(String autoPrimaryKeyName, Map<String,Class<?>> otherKeyMap){
+        this(true,autoPrimaryKeyName,Long.class,otherKeyMap);
+    }
+
+    public MemoryStorageEngine(boolean autoincrement, String primaryKeyName, Class<?> primaryKeyClass, Map<String,Class<?>> otherKeyMap){
+        this(autoincrement,primaryKeyName,primaryKeyClass,otherKeyMap,new ArrayList<Index>());
+    }
+
+    //不依赖Android，主键的名称与类型分开传入而不使用Pair
+    public MemoryStorageEngine(boolean autoincrement, String primaryKeyName, Class<?> primaryKeyClass, Map<String,Class<?>> otherKeyMap, List<Index> indexList){
+        this.primaryKeyName = primaryKeyName;
+        this.autoincrement = autoincrement;
+
+        Map<String,Class<?>> allKeyMap = new LinkedHashMap<>();
+        allKeyMap.put(primaryKeyName,primaryKeyClass);
+        allKeyMap.putAll(otherKeyMap);
+        this.columnNames = allKeyMap.keySet().toArray(new String[allKeyMap.size()]);
+        this.mimeTypes = new MimeType[columnNames.length];
+        for (int i=0;i<columnNames.length;i++){
+            mimeTypes[i] = MimeType.of(allKeyMap.get(columnNames[i]));
+            if (mimeTypes[i] == null){
+                throw new IllegalArgumentException(String.format("unsupported type %s of column %s",allKeyMap.get(columnNames[i]),columnNames[i]));
+            }
+            columnIndexMap.put(columnNames[i],i);
+        }
+        this.integerPrimaryKey = isInteger(mimeTypes[0]);
+        this.primaryKeyMap = integerPrimaryKey? null : new HashMap<Object,Long>();
+        this.conditionEvaluator = new ConditionEvaluator(columnIndexMap,mimeTypes);
+
+        for (Index index : indexList){
+            String[] columns = index.getColumns();
+            int[] columnIndexes = new int[columns.length];
+            for (int i=0;i<columns.length;i++){
+                Integer columnIndex = columnIndexMap.get(columns[i]);
+                if (columnIndex == null){
+                    throw new IllegalArgumentException(String.format("index column %s is not declared in table",columns[i]));
+                }
+                columnIndexes[i] = columnIndex;
+            }
+            sortedIndexList.add(new SortedIndex(columns,columnIndexes,index.isUnique()));
+        }
+    }
+
+    @Override
+    public long insert(Map<String,?> columns){
+        Object[] values = toValues(columns,false);
+        lock.writeLock().lock();
+        try {
+            return insertRow(values);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //与LiteMapping一致，columns中的主键会被忽略
+    @Override
+    public boolean insertById(Object id,Map<String,?> columns){
+        Object[] values = toValues(columns,true);
+        values[0] = ConditionEvaluator.toColumnValue(mimeTypes[0],id);
+        lock.writeLock().lock();
+        try {
+            return insertRow(values) >= 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean update(Object id,Map<String,?> columns){
+        Object[] newValues = null;
+        lock.writeLock().lock();
+        try {
+            Row row = findRow(id);
+            boolean updated = false;
+            for (Map.Entry<String,?> entry : columns.entrySet()){
+                Integer columnIndex = columnIndexMap.get(entry.getKey());
+                if (columnIndex != null){
+                    if (newValues == null){
+                        if (row == null){
+                            return false;
+                        }
+                        newValues = row.values.clone();
+                    }
+                    newValues[columnIndex] = ConditionEvaluator.toColumnValue(mimeTypes[columnIndex],entry.getValue());
+                    updated = true;
+                }
+            }
+            if (!updated){
+                throw new IllegalArgumentException("Empty values");
+            }
+            if (newValues[0] == null){
+                throw new IllegalStateException(String.format("NOT NULL constraint failed: %s",primaryKeyName));
+            }
+            long newRowId = row.rowId;
+            if (ConditionEvaluator.compare(newValues[0],row.values[0]) != 0){
+                Long existRowId = integerPrimaryKey? Long.valueOf(((Number) newValues[0]).longValue()) : primaryKeyMap.get(toLookupKey(newValues[0]));
+                if (existRowId != null && rowMap.containsKey(existRowId)){
+                    throw new IllegalStateException(String.format("UNIQUE constraint failed: %s",primaryKeyName));
+                }
+                if (integerPrimaryKey){
+                    newRowId = existRowId;
+                }
+            }
+            checkUniqueIndexes(newValues,row);
+            removeRow(row);
+            addRow(new Row(newRowId,newValues));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean delete(Object id){
+        lock.writeLock().lock();
+        try {
+            Row row = findRow(id);
+            if (row == null){
+                return false;
+            }
+            removeRow(row);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean contain(Object id){
+        lock.readLock().lock();
+        try {
+            return findRow(id) != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String,?> queryById(Object id){
+        lock.readLock().lock();
+        try {
+            Row row = findRow(id);
+            return row == null? null : toMap(row,allColumnIndexes());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //与LiteMapping一致，queryId不使用PageToken
+    @Override
+    public <T> List<T> queryId(QueryArgument queryArgument){
+        lock.readLock().lock();
+        try {
+            List<Row> rows = select(queryArgument,false);
+            List<T> list = new ArrayList<>(rows.size());
+            for (Row row : rows){
+                list.add((T) copyValue(row.values[0]));
+            }
+            return list;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Map<String,?>> query(QueryArgument queryArgument){
+        lock.readLock().lock();
+        try {
+            boolean keyset = queryArgument.getPageToken() != null;
+            List<Row> rows = select(queryArgument,keyset);
+            int[] projection = getProjection(queryArgument.getColumns(),queryArgument.getExcludeColumns(),keyset? getSeekOrderColumn(queryArgument) : null);
+            List<Map<String,?>> list = new ArrayList<>(rows.size());
+            for (Row row : rows){
+                list.add(toMap(row,projection));
+            }
+            return list;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //只使用查询条件，排序与分页不影响计数
+    @Override
+    public long count(QueryArgument queryArgument){
+        ConditionEvaluator.Predicate predicate = conditionEvaluator.compile(queryArgument.getConditionNode());
+        lock.readLock().lock();
+        try {
+            if (predicate == null){
+                return rowMap.size();
+            }
+            long count = 0;
+            for (Row row : getCandidateRows(queryArgument.getConditionNode())){
+                if (predicate.test(row.values)){
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //没有autoincrement时清空后rowid从1重新开始，与Sqlite一致
+    @Override
+    public void clear(){
+        lock.writeLock().lock();
+        try {
+            rowMap.clear();
+            if (primaryKeyMap != null){
+                primaryKeyMap.clear();
+            }
+            for (SortedIndex sortedIndex : sortedIndexList){
+                sortedIndex.tree.clear();
+            }
+            if (!autoincrement){
+                maxRowId = 0;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Object[] toValues(Map<String,?> columns,boolean ignorePrimaryKey){
+        Object[] values = new Object[columnNames.length];
+        for (Map.Entry<String,?> entry : columns.entrySet()){
+            Integer columnIndex = columnIndexMap.get(entry.getKey());
+            if (columnIndex != null && !(ignorePrimaryKey && columnIndex == 0)){
+                values[columnIndex] = ConditionEvaluator.toColumnValue(mimeTypes[columnIndex],entry.getValue());
+            }
+        }
+        return values;
+    }
+
+    //主键或唯一索引冲突时返回-1，删除最大的rowid后不会复用
+    private long insertRow(Object[] values){
+        long rowId;
+        if (integerPrimaryKey){
+            if (values[0] == null){
+                rowId = maxRowId+1;
+                values[0] = ConditionEvaluator.toColumnValue(mimeTypes[0],rowId);
+            } else {
+                rowId = ((Number) values[0]).longValue();
+                if (rowMap.containsKey(rowId)){
+                    return -1;
+                }
+            }
+        } else {
+            if (values[0] == null || primaryKeyMap.containsKey(toLookupKey(values[0]))){
+                return -1;
+            }
+            rowId = maxRowId+1;
+        }
+        try {
+            checkUniqueIndexes(values,null);
+        } catch (IllegalStateException e){
+            return -1;
+        }
+        addRow(new Row(rowId,values));
+        return rowId;
+    }
+
+    private void addRow(Row row){
+        rowMap.put(row.rowId,row);
+        if (primaryKeyMap != null){
+            primaryKeyMap.put(toLookupKey(row.values[0]),row.rowId);
+        }
+        for (SortedIndex sortedIndex : sortedIndexList){
+            sortedIndex.add(row);
+        }
+        maxRowId = Math.max(maxRowId,row.rowId);
+    }
+
+    private void removeRow(Row row){
+        rowMap.remove(row.rowId);
+        if (primaryKeyMap != null){
+            primaryKeyMap.remove(toLookupKey(row.values[0]));
+        }
+        for (SortedIndex sortedIndex : sortedIndexList){
+            sortedIndex.remove(row);
+        }
+    }
+
+    //唯一索引中包含null的组合不参与比较，与Sqlite一致
+    private void checkUniqueIndexes(Object[] values,Row self){
+        for (SortedIndex sortedIndex : sortedIndexList){
+            if (!sortedIndex.unique){
+                continue;
+            }
+            Object[] key = sortedIndex.getKey(values);
+            if (Arrays.asList(key).contains(null)){
+                continue;
+            }
+            LongHashMap<Row> bucket = sortedIndex.tree.get(key);
+            if (bucket != null && !(bucket.size() == 1 && self != null && bucket.containsKey(self.rowId))){
+                throw new IllegalStateException(String.format("UNIQUE constraint failed: %s",Arrays.toString(sortedIndex.columns)));
+            }
+        }
+    }
+
+    private Row findRow(Object id){
+        Object value = conditionEvaluator.toArgument(primaryKeyName,id);
+        if (value == null){
+            return null;
+        }
+        if (integerPrimaryKey){
+            //1.0与1相等，1.5不会匹配任何行
+            if (!(value instanceof Number) || ((Number) value).doubleValue() != ((Number) value).longValue()){
+                return null;
+            }
+            return rowMap.get(((Number) value).longValue());
+        }
+        Long rowId = primaryKeyMap.get(toLookupKey(value));
+        return rowId == null? null : rowMap.get(rowId);
+    }
+
+    //byte[]没有按内容实现equals，包装成ByteBuffer后作为key
+    private Object toLookupKey(Object value){
+        return value instanceof byte[]? ByteBuffer.wrap((byte[]) value) : value;
+    }
+
+    private List<Row> select(QueryArgument queryArgument,boolean keyset){
+        ConditionNode conditionNode = queryArgument.getConditionNode();
+        ConditionEvaluator.Predicate predicate = conditionEvaluator.compile(conditionNode);
+        Integer pageSize = queryArgument.getPageSize();
+        int offset = !keyset && queryArgument.getPage() != null && pageSize != null? queryArgument.getPage()*pageSize : 0;
+        int limit = pageSize == null? Integer.MAX_VALUE : pageSize;
+
+        Comparator<Row> comparator;
+        final PageToken pageToken = keyset? queryArgument.getPageToken() : null;
+        Row seekRow = null;
+        if (keyset){
+            String orderColumn = getSeekOrderColumn(queryArgument);
+            comparator = getKeysetComparator(orderColumn,Boolean.TRUE.equals(queryArgument.isReverse()));
+            Object[] seekValues = new Object[columnNames.length];
+            seekValues[0] = conditionEvaluator.toArgument(primaryKeyName,pageToken.getId());
+            if (orderColumn != null){
+                seekValues[conditionEvaluator.getColumnIndex(orderColumn)] = conditionEvaluator.toArgument(orderColumn,pageToken.getOrderValue());
+            }
+            seekRow = new Row(0,seekValues);
+        } else {
+            comparator = getComparator(queryArgument.getOrderColumn(),queryArgument.isReverse());
+        }
+
+        Collection<Row> candidateRows = getCandidateRowsOrNull(conditionNode);
+        if (candidateRows == null && !keyset && queryArgument.getOrderColumn() != null){
+            List<Row> rows = selectByIndexOrder(predicate,queryArgument.getOrderColumn(),Boolean.TRUE.equals(queryArgument.isReverse()),offset,limit);
+            if (rows != null){
+                return rows;
+            }
+        }
+        if (candidateRows == null){
+            candidateRows = rowMap.values();
+        }
+        List<Row> rows = new ArrayList<>(predicate == null? candidateRows.size() : 16);
+        for (Row row : candidateRows){
+            if ((predicate == null || predicate.test(row.values)) && (seekRow == null || comparator.compare(row,seekRow) > 0)){
+                rows.add(row);
+            }
+        }
+        Collections.sort(rows,comparator);
+        if (offset >= rows.size()){
+            return Collections.emptyList();
+        }
+        return rows.subList(offset,(int) Math.min(rows.size(),(long) offset+limit));
+    }
+
+    //只有单列索引的顺序与(列,rowid)的顺序一致，可以按索引顺序读取并在取满一页后停止
+    private List<Row> selectByIndexOrder(ConditionEvaluator.Predicate predicate,String orderColumn,boolean reverse,int offset,int limit){
+        SortedIndex orderIndex = null;
+        for (SortedIndex sortedIndex : sortedIndexList){
+            if (sortedIndex.columns.length == 1 && sortedIndex.columns[0].equals(orderColumn)){
+                orderIndex = sortedIndex;
+                break;
+            }
+        }
+        if (orderIndex == null){
+            return null;
+        }
+        List<Row> rows = new ArrayList<>();
+        int skipped = 0;
+        NavigableMap<Object[],LongHashMap<Row>> tree = reverse? orderIndex.tree.descendingMap() : orderIndex.tree;
+        for (LongHashMap<Row> bucket : tree.values()){
+            long[] rowIds = bucket.keys();
+            Arrays.sort(rowIds);
+            for (long rowId : rowIds){
+                Row row = bucket.get(rowId);
+                if (predicate != null && !predicate.test(row.values)){
+                    continue;
+                }
+                if (skipped < offset){
+                    skipped++;
+                    continue;
+                }
+                if (rows.size() >= limit){
+                    return rows;
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private Collection<Row> getCandidateRows(ConditionNode conditionNode){
+        Collection<Row> candidateRows = getCandidateRowsOrNull(conditionNode);
+        return candidateRows == null? rowMap.values() : candidateRows;
+    }
+
+    //通过主键或索引缩小需要求值的行，返回null表示需要扫描全表，返回的行仍然需要用完整的条件过滤
+    private Collection<Row> getCandidateRowsOrNull(ConditionNode conditionNode){
+        if (conditionNode instanceof Condition){
+            return getCandidateRowsOrNull((Condition) conditionNode);
+        }
+        if (!(conditionNode instanceof ConditionGroup)){
+            return null;
+        }
+        ConditionGroup conditionGroup = (ConditionGroup) conditionNode;
+        ConditionNode[] conditionNodes = conditionGroup.getConditionNodes();
+        if (conditionNodes == null || conditionNodes.length == 0){
+            return null;
+        }
+        if (conditionGroup.getConditionLink() == ConditionLink.Or){
+            //or的每个分支都能使用索引时才合并，否则仍然需要扫描全表
+            LongHashMap<Row> union = new LongHashMap<>();
+            for (ConditionNode child : conditionNodes){
+                Collection<Row> childRows = getCandidateRowsOrNull(child);
+                if (childRows == null){
+                    return null;
+                }
+                for (Row row : childRows){
+                    union.put(row.rowId,row);
+                }
+            }
+            return union.values();
+        }
+        Collection<Row> candidateRows = null;
+        for (ConditionNode child : conditionNodes){
+            Collection<Row> childRows = getCandidateRowsOrNull(child);
+            if (childRows != null && (candidateRows == null || childRows.size() < candidateRows.size())){
+                candidateRows = childRows;
+            }
+        }
+        return candidateRows;
+    }
+
+    private Collection<Row> getCandidateRowsOrNull(Condition condition){
+        Condition.CompareType compareType = condition.getCompare();
+        String key = condition.getKey();
+        if (compareType == null || key == null){
+            return null;
+        }
+        if (key.equals(primaryKeyName) && (compareType == Condition.CompareType.EqualTo || compareType == Condition.CompareType.In)){
+            List<Row> rows = new ArrayList<>();
+            for (Object value : compareType == Condition.CompareType.In? conditionEvaluator.getValueList(condition) : Collections.singletonList(condition.getValue())){
+                Row row = findRow(value);
+                if (row != null){
+                    rows.add(row);
+                }
+            }
+            return rows;
+        }
+        SortedIndex sortedIndex = null;
+        for (SortedIndex index : sortedIndexList){
+            if (index.columns[0].equals(key)){
+                sortedIndex = index;
+                break;
+            }
+        }
+        if (sortedIndex == null){
+            return null;
+        }
+        switch (compareType){
+            case EqualTo:
+                Object argument = conditionEvaluator.toArgument(key,condition.getValue());
+                return sortedIndex.range(argument,true,argument,true);
+            case IsNull:
+                return sortedIndex.range(null,true,null,true);
+            case In:
+                LongHashMap<Row> union = new LongHashMap<>();
+                for (Object value : conditionEvaluator.getValueList(condition)){
+                    if (value != null){
+                        Object valueArgument = conditionEvaluator.toArgument(key,value);
+                        for (Row row : sortedIndex.range(valueArgument,true,valueArgument,true)){
+                            union.put(row.rowId,row);
+                        }
+                    }
+                }
+                return union.values();
+            case Between:
+                List<Object> bounds = conditionEvaluator.getValueList(condition);
+                if (bounds.size() != 2 || bounds.get(0) == null || bounds.get(1) == null){
+                    return null;
+                }
+                return sortedIndex.range(conditionEvaluator.toArgument(key,bounds.get(0)),true,conditionEvaluator.toArgument(key,bounds.get(1)),true);
+            case LessThan:
+            case LessThanOrEqualTo:
+                if (condition.getValue() == null){
+                    return null;
+                }
+                return sortedIndex.range(SortedIndex.LOWEST,true,conditionEvaluator.toArgument(key,condition.getValue()),compareType == Condition.CompareType.LessThanOrEqualTo);
+            case GreaterThan:
+            case GreaterThanOrEqualTo:
+                if (condition.getValue() == null){
+                    return null;
+                }
+                return sortedIndex.range(conditionEvaluator.toArgument(key,condition.getValue()),compareType == Condition.CompareType.GreaterThanOrEqualTo,SortedIndex.HIGHEST,true);
+            default:
+                return null;
+        }
+    }
+
+    //未指定排序时按rowid，即插入顺序
+    private Comparator<Row> getComparator(String orderColumn,Boolean reverse){
+        if (orderColumn == null){
+            return ROW_ID_COMPARATOR;
+        }
+        final int columnIndex = conditionEvaluator.getColumnIndex(orderColumn);
+        final boolean descending = Boolean.TRUE.equals(reverse);
+        return new Comparator<Row>() {
+            @Override
+            public int compare(Row row1, Row row2) {
+                int result = ConditionEvaluator.compare(row1.values[columnIndex],row2.values[columnIndex]);
+                if (result != 0){
+                    return descending? -result : result;
+                }
+                return ROW_ID_COMPARATOR.compare(row1,row2);
+            }
+        };
+    }
+
+    //按(排序列,主键)排序，null在升序时最先，降序时最后，与LiteMapping的PageToken规则一致
+    private Comparator<Row> getKeysetComparator(String orderColumn,final boolean reverse){
+        final int columnIndex = orderColumn == null? -1 : conditionEvaluator.getColumnIndex(orderColumn);
+        return new Comparator<Row>() {
+            @Override
+            public int compare(Row row1, Row row2) {
+                int result = columnIndex < 0? 0 : ConditionEvaluator.compare(row1.values[columnIndex],row2.values[columnIndex]);
+                if (result == 0){
+                    result = ConditionEvaluator.compare(row1.values[0],row2.values[0]);
+                }
+                return reverse? -result : result;
+            }
+        };
+    }
+
+    private String getSeekOrderColumn(QueryArgument queryArgument){
+        String orderColumn = queryArgument.getOrderColumn();
+        return orderColumn == null || orderColumn.equals(primaryKeyName)? null : orderColumn;
+    }
+
+    private int[] getProjection(String[] columns,String[] excludeColumns,String requiredColumn){
+        Set<String> projection;
+        if (columns != null){
+            projection = new LinkedHashSet<>(Arrays.asList(columns));
+        } else if (excludeColumns != null){
+            projection = new LinkedHashSet<>(Arrays.asList(columnNames));
+            projection.removeAll(Arrays.asList(excludeColumns));
+        } else {
+            return allColumnIndexes();
+        }
+        projection.add(primaryKeyName);
+        if (requiredColumn != null){
+            projection.add(requiredColumn);
+        }
+        int[] columnIndexes = new int[projection.size()];
+        int i = 0;
+        for (String column : projection){
+            columnIndexes[i++] = conditionEvaluator.getColumnIndex(column);
+        }
+        return columnIndexes;
+    }
+
+    private int[] allColumnIndexes(){
+        int[] columnIndexes = new int[columnNames.length];
+        for (int i=0;i<columnIndexes.length;i++){
+            columnIndexes[i] = i;
+        }
+        return columnIndexes;
+    }
+
+    private Map<String,?> toMap(Row row,int[] columnIndexes){
+        Map<String,Object> map = new LinkedHashMap<>(columnIndexes.length);
+        for (int columnIndex : columnIndexes){
+            map.put(columnNames[columnIndex],copyValue(row.values[columnIndex]));
+        }
+        return map;
+    }
+
+    //blob返回副本，调用方修改数组不会影响表中的数据
+    private Object copyValue(Object value){
+        return value instanceof byte[]? ((byte[]) value).clone() : value;
+    }
+
+    private static boolean isInteger(MimeType mimeType){
+        return mimeType == MimeType.Byte || mimeType == MimeType.Short || mimeType == MimeType.Int || mimeType == MimeType.Long;
+    }
+
+    private static final Comparator<Row> ROW_ID_COMPARATOR = new Comparator<Row>() {
+        @Override
+        public int compare(Row row1, Row row2) {
+            return row1.rowId < row2.rowId? -1 : (row1.rowId == row2.rowId? 0 : 1);
+        }
+    };
+
+    //更新时替换整个Row对象，values创建后不再修改
+    private static class Row{
+
+        private final long rowId;
+        private final Object[] values;
+
+        private Row(long rowId, Object[] values) {
+            this.rowId = rowId;
+            this.values = values;
+        }
+    }
+
+    //key为索引列的值组成的数组，相同key的行放在同一个以rowid为key的桶中
+    private static class SortedIndex{
+
+        private static final Object LOWEST = new Object();
+        private static final Object HIGHEST = new Object();
+
+        private final String[] columns;
+        private final int[] columnIndexes;
+        private final boolean unique;
+        private final TreeMap<Object[],LongHashMap<Row>> tree = new TreeMap<>(KEY_COMPARATOR);
+
+        private SortedIndex(String[] columns, int[] columnIndexes, boolean unique) {
+            this.columns = columns;
+            this.columnIndexes = columnIndexes;
+            this.unique = unique;
+        }
+
+        private Object[] getKey(Object[] values){
+            Object[] key = new Object[columnIndexes.length];
+            for (int i=0;i<key.length;i++){
+                key[i] = values[columnIndexes[i]];
+            }
+            return key;
+        }
+
+        private void add(Row row){
+            Object[] key = getKey(row.values);
+            LongHashMap<Row> bucket = tree.get(key);
+            if (bucket == null){
+                bucket = new LongHashMap<>(1);
+                tree.put(key,bucket);
+            }
+            bucket.put(row.rowId,row);
+        }
+
+        private void remove(Row row){
+            Object[] key = getKey(row.values);
+            LongHashMap<Row> bucket = tree.get(key);
+            if (bucket != null){
+                bucket.remove(row.rowId);
+                if (bucket.isEmpty()){
+                    tree.remove(key);
+                }
+            }
+        }
+
+        //按第一列的取值范围查找，其余列任意
+        private List<Row> range(Object low,boolean lowInclusive,Object high,boolean highInclusive){
+            Object[] lowKey = {low,lowInclusive? LOWEST : HIGHEST};
+            Object[] highKey = {high,highInclusive? HIGHEST : LOWEST};
+            if (KEY_COMPARATOR.compare(lowKey,highKey) > 0){
+                return Collections.emptyList();
+            }
+            List<Row> rows = new ArrayList<>();
+            for (LongHashMap<Row> bucket : tree.subMap(lowKey,true,highKey,true).values()){
+                rows.addAll(bucket.values());
+            }
+            return rows;
+        }
+
+        //LOWEST与HIGHEST小于或大于任意值，较短的key与其前缀相等时按多出的元素决定先后
+        private static final Comparator<Object[]> KEY_COMPARATOR = new Comparator<Object[]>() {
+            @Override
+            public int compare(Object[] key1, Object[] key2) {
+                int length = Math.min(key1.length,key2.length);
+                for (int i=0;i<length;i++){
+                    int result = compareElement(key1[i],key2[i]);
+                    if (result != 0){
+                        return result;
+                    }
+                }
+                if (key1.length == key2.length){
+                    return 0;
+                }
+                if (key1.length > key2.length){
+                    return key1[length] == LOWEST? -1 : 1;
+                }
+                return key2[length] == LOWEST? 1 : -1;
+            }
+
+            private int compareElement(Object element1,Object element2){
+                if (element1 == element2){
+                    return 0;
+                }
+                if (element1 == LOWEST || element2 == HIGHEST){
+                    return -1;
+                }
+                if (element1 == HIGHEST || element2 == LOWEST){
+                    return 1;
+                }
+                return ConditionEvaluator.compare(element1,element2);
+            }
+        };
+    }
+
+}
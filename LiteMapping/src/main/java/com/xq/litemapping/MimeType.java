@@ -0,0 +1,45 @@
+package com.xq.litemapping;
+
+import java.util.HashMap;
+import java.util.Map;
+
+//列声明的Java类型对应的存储类型，Sqlite与内存引擎共用
+enum MimeType{
+    Byte,
+    Short,
+    Int,
+    Long,
+    Float,
+    Double,
+    Boolean,
+    Char,
+    String,
+    Blob,
+    ;
+
+    private static final Map<Class<?>,MimeType> mimeTypeMap = new HashMap<>();static{
+        mimeTypeMap.put(byte.class, MimeType.Byte);
+        mimeTypeMap.put(java.lang.Byte.class, MimeType.Byte);
+        mimeTypeMap.put(short.class, MimeType.Short);
+        mimeTypeMap.put(java.lang.Short.class, MimeType.Short);
+        mimeTypeMap.put(int.class, MimeType.Int);
+        mimeTypeMap.put(Integer.class, MimeType.Int);
+        mimeTypeMap.put(long.class, MimeType.Long);
+        mimeTypeMap.put(java.lang.Long.class, MimeType.Long);
+        mimeTypeMap.put(float.class, MimeType.Float);
+        mimeTypeMap.put(java.lang.Float.class, MimeType.Float);
+        mimeTypeMap.put(double.class, MimeType.Double);
+        mimeTypeMap.put(java.lang.Double.class, MimeType.Double);
+        mimeTypeMap.put(boolean.class, MimeType.Boolean);
+        mimeTypeMap.put(java.lang.Boolean.class, MimeType.Boolean);
+        mimeTypeMap.put(char.class, MimeType.Char);
+        mimeTypeMap.put(Character.class, MimeType.Char);
+        mimeTypeMap.put(java.lang.String.class, MimeType.String);
+        mimeTypeMap.put(byte[].class, MimeType.Blob);
+    }
+
+    static MimeType of(Class<?> cla){
+        return mimeTypeMap.get(cla);
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.xq.litemapping;
+
+public class OperationEvent {
+
+    private final String operation;
+    private final String dbName;
+    private final String tableName;
+    private final long startNanos;
+
+    private long latencyNanos;
+    private long rowCount;
+    private String sql;
+    private QueryShape queryShape;
+    private boolean slow;
+    private String queryPlan;
+    private Throwable error;
+
+    OperationEvent(String operation, String dbName, String tableName) {
+        this.operation = operation;
+        this.dbName = dbName;
+        this.tableName = tableName;
+        this.startNanos = System.nanoTime();
+    }
+
+    //与LiteMapping的方法名一致，如insert、query、queryByIdList
+    public String getOperation() {
+        return operation;
+    }
+
+    public String getDbName() {
+        return dbName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    //写操作为写入或影响的行数，查询为返回的行数
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    //参数使用?占位的SQL，相同形状的查询SQL相同，批量写操作没有单一的SQL时返回null
+    public String getSql() {
+        if (sql == null && queryShape != null){
+            sql = queryShape.toSql();
+        }
+        return sql;
+    }
+
+    public boolean isSlow() {
+        return slow;
+    }
+
+    //超过慢查询阈值的查询的EXPLAIN QUERY PLAN结果，每行一个步骤
+    public String getQueryPlan() {
+        return queryPlan;
+    }
+
+    //批量方法内部捕获的异常同样会在这里上报
+    public Throwable getError() {
+        return error;
+    }
+
+    OperationEvent setRowCount(long rowCount) {
+        this.rowCount = rowCount;
+        return this;
+    }
+
+    OperationEvent setSql(String sql) {
+        this.sql = sql;
+        return this;
+    }
+
+    OperationEvent setQueryShape(QueryShape queryShape) {
+        this.queryShape = queryShape;
+        return this;
+    }
+
+    QueryShape getQueryShape() {
+        return queryShape;
+    }
+
+    <E extends Throwable> E fail(E error) {
+        this.error = error;
+        return error;
+    }
+
+    long finish() {
+        this.latencyNanos = System.nanoTime()-startNanos;
+        return latencyNanos;
+    }
+
+    void markSlow(String queryPlan) {
+        this.slow = true;
+        this.queryPlan = queryPlan;
+    }
+
+}
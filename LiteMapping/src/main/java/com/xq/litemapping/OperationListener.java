@@ -0,0 +1,8 @@
+package com.xq.litemapping;
+
+//在执行操作的线程上同步回调，耗时的上报需要自行切换线程
+public interface OperationListener {
+
+    void onOperation(OperationEvent operationEvent);
+
+}
@@ -0,0 +1,28 @@
+package com.xq.litemapping;
+
+import java.util.List;
+import java.util.Map;
+
+public class Page {
+
+    private final List<Map<String,?>> rows;
+    private final PageToken nextPageToken;
+
+    Page(List<Map<String,?>> rows, PageToken nextPageToken) {
+        this.rows = rows;
+        this.nextPageToken = nextPageToken;
+    }
+
+    public List<Map<String,?>> getRows() {
+        return rows;
+    }
+
+    public PageToken getNextPageToken() {
+        return nextPageToken;
+    }
+
+    public boolean hasNextPage() {
+        return nextPageToken != null;
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.xq.litemapping;
+
+import java.io.Serializable;
+
+public class PageToken implements Serializable {
+
+    private final Object orderValue;
+    private final Object id;
+
+    public PageToken(Object orderValue, Object id) {
+        this.orderValue = orderValue;
+        this.id = id;
+    }
+
+    public Object getOrderValue() {
+        return orderValue;
+    }
+
+    public Object getId() {
+        return id;
+    }
+
+}
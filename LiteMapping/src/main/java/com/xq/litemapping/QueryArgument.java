@@ -6,6 +6,7 @@ public class QueryArgument implements Serializable {
 
     private Condition[] conditions;
     private ConditionLink conditionLink;
+    private ConditionNode conditionNode;
 
     private Integer page;
     private Integer pageSize;
@@ -13,6 +14,11 @@ public class QueryArgument implements Serializable {
     private String orderColumn;
     private Boolean reverse;
 
+    private PageToken pageToken;
+
+    private String[] columns;
+    private String[] excludeColumns;
+
     public QueryArgument setCondition(Condition condition){
         return setConditions(new Condition[]{condition},ConditionLink.And);
     }
@@ -20,6 +26,15 @@ public class QueryArgument implements Serializable {
     public QueryArgument setConditions(Condition[] conditions,ConditionLink conditionLink) {
         this.conditions = conditions;
         this.conditionLink = conditionLink;
+        this.conditionNode = null;
+        return this;
+    }
+
+    //设置任意嵌套的条件树，会替换setConditions设置的条件
+    public QueryArgument setCondition(ConditionNode conditionNode){
+        this.conditionNode = conditionNode;
+        this.conditions = null;
+        this.conditionLink = null;
         return this;
     }
 
@@ -44,6 +59,26 @@ public class QueryArgument implements Serializable {
         return this;
     }
 
+    //设置后按(orderColumn,主键)从上一页末尾继续查询，page将被忽略
+    public QueryArgument setPageToken(PageToken pageToken) {
+        this.pageToken = pageToken;
+        return this;
+    }
+
+    //只查询指定的列，未设置时查询全部列
+    public QueryArgument setColumns(String... columns) {
+        this.columns = columns;
+        this.excludeColumns = null;
+        return this;
+    }
+
+    //查询除指定列以外的全部列，适合跳过较大的text或blob列
+    public QueryArgument setExcludeColumns(String... excludeColumns) {
+        this.excludeColumns = excludeColumns;
+        this.columns = null;
+        return this;
+    }
+
     public Condition[] getConditions() {
         return conditions;
     }
@@ -52,6 +87,14 @@ public class QueryArgument implements Serializable {
         return conditionLink;
     }
 
+    //setConditions设置的条件会组合成一个ConditionGroup返回
+    public ConditionNode getConditionNode() {
+        if (conditionNode == null && conditions != null){
+            return new ConditionGroup(conditionLink,conditions);
+        }
+        return conditionNode;
+    }
+
     public Integer getPage() {
         return page;
     }
@@ -67,4 +110,16 @@ public class QueryArgument implements Serializable {
     public Boolean isReverse() {
         return reverse;
     }
+
+    public PageToken getPageToken() {
+        return pageToken;
+    }
+
+    public String[] getColumns() {
+        return columns;
+    }
+
+    public String[] getExcludeColumns() {
+        return excludeColumns;
+    }
 }
@@ -0,0 +1,93 @@
+package com.xq.litemapping;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//按主键对比两次查询结果，inserted/updated按新结果的顺序，removed按旧结果的顺序
+public class QueryDiff {
+
+    private final List<Map<String,?>> rows;
+    private final List<Map<String,?>> inserted;
+    private final List<Map<String,?>> updated;
+    private final List<Map<String,?>> removed;
+
+    QueryDiff(List<Map<String,?>> rows, List<Map<String,?>> inserted, List<Map<String,?>> updated, List<Map<String,?>> removed) {
+        this.rows = Collections.unmodifiableList(rows);
+        this.inserted = Collections.unmodifiableList(inserted);
+        this.updated = Collections.unmodifiableList(updated);
+        this.removed = Collections.unmodifiableList(removed);
+    }
+
+    static QueryDiff diff(List<Map<String,?>> oldRows,List<Map<String,?>> newRows,String primaryKeyName){
+        List<Map<String,?>> inserted = new ArrayList<>();
+        List<Map<String,?>> updated = new ArrayList<>();
+        List<Map<String,?>> removed = new ArrayList<>();
+        Map<Object,Map<String,?>> oldRowMap = new HashMap<>(oldRows.size());
+        for (Map<String,?> row : oldRows){
+            oldRowMap.put(getRowKey(row,primaryKeyName),row);
+        }
+        for (Map<String,?> row : newRows){
+            Map<String,?> oldRow = oldRowMap.remove(getRowKey(row,primaryKeyName));
+            if (oldRow == null){
+                inserted.add(row);
+            } else if (!rowEquals(oldRow,row)){
+                updated.add(row);
+            }
+        }
+        for (Map<String,?> row : oldRows){
+            if (oldRowMap.containsKey(getRowKey(row,primaryKeyName))){
+                removed.add(row);
+            }
+        }
+        return new QueryDiff(newRows,inserted,updated,removed);
+    }
+
+    private static Object getRowKey(Map<String,?> row,String primaryKeyName){
+        Object id = row.get(primaryKeyName);
+        return id instanceof byte[]? Arrays.toString((byte[]) id) : id;
+    }
+
+    //Map.equals对byte[]只比较引用，blob列需要按内容比较
+    private static boolean rowEquals(Map<String,?> oldRow,Map<String,?> newRow){
+        if (oldRow.size() != newRow.size()){
+            return false;
+        }
+        for (Map.Entry<String,?> entry : newRow.entrySet()){
+            Object oldValue = oldRow.get(entry.getKey());
+            Object newValue = entry.getValue();
+            if (oldValue instanceof byte[] && newValue instanceof byte[]){
+                if (!Arrays.equals((byte[]) oldValue,(byte[]) newValue)){
+                    return false;
+                }
+            } else if (oldValue == null? newValue != null || !oldRow.containsKey(entry.getKey()) : !oldValue.equals(newValue)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public List<Map<String,?>> getRows() {
+        return rows;
+    }
+
+    public List<Map<String,?>> getInserted() {
+        return inserted;
+    }
+
+    public List<Map<String,?>> getUpdated() {
+        return updated;
+    }
+
+    public List<Map<String,?>> getRemoved() {
+        return removed;
+    }
+
+    public boolean isEmpty() {
+        return inserted.isEmpty() && updated.isEmpty() && removed.isEmpty();
+    }
+
+}
@@ -0,0 +1,8 @@
+package com.xq.litemapping;
+
+//在后台线程回调，需要更新界面时由调用方切换到主线程
+public interface QueryObserver {
+
+    void onChanged(QueryDiff queryDiff);
+
+}
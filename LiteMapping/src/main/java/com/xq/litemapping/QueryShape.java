@@ -0,0 +1,28 @@
+package com.xq.litemapping;
+
+import android.database.sqlite.SQLiteQueryBuilder;
+
+//查询的各个组成部分，只有需要上报时才拼接成SQL
+class QueryShape {
+
+    final String tableName;
+    final String[] columns;
+    final ConditionCompiler.Selection selection;
+    final String groupBy;
+    final String orderBy;
+    final String limit;
+
+    QueryShape(String tableName, String[] columns, ConditionCompiler.Selection selection, String groupBy, String orderBy, String limit) {
+        this.tableName = tableName;
+        this.columns = columns;
+        this.selection = selection;
+        this.groupBy = groupBy;
+        this.orderBy = orderBy;
+        this.limit = limit;
+    }
+
+    String toSql(){
+        return SQLiteQueryBuilder.buildQueryString(false,tableName,columns,selection.getSelection(),groupBy,null,orderBy,limit);
+    }
+
+}
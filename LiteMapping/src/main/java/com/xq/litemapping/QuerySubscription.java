@@ -0,0 +1,104 @@
+package com.xq.litemapping;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//表变化后延迟debounceMillis重新查询，期间的多次写入只触发一次查询，结果没有变化时不回调
+public class QuerySubscription {
+
+    private static ScheduledExecutorService executor;
+
+    private final InvalidationTracker invalidationTracker;
+    private final String tableName;
+    private final String primaryKeyName;
+    private final Callable<List<Map<String,?>>> query;
+    private final QueryObserver queryObserver;
+    private final long debounceMillis;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean unsubscribed;
+    private List<Map<String,?>> lastRows;
+
+    private final Runnable invalidationObserver = new Runnable() {
+        @Override
+        public void run() {
+            schedule(debounceMillis);
+        }
+    };
+
+    private final Runnable requery = new Runnable() {
+        @Override
+        public void run() {
+            scheduled.set(false);
+            if (unsubscribed){
+                return;
+            }
+            List<Map<String,?>> rows;
+            try {
+                rows = query.call();
+            } catch (Exception e) {
+                e.printStackTrace();
+                return;
+            }
+            boolean first = lastRows == null;
+            QueryDiff queryDiff = QueryDiff.diff(first? Collections.<Map<String,?>>emptyList() : lastRows,rows,primaryKeyName);
+            lastRows = rows;
+            //首次查询的结果总是回调，全部行作为inserted
+            if (!unsubscribed && (first || !queryDiff.isEmpty())){
+                queryObserver.onChanged(queryDiff);
+            }
+        }
+    };
+
+    QuerySubscription(InvalidationTracker invalidationTracker, String tableName, String primaryKeyName, Callable<List<Map<String,?>>> query, QueryObserver queryObserver, long debounceMillis) {
+        this.invalidationTracker = invalidationTracker;
+        this.tableName = tableName;
+        this.primaryKeyName = primaryKeyName;
+        this.query = query;
+        this.queryObserver = queryObserver;
+        this.debounceMillis = debounceMillis;
+    }
+
+    void start(){
+        invalidationTracker.addObserver(tableName,invalidationObserver);
+        schedule(0);
+    }
+
+    private void schedule(long delayMillis){
+        if (!unsubscribed && scheduled.compareAndSet(false,true)){
+            getExecutor().schedule(requery,delayMillis,TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void unsubscribe(){
+        unsubscribed = true;
+        invalidationTracker.removeObserver(tableName,invalidationObserver);
+    }
+
+    public boolean isUnsubscribed() {
+        return unsubscribed;
+    }
+
+    //所有订阅共用一个后台线程，同一订阅的回调不会并发
+    private static synchronized ScheduledExecutorService getExecutor(){
+        if (executor == null){
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable,"LiteMapping-Observer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+}
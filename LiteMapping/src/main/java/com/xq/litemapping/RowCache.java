@@ -0,0 +1,79 @@
+package com.xq.litemapping;
+
+import android.util.LruCache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+class RowCache extends LruCache<String,RowCache.Entry> {
+
+    private final RowWeigher rowWeigher;
+    private final boolean cacheMissingRows;
+
+    RowCache(int maxSize, RowWeigher rowWeigher, boolean cacheMissingRows) {
+        super(maxSize);
+        this.rowWeigher = rowWeigher;
+        this.cacheMissingRows = cacheMissingRows;
+    }
+
+    boolean isCacheMissingRows() {
+        return cacheMissingRows;
+    }
+
+    @Override
+    protected int sizeOf(String key, Entry entry) {
+        if (rowWeigher == null || entry.row == null){
+            return 1;
+        }
+        return Math.max(1,rowWeigher.weigh(entry.row));
+    }
+
+    RowCacheStats getStats(){
+        return new RowCacheStats(hitCount(),missCount(),evictionCount(),size());
+    }
+
+    //row为null表示该主键不存在
+    static class Entry {
+
+        private final Map<String,?> row;
+        private final long expireAt;
+
+        Entry(Map<String,?> row) {
+            this(row,Long.MAX_VALUE);
+        }
+
+        //expireAt为行在CachePolicy下的过期时间，过期后缓存项不再有效
+        Entry(Map<String,?> row, long expireAt) {
+            this.row = row;
+            this.expireAt = expireAt;
+        }
+
+        boolean exists(){
+            return row != null;
+        }
+
+        boolean isExpired(long now){
+            return expireAt <= now;
+        }
+
+        //缓存中的Map不直接暴露给调用方，避免被修改
+        Map<String,?> copyRow(){
+            return row == null? null : new LinkedHashMap<>(row);
+        }
+
+        Map<String,?> copyRow(String[] columns){
+            if (row == null){
+                return null;
+            }
+            Map<String,Object> map = new LinkedHashMap<>(columns.length);
+            for (String column : columns){
+                if (row.containsKey(column)){
+                    map.put(column,row.get(column));
+                }
+            }
+            return map;
+        }
+
+    }
+
+}
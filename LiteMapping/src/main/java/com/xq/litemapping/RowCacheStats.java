@@ -0,0 +1,33 @@
+package com.xq.litemapping;
+
+public class RowCacheStats {
+
+    private final int hitCount;
+    private final int missCount;
+    private final int evictionCount;
+    private final int size;
+
+    RowCacheStats(int hitCount, int missCount, int evictionCount, int size) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+    }
+
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    public int getMissCount() {
+        return missCount;
+    }
+
+    public int getEvictionCount() {
+        return evictionCount;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+}
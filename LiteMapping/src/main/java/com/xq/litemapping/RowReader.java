@@ -0,0 +1,242 @@
+package com.xq.litemapping;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+//逐行读取导入数据，任意时刻只持有一行，值保持原始类型(JSON的类型或CSV的字符串)，由LiteMapping按列类型转换
+abstract class RowReader implements Iterator<Map<String,Object>> {
+
+    protected final BufferedReader reader;
+    protected long rowNumber;
+
+    private Map<String,Object> nextRow;
+    private boolean finished;
+
+    RowReader(InputStream inputStream) {
+        try {
+            this.reader = new BufferedReader(new InputStreamReader(inputStream,"UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //每行一个JSON对象，空行会被忽略
+    static RowReader jsonLines(InputStream inputStream,long skipRows){
+        RowReader rowReader = new JsonLinesReader(inputStream);
+        rowReader.skip(skipRows);
+        return rowReader;
+    }
+
+    //第一行为列名，空的未加引号的字段读作null
+    static RowReader csv(InputStream inputStream,long skipRows){
+        RowReader rowReader = new CsvReader(inputStream);
+        rowReader.skip(skipRows);
+        return rowReader;
+    }
+
+    protected abstract Map<String,Object> readRow() throws IOException;
+
+    protected abstract boolean skipRow() throws IOException;
+
+    private void skip(long skipRows){
+        try {
+            for (long i=0;i<skipRows && skipRow();i++){
+                rowNumber++;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextRow == null && !finished){
+            try {
+                nextRow = readRow();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            if (nextRow == null){
+                finished = true;
+            } else {
+                rowNumber++;
+            }
+        }
+        return nextRow != null;
+    }
+
+    @Override
+    public Map<String,Object> next() {
+        if (!hasNext()){
+            throw new NoSuchElementException();
+        }
+        Map<String,Object> row = nextRow;
+        nextRow = null;
+        return row;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private static class JsonLinesReader extends RowReader {
+
+        private JsonLinesReader(InputStream inputStream) {
+            super(inputStream);
+        }
+
+        private String readLine() throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null){
+                if (!line.trim().isEmpty()){
+                    return line;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        protected Map<String,Object> readRow() throws IOException {
+            String line = readLine();
+            if (line == null){
+                return null;
+            }
+            try {
+                JSONObject jsonObject = new JSONObject(line);
+                Map<String,Object> row = new LinkedHashMap<>();
+                Iterator<String> keys = jsonObject.keys();
+                while (keys.hasNext()){
+                    String key = keys.next();
+                    row.put(key,jsonObject.opt(key));
+                }
+                return row;
+            } catch (JSONException e) {
+                throw new IllegalArgumentException(String.format("invalid json at row %s: %s",rowNumber+1,e.getMessage()));
+            }
+        }
+
+        //跳过时不解析JSON
+        @Override
+        protected boolean skipRow() throws IOException {
+            return readLine() != null;
+        }
+    }
+
+    private static class CsvReader extends RowReader {
+
+        private List<String> header;
+
+        private CsvReader(InputStream inputStream) {
+            super(inputStream);
+        }
+
+        private List<String> getHeader() throws IOException {
+            if (header == null){
+                header = readNonEmptyRecord();
+                if (header == null){
+                    header = new ArrayList<>();
+                } else if (!header.isEmpty() && header.get(0) != null && header.get(0).startsWith("\uFEFF")){
+                    header.set(0,header.get(0).substring(1));
+                }
+            }
+            return header;
+        }
+
+        @Override
+        protected Map<String,Object> readRow() throws IOException {
+            List<String> header = getHeader();
+            List<String> fields = readNonEmptyRecord();
+            if (fields == null){
+                return null;
+            }
+            if (fields.size() != header.size()){
+                throw new IllegalArgumentException(String.format("row %s has %s fields, header has %s",rowNumber+1,fields.size(),header.size()));
+            }
+            Map<String,Object> row = new LinkedHashMap<>(header.size());
+            for (int i=0;i<header.size();i++){
+                row.put(header.get(i),fields.get(i));
+            }
+            return row;
+        }
+
+        @Override
+        protected boolean skipRow() throws IOException {
+            getHeader();
+            return readNonEmptyRecord() != null;
+        }
+
+        private List<String> readNonEmptyRecord() throws IOException {
+            List<String> fields;
+            while ((fields = readRecord()) != null){
+                if (fields.size() > 1 || fields.get(0) != null){
+                    return fields;
+                }
+            }
+            return null;
+        }
+
+        //支持RFC 4180的引号转义，引号内可以包含逗号与换行
+        private List<String> readRecord() throws IOException {
+            int c = reader.read();
+            if (c == -1){
+                return null;
+            }
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            boolean inQuotes = false;
+            while (true){
+                if (inQuotes){
+                    if (c == -1){
+                        throw new IllegalArgumentException(String.format("unterminated quoted field at row %s",rowNumber+1));
+                    }
+                    if (c == '"'){
+                        c = reader.read();
+                        if (c != '"'){
+                            inQuotes = false;
+                            continue;
+                        }
+                    }
+                    field.append((char) c);
+                } else if (c == '"' && !quoted && field.length() == 0){
+                    quoted = true;
+                    inQuotes = true;
+                } else if (c == ','){
+                    fields.add(toField(field,quoted));
+                    field.setLength(0);
+                    quoted = false;
+                } else if (c == '\n' || c == '\r' || c == -1){
+                    if (c == '\r'){
+                        reader.mark(1);
+                        if (reader.read() != '\n'){
+                            reader.reset();
+                        }
+                    }
+                    fields.add(toField(field,quoted));
+                    return fields;
+                } else {
+                    field.append((char) c);
+                }
+                c = reader.read();
+            }
+        }
+
+        private String toField(StringBuilder field,boolean quoted){
+            return field.length() == 0 && !quoted? null : field.toString();
+        }
+    }
+
+}
@@ -0,0 +1,10 @@
+package com.xq.litemapping;
+
+import java.util.Map;
+
+public interface RowVisitor {
+
+    //返回false时停止遍历，剩余的行不会再被读取
+    boolean visit(Map<String,?> row);
+
+}
@@ -0,0 +1,10 @@
+package com.xq.litemapping;
+
+import java.util.Map;
+
+public interface RowWeigher {
+
+    //返回该行在行缓存中占用的权重，例如估算的字节数
+    int weigh(Map<String,?> row);
+
+}
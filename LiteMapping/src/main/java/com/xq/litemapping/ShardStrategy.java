@@ -0,0 +1,82 @@
+package com.xq.litemapping;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+//决定一行保存在哪个分片，分片数量与策略确定后不能再修改，否则已写入的行会按新的规则到错误的分片中查找
+public abstract class ShardStrategy implements Serializable {
+
+    private final String column;
+
+    //column为null时按主键分片，按主键的读写只访问一个分片，否则需要查询全部分片
+    protected ShardStrategy(String column) {
+        this.column = column;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    //value不为null，返回[0,shardCount)之间的分片下标
+    public abstract int getShard(Object value,int shardCount);
+
+    //按主键的哈希均匀分布，适合写入量大且主要按主键访问的表
+    public static ShardStrategy byPrimaryKeyHash(){
+        return new HashStrategy(null);
+    }
+
+    public static ShardStrategy byHash(String column){
+        return new HashStrategy(column);
+    }
+
+    //按毫秒时间戳所在的时间段轮流分配到各个分片，同一时间段的行在同一个分片中
+    public static ShardStrategy byTimeBucket(String column,long bucketMillis){
+        if (bucketMillis <= 0){
+            throw new IllegalArgumentException("bucketMillis must be positive");
+        }
+        return new TimeBucketStrategy(column,bucketMillis);
+    }
+
+    private static class HashStrategy extends ShardStrategy {
+
+        private HashStrategy(String column) {
+            super(column);
+        }
+
+        //不使用Object.hashCode，保证不同进程、不同版本中同一个值总是落在同一个分片
+        @Override
+        public int getShard(Object value, int shardCount) {
+            long hash;
+            if (value instanceof Number && !(value instanceof Float || value instanceof Double)){
+                hash = ((Number) value).longValue();
+            } else if (value instanceof byte[]){
+                hash = Arrays.hashCode((byte[]) value);
+            } else {
+                hash = value.toString().hashCode();
+            }
+            hash *= 0x9E3779B97F4A7C15L;
+            hash ^= hash >>> 32;
+            return (int) ((hash & Long.MAX_VALUE) % shardCount);
+        }
+
+    }
+
+    private static class TimeBucketStrategy extends ShardStrategy {
+
+        private final long bucketMillis;
+
+        private TimeBucketStrategy(String column, long bucketMillis) {
+            super(column);
+            this.bucketMillis = bucketMillis;
+        }
+
+        @Override
+        public int getShard(Object value, int shardCount) {
+            long millis = ((Number) value).longValue();
+            long bucket = millis >= 0? millis/bucketMillis : (millis+1)/bucketMillis-1;
+            return (int) (((bucket % shardCount)+shardCount) % shardCount);
+        }
+
+    }
+
+}
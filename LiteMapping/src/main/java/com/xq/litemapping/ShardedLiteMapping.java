@@ -0,0 +1,627 @@
+package com.xq.litemapping;
+
+import android.content.Context;
+import android.util.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+//把一张表按ShardStrategy分散到多个数据库文件中，每个分片是一个独立的LiteMapping，拥有各自的InnerHelper与写锁
+//不同分片的写入并行执行，查询同时发往各个分片后按排序列归并；跨分片的批量写入不是原子的，某个分片失败时其他分片的写入已经提交
+//主键需要由调用方指定，各分片的rowid只在分片内唯一
+public class ShardedLiteMapping implements StorageEngine {
+
+    private static ExecutorService executor;
+
+    private final String primaryKeyName;
+    private final String shardColumn;
+    private final ShardStrategy shardStrategy;
+    private final List<LiteMapping> shards;
+
+    public ShardedLiteMapping(Context context, String path, int shardCount, ShardStrategy shardStrategy, Pair<String,Class<?>> primaryKeyPair, Map<String,Class<?>> otherKeyMap){
+        this(context,LiteMapping.SqliteHelperPool.getDefault(),path,shardCount,shardStrategy,primaryKeyPair,otherKeyMap,new ArrayList<Index>());
+    }
+
+    public ShardedLiteMapping(Context context, LiteMapping.SqliteHelperPool sqliteHelperPool, String path, int shardCount, ShardStrategy shardStrategy, Pair<String,Class<?>> primaryKeyPair, Map<String,Class<?>> otherKeyMap, List<Index> indexList){
+        if (shardCount < 1){
+            throw new IllegalArgumentException("shardCount must be positive");
+        }
+        String[] array = path.split("/");
+        this.primaryKeyName = primaryKeyPair.first;
+        this.shardColumn = shardStrategy.getColumn() == null? primaryKeyName : shardStrategy.getColumn();
+        if (!shardColumn.equals(primaryKeyName) && !otherKeyMap.containsKey(shardColumn)){
+            throw new IllegalArgumentException(String.format("shard column %s is not declared in table %s",shardColumn,array[1]));
+        }
+        this.shardStrategy = shardStrategy;
+        List<LiteMapping> list = new ArrayList<>(shardCount);
+        for (int i=0;i<shardCount;i++){
+            //每个分片是单独的数据库文件，连接池会为它创建单独的InnerHelper
+            list.add(new LiteMapping(context,sqliteHelperPool,getShardDbName(array[0],i)+"/"+array[1],false,primaryKeyPair,otherKeyMap,indexList));
+        }
+        this.shards = Collections.unmodifiableList(list);
+    }
+
+    static String getShardDbName(String dbName,int shard){
+        return dbName+"_shard"+shard;
+    }
+
+    public int getShardCount(){
+        return shards.size();
+    }
+
+    //用于单独配置某个分片，如setOperationListener、enableRowCache
+    public LiteMapping getShard(int shard){
+        return shards.get(shard);
+    }
+
+    private int getShardByValue(Object value){
+        if (value == null){
+            throw new IllegalArgumentException(String.format("%s is required to choose a shard",shardColumn));
+        }
+        return shardStrategy.getShard(value,shards.size());
+    }
+
+    private int getShardByRow(Object id,Map<String,?> columns){
+        return getShardByValue(shardColumn.equals(primaryKeyName)? id : columns.get(shardColumn));
+    }
+
+    //只凭主键无法确定分片时返回-1
+    private int getShardById(Object id){
+        return shardColumn.equals(primaryKeyName)? getShardByValue(id) : -1;
+    }
+
+    @Override
+    public long insert(Map<String,?> columns){
+        return shards.get(getShardByRow(columns.get(primaryKeyName),columns)).insert(columns);
+    }
+
+    @Override
+    public boolean insertById(Object id,Map<String,?> columns){
+        return shards.get(getShardByRow(id,columns)).insertById(id,columns);
+    }
+
+    //按分片分组后并行写入，结果按传入的顺序返回，某个分片失败时该分片的结果为-1
+    public List<Long> insertAll(List<Map<String,?>> columnsList){
+        final List<List<Integer>> indexLists = newIndexLists();
+        for (int i=0;i<columnsList.size();i++){
+            Map<String,?> columns = columnsList.get(i);
+            indexLists.get(getShardByRow(columns.get(primaryKeyName),columns)).add(i);
+        }
+        List<Callable<List<Long>>> tasks = new ArrayList<>();
+        final List<Integer> taskShards = new ArrayList<>();
+        for (int shard=0;shard<shards.size();shard++){
+            List<Integer> indexList = indexLists.get(shard);
+            if (indexList.isEmpty()){
+                continue;
+            }
+            final LiteMapping liteMapping = shards.get(shard);
+            final List<Map<String,?>> subList = new ArrayList<>(indexList.size());
+            for (int index : indexList){
+                subList.add(columnsList.get(index));
+            }
+            taskShards.add(shard);
+            tasks.add(new Callable<List<Long>>() {
+                @Override
+                public List<Long> call() {
+                    return liteMapping.insertAll(subList);
+                }
+            });
+        }
+        List<List<Long>> results = runOnShards(tasks);
+        Long[] array = new Long[columnsList.size()];
+        Arrays.fill(array,-1L);
+        for (int i=0;i<results.size();i++){
+            List<Integer> indexList = indexLists.get(taskShards.get(i));
+            List<Long> result = results.get(i);
+            for (int j=0;j<result.size() && j<indexList.size();j++){
+                array[indexList.get(j)] = result.get(j);
+            }
+        }
+        return Arrays.asList(array);
+    }
+
+    public List<Boolean> insertAllById(Map<?,Map<String,?>> columnsIdMap){
+        List<Map<Object,Map<String,?>>> shardMaps = new ArrayList<>(shards.size());
+        for (int i=0;i<shards.size();i++){
+            shardMaps.add(new LinkedHashMap<Object,Map<String,?>>());
+        }
+        for (Map.Entry<?,Map<String,?>> entry : columnsIdMap.entrySet()){
+            shardMaps.get(getShardByRow(entry.getKey(),entry.getValue())).put(entry.getKey(),entry.getValue());
+        }
+        List<Callable<List<Boolean>>> tasks = new ArrayList<>();
+        final List<Integer> taskShards = new ArrayList<>();
+        for (int shard=0;shard<shards.size();shard++){
+            final Map<Object,Map<String,?>> shardMap = shardMaps.get(shard);
+            if (shardMap.isEmpty()){
+                continue;
+            }
+            final LiteMapping liteMapping = shards.get(shard);
+            taskShards.add(shard);
+            tasks.add(new Callable<List<Boolean>>() {
+                @Override
+                public List<Boolean> call() {
+                    return liteMapping.insertAllById(shardMap);
+                }
+            });
+        }
+        List<List<Boolean>> results = runOnShards(tasks);
+        Map<Object,Boolean> successMap = new HashMap<>(columnsIdMap.size());
+        for (int i=0;i<results.size();i++){
+            List<Boolean> result = results.get(i);
+            int j = 0;
+            for (Object id : shardMaps.get(taskShards.get(i)).keySet()){
+                successMap.put(id,j < result.size() && result.get(j));
+                j++;
+            }
+        }
+        List<Boolean> successList = new ArrayList<>(columnsIdMap.size());
+        for (Object id : columnsIdMap.keySet()){
+            successList.add(successMap.get(id));
+        }
+        return successList;
+    }
+
+    @Override
+    public boolean update(Object id,Map<String,?> columns){
+        int shard = locateShard(id);
+        if (shard < 0){
+            return false;
+        }
+        checkShardUnchanged(shard,Collections.singletonList(id),columns);
+        return shards.get(shard).update(id,columns);
+    }
+
+    public List<Boolean> updateAll(List<?> ids,final Map<String,?> columns){
+        List<List<Integer>> indexLists = groupIdsByShard(ids);
+        for (int shard=0;shard<shards.size();shard++){
+            checkShardUnchanged(shard,subList(ids,indexLists.get(shard)),columns);
+        }
+        return runBooleanBatch(ids,indexLists,new BatchOperation() {
+            @Override
+            public List<Boolean> run(LiteMapping liteMapping, List<?> ids) {
+                return liteMapping.updateAll(ids,columns);
+            }
+        });
+    }
+
+    @Override
+    public boolean delete(Object id){
+        return deleteAll(Collections.singletonList(id)).get(0);
+    }
+
+    public List<Boolean> deleteAll(List<?> ids){
+        return runBooleanBatch(ids,groupIdsByShard(ids),new BatchOperation() {
+            @Override
+            public List<Boolean> run(LiteMapping liteMapping, List<?> ids) {
+                return liteMapping.deleteAll(ids);
+            }
+        });
+    }
+
+    //修改分片列会使行属于另一个分片，跨文件移动无法保证原子性，这里直接拒绝
+    private void checkShardUnchanged(int shard,List<?> ids,Map<String,?> columns){
+        if (ids.isEmpty() || !columns.containsKey(shardColumn) || getShardByValue(columns.get(shardColumn)) == shard){
+            return;
+        }
+        if (!shards.get(shard).queryByIdList(ids,new String[]{primaryKeyName}).isEmpty()){
+            throw new IllegalArgumentException(String.format("changing %s would move rows to another shard",shardColumn));
+        }
+    }
+
+    @Override
+    public boolean contain(Object id){
+        return locateShard(id) >= 0;
+    }
+
+    @Override
+    public Map<String,?> queryById(final Object id){
+        int shard = getShardById(id);
+        if (shard >= 0){
+            return shards.get(shard).queryById(id);
+        }
+        List<Map<String,?>> rows = runOnAllShards(new ShardOperation<Map<String,?>>() {
+            @Override
+            public Map<String,?> run(LiteMapping liteMapping) {
+                return liteMapping.queryById(id);
+            }
+        });
+        for (Map<String,?> row : rows){
+            if (row != null){
+                return row;
+            }
+        }
+        return null;
+    }
+
+    //不存在时返回-1
+    private int locateShard(final Object id){
+        int shard = getShardById(id);
+        if (shard >= 0){
+            return shards.get(shard).contain(id)? shard : -1;
+        }
+        List<Boolean> results = runOnAllShards(new ShardOperation<Boolean>() {
+            @Override
+            public Boolean run(LiteMapping liteMapping) {
+                return liteMapping.contain(id);
+            }
+        });
+        return results.indexOf(true);
+    }
+
+    @Override
+    public <T> List<T> queryId(QueryArgument queryArgument){
+        List<Map<String,?>> rows = scatterQuery(queryArgument,new String[]{primaryKeyName},false);
+        List<T> list = new ArrayList<>(rows.size());
+        for (Map<String,?> row : rows){
+            list.add((T) row.get(primaryKeyName));
+        }
+        return list;
+    }
+
+    //与LiteMapping.query一致，设置了PageToken时按游标翻页
+    @Override
+    public List<Map<String,?>> query(QueryArgument queryArgument){
+        return scatterQuery(queryArgument,queryArgument.getColumns(),queryArgument.getPageToken() != null);
+    }
+
+    //按(排序列,主键)翻页，每个分片最多只读取pageSize行，适合深度翻页
+    public Page queryPage(QueryArgument queryArgument){
+        List<Map<String,?>> rows = scatterQuery(queryArgument,queryArgument.getColumns(),true);
+        PageToken nextPageToken = null;
+        Integer pageSize = queryArgument.getPageSize();
+        if (pageSize != null && !rows.isEmpty() && rows.size() >= pageSize){
+            Map<String,?> lastRow = rows.get(rows.size()-1);
+            String orderColumn = queryArgument.getOrderColumn();
+            nextPageToken = new PageToken(orderColumn == null || orderColumn.equals(primaryKeyName)? null : lastRow.get(orderColumn),lastRow.get(primaryKeyName));
+        }
+        return new Page(rows,nextPageToken);
+    }
+
+    //每个分片按相同的顺序返回前(offset+pageSize)行，再做k路归并，未指定排序列时按主键排序保证结果稳定
+    private List<Map<String,?>> scatterQuery(QueryArgument queryArgument,String[] columns,final boolean keyset){
+        final String orderColumn = queryArgument.getOrderColumn() == null? primaryKeyName : queryArgument.getOrderColumn();
+        final boolean reverse = Boolean.TRUE.equals(queryArgument.isReverse());
+        Integer pageSize = queryArgument.getPageSize();
+        int offset = 0;
+        if (!keyset && pageSize != null && queryArgument.getPage() != null){
+            offset = queryArgument.getPage()*pageSize;
+        }
+        final QueryArgument shardArgument = new QueryArgument();
+        ConditionNode conditionNode = queryArgument.getConditionNode();
+        if (conditionNode != null){
+            shardArgument.setCondition(conditionNode);
+        }
+        shardArgument.setOrderBy(orderColumn,reverse);
+        if (pageSize != null){
+            shardArgument.setPageSize(offset+pageSize);
+        }
+        if (keyset){
+            shardArgument.setPageToken(queryArgument.getPageToken());
+        }
+        //归并需要排序列，调用方没有要求的话合并后再去掉
+        boolean removeOrderColumn = false;
+        if (columns != null){
+            List<String> columnList = new ArrayList<>(Arrays.asList(columns));
+            if (!columnList.contains(orderColumn)){
+                columnList.add(orderColumn);
+                removeOrderColumn = !orderColumn.equals(primaryKeyName);
+            }
+            shardArgument.setColumns(columnList.toArray(new String[columnList.size()]));
+        } else if (queryArgument.getExcludeColumns() != null){
+            List<String> excludeColumnList = new ArrayList<>(Arrays.asList(queryArgument.getExcludeColumns()));
+            removeOrderColumn = excludeColumnList.remove(orderColumn) && !orderColumn.equals(primaryKeyName);
+            shardArgument.setExcludeColumns(excludeColumnList.toArray(new String[excludeColumnList.size()]));
+        }
+        List<List<Map<String,?>>> shardRows = runOnAllShards(new ShardOperation<List<Map<String,?>>>() {
+            @Override
+            public List<Map<String,?>> run(LiteMapping liteMapping) {
+                return keyset? liteMapping.queryPage(shardArgument).getRows() : liteMapping.query(shardArgument);
+            }
+        });
+        List<Map<String,?>> rows = mergeRows(shardRows,orderColumn,reverse,offset,pageSize);
+        if (removeOrderColumn){
+            for (Map<String,?> row : rows){
+                row.remove(orderColumn);
+            }
+        }
+        return rows;
+    }
+
+    //各分片的结果已经有序，用大小为分片数的堆每次取出最小的一行，跳过offset行后最多取limit行
+    private List<Map<String,?>> mergeRows(final List<List<Map<String,?>>> shardRows,final String orderColumn,final boolean reverse,int offset,Integer limit){
+        PriorityQueue<int[]> queue = new PriorityQueue<>(shardRows.size(),new Comparator<int[]>() {
+            @Override
+            public int compare(int[] position1, int[] position2) {
+                Map<String,?> row1 = shardRows.get(position1[0]).get(position1[1]);
+                Map<String,?> row2 = shardRows.get(position2[0]).get(position2[1]);
+                int result = ConditionEvaluator.compare(row1.get(orderColumn),row2.get(orderColumn));
+                if (result == 0){
+                    result = ConditionEvaluator.compare(row1.get(primaryKeyName),row2.get(primaryKeyName));
+                }
+                return reverse? -result : result;
+            }
+        });
+        int total = 0;
+        for (int i=0;i<shardRows.size();i++){
+            total += shardRows.get(i).size();
+            if (!shardRows.get(i).isEmpty()){
+                queue.add(new int[]{i,0});
+            }
+        }
+        List<Map<String,?>> list = new ArrayList<>(limit == null? total : Math.min(limit,total));
+        int skipped = 0;
+        while (!queue.isEmpty() && (limit == null || list.size() < limit)){
+            int[] position = queue.poll();
+            if (skipped < offset){
+                skipped++;
+            } else {
+                list.add(shardRows.get(position[0]).get(position[1]));
+            }
+            if (++position[1] < shardRows.get(position[0]).size()){
+                queue.add(position);
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public long count(final QueryArgument queryArgument){
+        long count = 0;
+        for (long shardCount : runOnAllShards(new ShardOperation<Long>() {
+            @Override
+            public Long run(LiteMapping liteMapping) {
+                return liteMapping.count(queryArgument);
+            }
+        })){
+            count += shardCount;
+        }
+        return count;
+    }
+
+    public <T> T aggregate(Aggregate aggregate,String column,QueryArgument queryArgument){
+        List<Map<String,?>> rows = aggregate(aggregate,column,new String[0],queryArgument);
+        return rows.isEmpty()? null : (T) rows.get(0).get(column);
+    }
+
+    //各分片分别聚合后按分组合并，Avg由各分片的Sum与Count计算，不能直接平均各分片的平均值
+    public List<Map<String,?>> aggregate(Aggregate aggregate,final String column,final String[] groupColumns,final QueryArgument queryArgument){
+        final Aggregate shardAggregate = aggregate == Aggregate.Avg? Aggregate.Sum : aggregate;
+        List<List<Map<String,?>>> shardResults = runOnAllShards(new ShardOperation<List<Map<String,?>>>() {
+            @Override
+            public List<Map<String,?>> run(LiteMapping liteMapping) {
+                return liteMapping.aggregate(shardAggregate,column,groupColumns,queryArgument);
+            }
+        });
+        List<List<Map<String,?>>> shardCounts = null;
+        if (aggregate == Aggregate.Avg){
+            shardCounts = runOnAllShards(new ShardOperation<List<Map<String,?>>>() {
+                @Override
+                public List<Map<String,?>> run(LiteMapping liteMapping) {
+                    return liteMapping.aggregate(Aggregate.Count,column,groupColumns,queryArgument);
+                }
+            });
+        }
+        Map<List<Object>,Map<String,Object>> groupMap = new LinkedHashMap<>();
+        Map<List<Object>,Long> countMap = new HashMap<>();
+        for (int shard=0;shard<shards.size();shard++){
+            for (Map<String,?> row : shardResults.get(shard)){
+                List<Object> groupKey = getGroupKey(row,groupColumns);
+                Map<String,Object> groupRow = groupMap.get(groupKey);
+                if (groupRow == null){
+                    groupMap.put(groupKey,new LinkedHashMap<String,Object>(row));
+                } else {
+                    groupRow.put(column,combineAggregate(shardAggregate,groupRow.get(column),row.get(column)));
+                }
+            }
+            if (shardCounts != null){
+                for (Map<String,?> row : shardCounts.get(shard)){
+                    List<Object> groupKey = getGroupKey(row,groupColumns);
+                    Long count = countMap.get(groupKey);
+                    countMap.put(groupKey,(count == null? 0 : count)+((Number) row.get(column)).longValue());
+                }
+            }
+        }
+        List<Map<String,?>> list = new ArrayList<>(groupMap.size());
+        for (Map.Entry<List<Object>,Map<String,Object>> entry : groupMap.entrySet()){
+            Map<String,Object> row = entry.getValue();
+            if (aggregate == Aggregate.Avg){
+                Object sum = row.get(column);
+                Long count = countMap.get(entry.getKey());
+                row.put(column,sum == null || count == null || count == 0? null : ((Number) sum).doubleValue()/count);
+            }
+            list.add(row);
+        }
+        return list;
+    }
+
+    private List<Object> getGroupKey(Map<String,?> row,String[] groupColumns){
+        List<Object> groupKey = new ArrayList<>(groupColumns.length);
+        for (String groupColumn : groupColumns){
+            Object value = row.get(groupColumn);
+            groupKey.add(value instanceof byte[]? Arrays.toString((byte[]) value) : value);
+        }
+        return groupKey;
+    }
+
+    //没有匹配行的分片聚合结果为null，合并时跳过
+    private Object combineAggregate(Aggregate aggregate,Object value1,Object value2){
+        if (value1 == null){
+            return value2;
+        }
+        if (value2 == null){
+            return value1;
+        }
+        switch (aggregate){
+            case Count:
+            case Sum:
+                if (value1 instanceof Double || value2 instanceof Double){
+                    return ((Number) value1).doubleValue()+((Number) value2).doubleValue();
+                }
+                return ((Number) value1).longValue()+((Number) value2).longValue();
+            case Min:
+                return ConditionEvaluator.compare(value1,value2) <= 0? value1 : value2;
+            case Max:
+                return ConditionEvaluator.compare(value1,value2) >= 0? value1 : value2;
+        }
+        throw new IllegalArgumentException(String.valueOf(aggregate));
+    }
+
+    @Override
+    public void clear(){
+        runOnAllShards(new ShardOperation<Void>() {
+            @Override
+            public Void run(LiteMapping liteMapping) {
+                liteMapping.clear();
+                return null;
+            }
+        });
+    }
+
+    private List<List<Integer>> newIndexLists(){
+        List<List<Integer>> indexLists = new ArrayList<>(shards.size());
+        for (int i=0;i<shards.size();i++){
+            indexLists.add(new ArrayList<Integer>());
+        }
+        return indexLists;
+    }
+
+    //只凭主键无法确定分片时每个分片都包含全部下标
+    private List<List<Integer>> groupIdsByShard(List<?> ids){
+        List<List<Integer>> indexLists = newIndexLists();
+        for (int i=0;i<ids.size();i++){
+            int shard = getShardById(ids.get(i));
+            if (shard >= 0){
+                indexLists.get(shard).add(i);
+            } else {
+                for (List<Integer> indexList : indexLists){
+                    indexList.add(i);
+                }
+            }
+        }
+        return indexLists;
+    }
+
+    private List<Object> subList(List<?> list,List<Integer> indexList){
+        List<Object> subList = new ArrayList<>(indexList.size());
+        for (int index : indexList){
+            subList.add(list.get(index));
+        }
+        return subList;
+    }
+
+    //任意一个分片成功即为成功
+    private List<Boolean> runBooleanBatch(List<?> ids,final List<List<Integer>> indexLists,final BatchOperation batchOperation){
+        List<Callable<List<Boolean>>> tasks = new ArrayList<>();
+        List<Integer> taskShards = new ArrayList<>();
+        for (int shard=0;shard<shards.size();shard++){
+            final List<Object> shardIds = subList(ids,indexLists.get(shard));
+            if (shardIds.isEmpty()){
+                continue;
+            }
+            final LiteMapping liteMapping = shards.get(shard);
+            taskShards.add(shard);
+            tasks.add(new Callable<List<Boolean>>() {
+                @Override
+                public List<Boolean> call() {
+                    return batchOperation.run(liteMapping,shardIds);
+                }
+            });
+        }
+        List<List<Boolean>> results = runOnShards(tasks);
+        Boolean[] array = new Boolean[ids.size()];
+        Arrays.fill(array,false);
+        for (int i=0;i<results.size();i++){
+            List<Integer> indexList = indexLists.get(taskShards.get(i));
+            List<Boolean> result = results.get(i);
+            for (int j=0;j<result.size() && j<indexList.size();j++){
+                if (result.get(j)){
+                    array[indexList.get(j)] = true;
+                }
+            }
+        }
+        return Arrays.asList(array);
+    }
+
+    private <V> List<V> runOnAllShards(final ShardOperation<V> shardOperation){
+        List<Callable<V>> tasks = new ArrayList<>(shards.size());
+        for (final LiteMapping liteMapping : shards){
+            tasks.add(new Callable<V>() {
+                @Override
+                public V call() {
+                    return shardOperation.run(liteMapping);
+                }
+            });
+        }
+        return runOnShards(tasks);
+    }
+
+    //只有一个任务时直接在当前线程执行，任务抛出的RuntimeException原样抛给调用方
+    private <V> List<V> runOnShards(List<Callable<V>> tasks){
+        List<V> results = new ArrayList<>(tasks.size());
+        if (tasks.size() == 1){
+            try {
+                results.add(tasks.get(0).call());
+            } catch (RuntimeException e){
+                throw e;
+            } catch (Exception e){
+                throw new IllegalStateException(e);
+            }
+            return results;
+        }
+        List<Future<V>> futures = new ArrayList<>(tasks.size());
+        for (Callable<V> task : tasks){
+            futures.add(getExecutor().submit(task));
+        }
+        try {
+            for (Future<V> future : futures){
+                results.add(future.get());
+            }
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e){
+            if (e.getCause() instanceof RuntimeException){
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    //所有分片表共用，线程空闲一段时间后自动回收
+    private static synchronized ExecutorService getExecutor(){
+        if (executor == null){
+            executor = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable,"LiteMapping-Shard");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    private interface ShardOperation<V> {
+        V run(LiteMapping liteMapping);
+    }
+
+    private interface BatchOperation {
+        List<Boolean> run(LiteMapping liteMapping,List<?> ids);
+    }
+
+}
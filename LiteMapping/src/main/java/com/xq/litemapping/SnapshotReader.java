@@ -0,0 +1,168 @@
+package com.xq.litemapping;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+//按窗口映射快照文件顺序读取，单个值跨越窗口时从该值的位置重新映射，大文件不会一次映射到内存
+class SnapshotReader implements Closeable {
+
+    private static final long MAP_WINDOW = 64L*1024*1024;
+
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final long size;
+
+    private MappedByteBuffer mappedBuffer;
+    private long mappedPosition;
+
+    private final String[] columns;
+    private final byte[] types;
+    private final long rowCount;
+
+    SnapshotReader(File file) throws IOException {
+        this.randomAccessFile = new RandomAccessFile(file,"r");
+        this.channel = randomAccessFile.getChannel();
+        try {
+            this.size = channel.size();
+            map(0,0);
+            require(12);
+            if (mappedBuffer.getInt() != SnapshotWriter.MAGIC){
+                throw new IOException("not a snapshot file: "+file);
+            }
+            int version = mappedBuffer.getInt();
+            if (version != SnapshotWriter.VERSION){
+                throw new IOException("unsupported snapshot version: "+version);
+            }
+            int columnCount = mappedBuffer.getInt();
+            this.columns = new String[columnCount];
+            this.types = new byte[columnCount];
+            for (int i=0;i<columnCount;i++){
+                columns[i] = new String(readBytes(),SnapshotWriter.UTF_8);
+                require(1);
+                types[i] = mappedBuffer.get();
+            }
+            require(8);
+            this.rowCount = mappedBuffer.getLong();
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    String[] getColumns() {
+        return columns;
+    }
+
+    byte[] getTypes() {
+        return types;
+    }
+
+    long getRowCount() {
+        return rowCount;
+    }
+
+    byte readType() throws IOException {
+        require(1);
+        return mappedBuffer.get();
+    }
+
+    long readLong(byte type) throws IOException {
+        switch (type){
+            case SnapshotWriter.TYPE_BYTE:
+            case SnapshotWriter.TYPE_BOOLEAN:
+                require(1);
+                return mappedBuffer.get();
+            case SnapshotWriter.TYPE_SHORT:
+                require(2);
+                return mappedBuffer.getShort();
+            case SnapshotWriter.TYPE_CHAR:
+                require(2);
+                return mappedBuffer.getChar();
+            case SnapshotWriter.TYPE_INT:
+                require(4);
+                return mappedBuffer.getInt();
+            default:
+                require(8);
+                return mappedBuffer.getLong();
+        }
+    }
+
+    double readDouble(byte type) throws IOException {
+        if (type == SnapshotWriter.TYPE_FLOAT){
+            require(4);
+            return mappedBuffer.getFloat();
+        }
+        require(8);
+        return mappedBuffer.getDouble();
+    }
+
+    String readString() throws IOException {
+        return new String(readBytes(),SnapshotWriter.UTF_8);
+    }
+
+    byte[] readBlob() throws IOException {
+        return readBytes();
+    }
+
+    //跳过当前schema中已不存在的列
+    void skipValue(byte type) throws IOException {
+        switch (type){
+            case SnapshotWriter.TYPE_NULL:
+                break;
+            case SnapshotWriter.TYPE_FLOAT:
+            case SnapshotWriter.TYPE_DOUBLE:
+                readDouble(type);
+                break;
+            case SnapshotWriter.TYPE_STRING:
+            case SnapshotWriter.TYPE_BLOB:
+                require(4);
+                int length = mappedBuffer.getInt();
+                require(length);
+                mappedBuffer.position(mappedBuffer.position()+length);
+                break;
+            default:
+                readLong(type);
+                break;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mappedBuffer = null;
+        randomAccessFile.close();
+    }
+
+    private byte[] readBytes() throws IOException {
+        require(4);
+        int length = mappedBuffer.getInt();
+        if (length < 0){
+            throw new IOException("corrupted snapshot");
+        }
+        require(length);
+        byte[] bytes = new byte[length];
+        mappedBuffer.get(bytes);
+        return bytes;
+    }
+
+    private void require(int length) throws IOException {
+        if (mappedBuffer.remaining() >= length){
+            return;
+        }
+        long position = mappedPosition+mappedBuffer.position();
+        if (position+length > size){
+            throw new IOException("truncated snapshot");
+        }
+        map(position,length);
+    }
+
+    private void map(long position,int minLength) throws IOException {
+        long length = Math.min(size-position,Math.max(minLength,MAP_WINDOW));
+        mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY,position,length);
+        mappedPosition = position;
+    }
+
+}
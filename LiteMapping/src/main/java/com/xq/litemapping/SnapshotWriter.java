@@ -0,0 +1,166 @@
+package com.xq.litemapping;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+//快照格式：magic、版本、列数、每列(名称,类型)、行数，之后逐行写入每列的类型标记与值，变长值带int长度前缀
+class SnapshotWriter implements Closeable {
+
+    static final int MAGIC = 0x4C4D5353;
+    static final int VERSION = 1;
+
+    static final byte TYPE_NULL = 0;
+    static final byte TYPE_BYTE = 1;
+    static final byte TYPE_SHORT = 2;
+    static final byte TYPE_INT = 3;
+    static final byte TYPE_LONG = 4;
+    static final byte TYPE_FLOAT = 5;
+    static final byte TYPE_DOUBLE = 6;
+    static final byte TYPE_BOOLEAN = 7;
+    static final byte TYPE_CHAR = 8;
+    static final byte TYPE_STRING = 9;
+    static final byte TYPE_BLOB = 10;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 64*1024;
+
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final long rowCountPosition;
+    private long rowCount;
+
+    SnapshotWriter(File file,String[] columns,byte[] types) throws IOException {
+        this.randomAccessFile = new RandomAccessFile(file,"rw");
+        this.channel = randomAccessFile.getChannel();
+        try {
+            channel.truncate(0);
+            require(12);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(columns.length);
+            for (int i=0;i<columns.length;i++){
+                putBytes(columns[i].getBytes(UTF_8));
+                require(1);
+                buffer.put(types[i]);
+            }
+            this.rowCountPosition = channel.position()+buffer.position();
+            require(8);
+            buffer.putLong(0);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    void putNull() throws IOException {
+        require(1);
+        buffer.put(TYPE_NULL);
+    }
+
+    void putLong(byte type,long value) throws IOException {
+        require(9);
+        buffer.put(type);
+        switch (type){
+            case TYPE_BYTE:
+            case TYPE_BOOLEAN:
+                buffer.put((byte) value);
+                break;
+            case TYPE_SHORT:
+                buffer.putShort((short) value);
+                break;
+            case TYPE_CHAR:
+                buffer.putChar((char) value);
+                break;
+            case TYPE_INT:
+                buffer.putInt((int) value);
+                break;
+            default:
+                buffer.putLong(value);
+                break;
+        }
+    }
+
+    void putDouble(byte type,double value) throws IOException {
+        require(9);
+        buffer.put(type);
+        if (type == TYPE_FLOAT){
+            buffer.putFloat((float) value);
+        } else {
+            buffer.putDouble(value);
+        }
+    }
+
+    void putString(String value) throws IOException {
+        require(1);
+        buffer.put(TYPE_STRING);
+        putBytes(value.getBytes(UTF_8));
+    }
+
+    void putBlob(byte[] value) throws IOException {
+        require(1);
+        buffer.put(TYPE_BLOB);
+        putBytes(value);
+    }
+
+    void endRow(){
+        rowCount++;
+    }
+
+    long getRowCount() {
+        return rowCount;
+    }
+
+    //写完所有行后回填行数并落盘，没有调用finish的文件不是完整的快照
+    void finish() throws IOException {
+        flushBuffer();
+        ByteBuffer rowCountBuffer = ByteBuffer.allocate(8);
+        rowCountBuffer.putLong(rowCount).flip();
+        while (rowCountBuffer.hasRemaining()){
+            channel.write(rowCountBuffer,rowCountPosition+rowCountBuffer.position());
+        }
+        channel.force(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        randomAccessFile.close();
+    }
+
+    //超过缓冲区大小的值直接写入channel
+    private void putBytes(byte[] bytes) throws IOException {
+        require(4);
+        buffer.putInt(bytes.length);
+        if (bytes.length > buffer.capacity()){
+            flushBuffer();
+            ByteBuffer wrap = ByteBuffer.wrap(bytes);
+            while (wrap.hasRemaining()){
+                channel.write(wrap);
+            }
+        } else {
+            require(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private void require(int length) throws IOException {
+        if (buffer.remaining() < length){
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.xq.litemapping;
+
+import java.util.List;
+import java.util.Map;
+
+//表的基本读写操作，LiteMapping是基于Sqlite的默认实现，MemoryStorageEngine把数据保存在内存中
+public interface StorageEngine {
+
+    //返回新行的rowid，失败(如主键或唯一索引冲突)时返回-1
+    long insert(Map<String,?> columns);
+
+    boolean insertById(Object id,Map<String,?> columns);
+
+    boolean update(Object id,Map<String,?> columns);
+
+    boolean delete(Object id);
+
+    boolean contain(Object id);
+
+    //不存在时返回null
+    Map<String,?> queryById(Object id);
+
+    <T> List<T> queryId(QueryArgument queryArgument);
+
+    List<Map<String,?>> query(QueryArgument queryArgument);
+
+    long count(QueryArgument queryArgument);
+
+    void clear();
+
+}
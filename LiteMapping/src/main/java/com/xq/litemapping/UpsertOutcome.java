@@ -0,0 +1,13 @@
+package com.xq.litemapping;
+
+public final class UpsertOutcome {
+
+    public static final int FAILED = -1;
+    public static final int IGNORED = 0;
+    public static final int INSERTED = 1;
+    public static final int UPDATED = 2;
+
+    private UpsertOutcome() {
+    }
+
+}
@@ -0,0 +1,192 @@
+package com.xq.litemapping;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//后台线程按批次把写操作合并到同一个事务中提交，队列满时put会阻塞调用方
+class WriteBehindQueue {
+
+    private final SQLiteOpenHelper helper;
+    private final BlockingQueue<PendingWrite<?>> queue;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final Runnable commitListener;
+
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private volatile boolean flushRequested;
+    private volatile boolean running = true;
+
+    private final Thread writerThread;
+
+    WriteBehindQueue(SQLiteOpenHelper helper, String name, int capacity, int batchSize, long flushIntervalMillis, Runnable commitListener) {
+        this.helper = helper;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.commitListener = commitListener;
+        this.writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        },"LiteMapping-WriteBehind-"+name);
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    <V> Future<V> submit(Callable<V> callable){
+        if (!running){
+            throw new IllegalStateException("write-behind queue has been shut down");
+        }
+        PendingWrite<V> pendingWrite = new PendingWrite<>(callable);
+        pendingCount.incrementAndGet();
+        try {
+            queue.put(pendingWrite);
+        } catch (InterruptedException e) {
+            pendingCount.decrementAndGet();
+            Thread.currentThread().interrupt();
+            pendingWrite.cancel(false);
+            return pendingWrite;
+        }
+        //与shutdown并发时后台线程可能已经退出，仍在队列中说明不会再被执行，取回后直接失败；已被取走的会随批次正常提交
+        if (!running && queue.remove(pendingWrite)){
+            pendingCount.decrementAndGet();
+            pendingWrite.fail(new IllegalStateException("write-behind queue has been shut down"));
+        }
+        return pendingWrite;
+    }
+
+    boolean hasPendingWrites(){
+        return pendingCount.get() > 0;
+    }
+
+    //阻塞直到调用前已入队的写操作全部提交
+    void flush(){
+        if (Thread.currentThread() == writerThread || !hasPendingWrites()){
+            return;
+        }
+        flushRequested = true;
+        Future<?> marker = submit(new Callable<Object>() {
+            @Override
+            public Object call() {
+                return null;
+            }
+        });
+        try {
+            marker.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    void shutdown(){
+        flush();
+        running = false;
+        writerThread.interrupt();
+    }
+
+    private void loop(){
+        List<PendingWrite<?>> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()){
+            try {
+                batch.add(queue.take());
+                long deadline = System.currentTimeMillis() + flushIntervalMillis;
+                while (batch.size() < batchSize && !flushRequested){
+                    queue.drainTo(batch,batchSize - batch.size());
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (batch.size() >= batchSize || remaining <= 0){
+                        break;
+                    }
+                    PendingWrite<?> pendingWrite = queue.poll(remaining,TimeUnit.MILLISECONDS);
+                    if (pendingWrite == null){
+                        break;
+                    }
+                    batch.add(pendingWrite);
+                }
+                flushRequested = false;
+            } catch (InterruptedException e) {
+                if (batch.isEmpty()){
+                    continue;
+                }
+            }
+            commit(batch);
+            pendingCount.addAndGet(-batch.size());
+            batch.clear();
+        }
+    }
+
+    private void commit(List<PendingWrite<?>> batch){
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (PendingWrite<?> pendingWrite : batch){
+                    pendingWrite.execute();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                commitListener.run();
+            }
+        } catch (RuntimeException e) {
+            for (PendingWrite<?> pendingWrite : batch){
+                pendingWrite.fail(e);
+            }
+            return;
+        }
+        //事务提交之后才通知调用方，保证future返回时数据已落盘
+        for (PendingWrite<?> pendingWrite : batch){
+            pendingWrite.complete();
+        }
+    }
+
+    private static class PendingWrite<V> extends FutureTask<V> {
+
+        private final Callable<V> callable;
+        private V result;
+        private Throwable error;
+
+        private PendingWrite(Callable<V> callable) {
+            super(callable);
+            this.callable = callable;
+        }
+
+        private void execute(){
+            if (isCancelled()){
+                return;
+            }
+            try {
+                result = callable.call();
+            } catch (Throwable t) {
+                error = t;
+            }
+        }
+
+        private void complete(){
+            if (error != null){
+                setException(error);
+            } else {
+                set(result);
+            }
+        }
+
+        private void fail(Throwable t){
+            setException(t);
+        }
+
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.xq.litemapping;
+
+import android.util.Pair;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+//过期但还没有被后台清理的行，写入时的表现与不存在的行一致
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class CacheExpiryTest {
+
+    private static final long CLEANUP_INTERVAL = 60*60*1000;
+    private static int databaseCount;
+
+    private LiteMapping liteMapping;
+
+    //行1与行2已过期，之后切换为较长的过期时间，行3与之后写入的行不会在测试期间过期
+    @Before
+    public void setUp() throws InterruptedException {
+        Map<String,Class<?>> otherKeyMap = new LinkedHashMap<>();
+        otherKeyMap.put("name",String.class);
+        liteMapping = new LiteMapping(RuntimeEnvironment.getApplication(),LiteMapping.SqliteHelperPool.getDefault(),"expiry_"+(databaseCount++)+"/item",false,new Pair<String,Class<?>>("id",Long.class),otherKeyMap,new ArrayList<Index>());
+        liteMapping.setCachePolicy(new CachePolicy().setTimeToLive(20).setCleanupInterval(CLEANUP_INTERVAL));
+        assertTrue(liteMapping.insertById(1L,name("A")));
+        assertTrue(liteMapping.insertById(2L,name("A")));
+        Thread.sleep(50);
+        liteMapping.setCachePolicy(new CachePolicy().setTimeToLive(CLEANUP_INTERVAL).setCleanupInterval(CLEANUP_INTERVAL));
+        assertTrue(liteMapping.insertById(3L,name("C")));
+        assertFalse(liteMapping.contain(1L));
+        assertFalse(liteMapping.contain(2L));
+    }
+
+    private static Map<String,Object> name(String name){
+        Map<String,Object> columns = new LinkedHashMap<>();
+        columns.put("name",name);
+        return columns;
+    }
+
+    @Test
+    public void insertReplacesExpiredRow() {
+        assertTrue(liteMapping.insertById(1L,name("B")));
+        assertEquals("B",liteMapping.queryById(1L).get("name"));
+        Map<String,Object> columns = name("B");
+        columns.put("id",2L);
+        assertEquals(2L,liteMapping.insert(columns));
+        assertTrue(liteMapping.contain(2L));
+    }
+
+    @Test
+    public void upsertInsertsOverExpiredRow() {
+        Map<String,Object> columns = name("B");
+        columns.put("id",1L);
+        assertEquals(UpsertOutcome.INSERTED,liteMapping.upsert(columns,ConflictStrategy.Ignore));
+        assertEquals("B",liteMapping.queryById(1L).get("name"));
+    }
+
+    //更新命中过期的行时触发器会重新设置过期时间
+    @Test
+    public void updateDoesNotResurrectExpiredRow() {
+        assertFalse(liteMapping.update(1L,name("B")));
+        assertFalse(liteMapping.contain(1L));
+        assertEquals(Arrays.asList(false,true),liteMapping.updateAll(Arrays.asList(2L,3L),name("D")));
+        assertNull(liteMapping.queryById(2L));
+        assertEquals("D",liteMapping.queryById(3L).get("name"));
+    }
+
+    @Test
+    public void deleteReportsOnlyVisibleRows() {
+        assertFalse(liteMapping.delete(1L));
+        assertEquals(Arrays.asList(false,true),liteMapping.deleteAll(Arrays.asList(2L,3L)));
+        assertEquals(0,liteMapping.count(new QueryArgument()));
+    }
+
+}
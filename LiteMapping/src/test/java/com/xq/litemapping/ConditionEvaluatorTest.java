@@ -0,0 +1,179 @@
+package com.xq.litemapping;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+//期望值与Sqlite对同样条件的求值结果一致
+public class ConditionEvaluatorTest {
+
+    private static final String[] COLUMNS = {"id","name","score","ratio","data"};
+    private static final MimeType[] MIME_TYPES = {MimeType.Long,MimeType.String,MimeType.Int,MimeType.Double,MimeType.Blob};
+
+    private final ConditionEvaluator conditionEvaluator;
+
+    public ConditionEvaluatorTest() {
+        Map<String,Integer> columnIndexMap = new HashMap<>();
+        for (int i=0;i<COLUMNS.length;i++){
+            columnIndexMap.put(COLUMNS[i],i);
+        }
+        conditionEvaluator = new ConditionEvaluator(columnIndexMap,MIME_TYPES);
+    }
+
+    private boolean test(ConditionNode conditionNode,Object... values){
+        return conditionEvaluator.compile(conditionNode).test(values);
+    }
+
+    private static Object[] row(String name,Integer score,Double ratio,byte[] data){
+        return new Object[]{1L,name,score,ratio,data};
+    }
+
+    @Test
+    public void compare_ordersNullNumberTextBlob() {
+        Object[] ordered = {null,-1L,0.5,2,"","10","a",new byte[0],new byte[]{1}};
+        for (int i=0;i<ordered.length;i++){
+            for (int j=0;j<ordered.length;j++){
+                int expected = i < j? -1 : (i == j? 0 : 1);
+                assertEquals(String.format("%s vs %s",Arrays.deepToString(new Object[]{ordered[i]}),Arrays.deepToString(new Object[]{ordered[j]})),expected,Integer.signum(ConditionEvaluator.compare(ordered[i],ordered[j])));
+            }
+        }
+    }
+
+    @Test
+    public void compare_numbersAcrossTypes() {
+        assertEquals(0,ConditionEvaluator.compare(1,1.0));
+        assertEquals(0,ConditionEvaluator.compare((short) 3,3L));
+        assertTrue(ConditionEvaluator.compare(2,2.5) < 0);
+        //两个整数按long比较，不会因为转换为double丢失精度
+        assertTrue(ConditionEvaluator.compare(Long.MAX_VALUE-1,Long.MAX_VALUE) < 0);
+    }
+
+    @Test
+    public void compare_blobsAsUnsignedBytes() {
+        assertTrue(ConditionEvaluator.compare(new byte[]{1},new byte[]{(byte) 0xff}) < 0);
+        assertTrue(ConditionEvaluator.compare(new byte[]{1},new byte[]{1,0}) < 0);
+        assertEquals(0,ConditionEvaluator.compare(new byte[]{1,2},new byte[]{1,2}));
+    }
+
+    @Test
+    public void nullComparisons() {
+        Object[] nullScore = row("a",null,null,null);
+        assertFalse(test(new Condition("score",Condition.CompareType.GreaterThan,0),nullScore));
+        assertFalse(test(new Condition("score",Condition.CompareType.NotEqualTo,0),nullScore));
+        assertFalse(test(new Condition("score",Condition.CompareType.LessThan,null),row("a",1,null,null)));
+        //=与!=的参数为null时按is null/is not null处理
+        assertTrue(test(new Condition("score",Condition.CompareType.EqualTo,null),nullScore));
+        assertTrue(test(new Condition("score",Condition.CompareType.NotEqualTo,null),row("a",1,null,null)));
+        assertTrue(test(new Condition("score",Condition.CompareType.IsNull),nullScore));
+        assertFalse(test(new Condition("score",Condition.CompareType.IsNotNull),nullScore));
+    }
+
+    @Test
+    public void affinity_numericColumnWithTextArgument() {
+        Object[] values = row("a",5,0.5,null);
+        assertTrue(test(new Condition("score",Condition.CompareType.EqualTo,"5"),values));
+        assertTrue(test(new Condition("score",Condition.CompareType.EqualTo," 5 "),values));
+        assertTrue(test(new Condition("ratio",Condition.CompareType.EqualTo,"0.5"),values));
+        assertTrue(test(new Condition("score",Condition.CompareType.LessThan,"10"),values));
+        //无法转换为数字的文本大于任何数字
+        assertTrue(test(new Condition("score",Condition.CompareType.LessThan,"abc"),values));
+        assertFalse(test(new Condition("score",Condition.CompareType.EqualTo,"abc"),values));
+    }
+
+    @Test
+    public void affinity_textColumnWithNumberArgument() {
+        Object[] values = row("10",null,null,null);
+        assertTrue(test(new Condition("name",Condition.CompareType.EqualTo,10),values));
+        //按文本比较，"10"小于"9"
+        assertTrue(test(new Condition("name",Condition.CompareType.LessThan,9),values));
+    }
+
+    @Test
+    public void like_isAsciiCaseInsensitive() {
+        Object[] values = row("Hello.World",null,null,null);
+        assertTrue(test(new Condition("name",Condition.CompareType.Like,"hello%"),values));
+        assertTrue(test(new Condition("name",Condition.CompareType.Like,"%O.W%"),values));
+        assertTrue(test(new Condition("name",Condition.CompareType.Like,"Hello_World"),values));
+        //.不是通配符
+        assertFalse(test(new Condition("name",Condition.CompareType.Like,"Hello.Worl"),values));
+        assertFalse(test(new Condition("name",Condition.CompareType.Like,"Hello.World_"),values));
+        assertFalse(test(new Condition("name",Condition.CompareType.Like,null),values));
+        assertFalse(test(new Condition("name",Condition.CompareType.Like,"%"),row(null,null,null,null)));
+    }
+
+    @Test
+    public void like_matchesNumbersAsText() {
+        assertTrue(test(new Condition("score",Condition.CompareType.Like,"1%"),row(null,123,null,null)));
+        assertFalse(test(new Condition("score",Condition.CompareType.Like,"2%"),row(null,123,null,null)));
+    }
+
+    @Test
+    public void glob_isCaseSensitiveWithCharacterSets() {
+        Object[] values = row("Hello",null,null,null);
+        assertTrue(test(new Condition("name",Condition.CompareType.Glob,"H*"),values));
+        assertFalse(test(new Condition("name",Condition.CompareType.Glob,"h*"),values));
+        assertTrue(test(new Condition("name",Condition.CompareType.Glob,"H?llo"),values));
+        assertTrue(test(new Condition("name",Condition.CompareType.Glob,"[A-Z]ello"),values));
+        assertFalse(test(new Condition("name",Condition.CompareType.Glob,"[^A-Z]ello"),values));
+        assertTrue(test(new Condition("name",Condition.CompareType.Glob,"[^a-z]ello"),values));
+        //]紧跟在[之后时作为普通字符
+        assertTrue(test(new Condition("name",Condition.CompareType.Glob,"[]]*"),row("]x",null,null,null)));
+        //正则中的特殊字符按字面匹配
+        assertTrue(test(new Condition("name",Condition.CompareType.Glob,"a+b(*"),row("a+b(c",null,null,null)));
+        assertFalse(test(new Condition("name",Condition.CompareType.Glob,"a+b"),row("aab",null,null,null)));
+    }
+
+    @Test
+    public void in_andNotInWithNull() {
+        Object[] values = row("a",2,null,null);
+        assertTrue(test(new Condition("score",Condition.CompareType.In,Arrays.asList(1,2,null)),values));
+        assertTrue(test(new Condition("score",Condition.CompareType.In,new int[]{2,3}),values));
+        assertTrue(test(new Condition("score",Condition.CompareType.In,new String[]{"2"}),values));
+        assertFalse(test(new Condition("score",Condition.CompareType.In,Arrays.asList(1,3)),values));
+        assertTrue(test(new Condition("score",Condition.CompareType.NotIn,Arrays.asList(1,3)),values));
+        //not in的列表包含null时对任何行都不成立
+        assertFalse(test(new Condition("score",Condition.CompareType.NotIn,Arrays.asList(1,null)),values));
+        assertFalse(test(new Condition("score",Condition.CompareType.In,Arrays.asList(1,null)),row("a",null,null,null)));
+        assertFalse(test(new Condition("score",Condition.CompareType.NotIn,Arrays.asList(1)),row("a",null,null,null)));
+    }
+
+    @Test
+    public void in_matchesBlobsByContent() {
+        Object[] values = row("a",null,null,new byte[]{1,2});
+        assertTrue(test(new Condition("data",Condition.CompareType.In,Arrays.asList(new byte[]{1,2})),values));
+        assertTrue(test(new Condition("data",Condition.CompareType.EqualTo,new byte[]{1,2}),values));
+        assertFalse(test(new Condition("data",Condition.CompareType.EqualTo,new byte[]{1}),values));
+    }
+
+    @Test
+    public void between_isInclusive() {
+        assertTrue(test(new Condition("score",Condition.CompareType.Between,Arrays.asList(1,2)),row("a",2,null,null)));
+        assertTrue(test(new Condition("score",Condition.CompareType.Between,new String[]{"1","2"}),row("a",1,null,null)));
+        assertFalse(test(new Condition("score",Condition.CompareType.Between,Arrays.asList(1,null)),row("a",1,null,null)));
+        assertFalse(test(new Condition("score",Condition.CompareType.Between,Arrays.asList(3,1)),row("a",2,null,null)));
+    }
+
+    @Test
+    public void groups() {
+        Object[] values = row("a",2,null,null);
+        ConditionNode scoreIsTwo = new Condition("score",Condition.CompareType.EqualTo,2);
+        ConditionNode nameIsB = new Condition("name",Condition.CompareType.EqualTo,"b");
+        assertFalse(test(ConditionGroup.and(scoreIsTwo,nameIsB),values));
+        assertTrue(test(ConditionGroup.or(scoreIsTwo,nameIsB),values));
+        assertTrue(test(ConditionGroup.and(ConditionGroup.or(nameIsB,scoreIsTwo),new Condition("name",Condition.CompareType.Like,"A")),values));
+        assertNull(conditionEvaluator.compile(ConditionGroup.and()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownColumn() {
+        conditionEvaluator.compile(new Condition("missing",Condition.CompareType.EqualTo,1));
+    }
+
+}
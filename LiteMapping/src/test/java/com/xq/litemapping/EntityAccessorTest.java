@@ -0,0 +1,42 @@
+package com.xq.litemapping;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class EntityAccessorTest {
+
+    static class BaseEntity {
+        @PrimaryKey
+        Long id;
+        String name;
+    }
+
+    static class ChildEntity extends BaseEntity {
+        int score;
+    }
+
+    static class TwoKeyEntity extends BaseEntity {
+        @PrimaryKey
+        Long otherId;
+    }
+
+    //父类中的字段同样映射为列
+    @Test
+    public void inheritedFields() {
+        EntityAccessor<ChildEntity> accessor = EntityAccessor.of(ChildEntity.class);
+        assertEquals("id",accessor.getPrimaryKeyName());
+        assertFalse(accessor.isAutoincrement());
+        assertEquals(new HashSet<>(Arrays.asList("name","score")),accessor.getOtherKeyMap().keySet());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void moreThanOnePrimaryKey() {
+        EntityAccessor.of(TwoKeyEntity.class);
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.xq.litemapping;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LongHashMapTest {
+
+    @Test
+    public void putGetReplace() {
+        LongHashMap<String> map = new LongHashMap<>();
+        assertTrue(map.isEmpty());
+        assertNull(map.put(0,"zero"));
+        assertNull(map.put(-1,"minus"));
+        assertNull(map.put(Long.MIN_VALUE,"min"));
+        assertNull(map.put(Long.MAX_VALUE,"max"));
+        assertEquals("zero",map.put(0,"0"));
+        assertEquals(4,map.size());
+        assertEquals("0",map.get(0));
+        assertEquals("minus",map.get(-1));
+        assertEquals("min",map.get(Long.MIN_VALUE));
+        assertEquals("max",map.get(Long.MAX_VALUE));
+        assertNull(map.get(1));
+        assertFalse(map.containsKey(1));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void putNull() {
+        new LongHashMap<String>().put(1,null);
+    }
+
+    @Test
+    public void resizeKeepsAllEntries() {
+        LongHashMap<Long> map = new LongHashMap<>();
+        for (long i=0;i<10000;i++){
+            map.put(i*31,i);
+        }
+        assertEquals(10000,map.size());
+        for (long i=0;i<10000;i++){
+            assertEquals(Long.valueOf(i),map.get(i*31));
+        }
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertEquals(10000,keys.length);
+        assertEquals(0,keys[0]);
+        assertEquals(9999*31,keys[keys.length-1]);
+        assertEquals(10000,map.values().size());
+    }
+
+    @Test
+    public void expectedSizeDoesNotResize() {
+        LongHashMap<Long> map = new LongHashMap<>(1000);
+        for (long i=0;i<1000;i++){
+            map.put(i,i);
+        }
+        assertEquals(1000,map.size());
+        assertEquals(Long.valueOf(999),map.get(999));
+    }
+
+    //连续的key在线性探测中形成长链，删除链中间的元素后其余元素依然能找到
+    @Test
+    public void removeKeepsProbeChains() {
+        LongHashMap<Long> map = new LongHashMap<>();
+        for (long i=0;i<2000;i++){
+            map.put(i,i);
+        }
+        for (long i=0;i<2000;i+=3){
+            assertEquals(Long.valueOf(i),map.remove(i));
+        }
+        assertNull(map.remove(0));
+        for (long i=0;i<2000;i++){
+            if (i%3 == 0){
+                assertNull(map.get(i));
+            } else {
+                assertEquals(Long.valueOf(i),map.get(i));
+            }
+        }
+        assertEquals(2000-667,map.size());
+    }
+
+    @Test
+    public void randomOperationsMatchHashMap() {
+        Random random = new Random(42);
+        LongHashMap<Long> map = new LongHashMap<>();
+        Map<Long,Long> expected = new HashMap<>();
+        for (int i=0;i<200000;i++){
+            //key范围较小，保证put与remove经常命中已有的key
+            long key = random.nextInt(5000)-2500;
+            long value = random.nextLong();
+            if (random.nextInt(3) == 0){
+                assertEquals(expected.remove(key),map.remove(key));
+            } else {
+                assertEquals(expected.put(key,value),map.put(key,value));
+            }
+        }
+        assertEquals(expected.size(),map.size());
+        for (Map.Entry<Long,Long> entry : expected.entrySet()){
+            assertEquals(entry.getValue(),map.get(entry.getKey()));
+        }
+        long[] keys = map.keys();
+        long[] expectedKeys = new long[expected.size()];
+        int index = 0;
+        for (Long key : expected.keySet()){
+            expectedKeys[index++] = key;
+        }
+        Arrays.sort(keys);
+        Arrays.sort(expectedKeys);
+        assertArrayEquals(expectedKeys,keys);
+    }
+
+    @Test
+    public void clear() {
+        LongHashMap<Long> map = new LongHashMap<>();
+        for (long i=0;i<100;i++){
+            map.put(i,i);
+        }
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(5));
+        assertEquals(0,map.keys().length);
+        map.put(5,5L);
+        assertEquals(Long.valueOf(5),map.get(5));
+        List<Long> values = new ArrayList<>(map.values());
+        assertEquals(Arrays.asList(5L),values);
+    }
+
+}
@@ -0,0 +1,218 @@
+package com.xq.litemapping;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+//带索引的表与没有索引的表写入相同的数据，索引只能缩小候选行，结果必须与全表扫描一致
+public class MemoryStorageEngineTest {
+
+    private static final int ROW_COUNT = 500;
+
+    private MemoryStorageEngine indexedEngine;
+    private MemoryStorageEngine scanEngine;
+
+    @Before
+    public void setUp() {
+        indexedEngine = new MemoryStorageEngine(true,"id",Long.class,createOtherKeyMap(),Arrays.asList(new Index("score"),new Index("category","score"),new Index("name")));
+        scanEngine = new MemoryStorageEngine(true,"id",Long.class,createOtherKeyMap(),new ArrayList<Index>());
+        Random random = new Random(7);
+        for (int i=0;i<ROW_COUNT;i++){
+            Map<String,Object> row = new LinkedHashMap<>();
+            //score中有重复值与null，用于检查哨兵与相等key的边界
+            row.put("score",random.nextInt(10) == 0? null : random.nextInt(50)-10);
+            row.put("category",random.nextInt(5));
+            row.put("name",random.nextInt(4) == 0? null : "name"+random.nextInt(100));
+            assertEquals(indexedEngine.insert(row),scanEngine.insert(row));
+        }
+    }
+
+    private static Map<String,Class<?>> createOtherKeyMap(){
+        Map<String,Class<?>> otherKeyMap = new LinkedHashMap<>();
+        otherKeyMap.put("score",Integer.class);
+        otherKeyMap.put("category",Integer.class);
+        otherKeyMap.put("name",String.class);
+        return otherKeyMap;
+    }
+
+    private void assertSameResult(ConditionNode conditionNode){
+        QueryArgument queryArgument = new QueryArgument().setCondition(conditionNode);
+        List<Map<String,?>> expected = scanEngine.query(queryArgument);
+        assertEquals(expected,indexedEngine.query(queryArgument));
+        assertEquals(expected.size(),indexedEngine.count(queryArgument));
+    }
+
+    @Test
+    public void rangeConditionsMatchFullScan() {
+        Object[] arguments = {-11,-10,0,5,39,40,"5","abc"};
+        for (Object argument : arguments){
+            for (Condition.CompareType compareType : new Condition.CompareType[]{Condition.CompareType.LessThan,Condition.CompareType.LessThanOrEqualTo,Condition.CompareType.EqualTo,Condition.CompareType.GreaterThanOrEqualTo,Condition.CompareType.GreaterThan,Condition.CompareType.NotEqualTo}){
+                assertSameResult(new Condition("score",compareType,argument));
+                //复合索引只按第一列查找
+                assertSameResult(new Condition("category",compareType,argument));
+            }
+        }
+    }
+
+    //小于条件从LOWEST开始，null在索引中排在最前面，不能出现在结果中
+    @Test
+    public void lessThanExcludesNull() {
+        List<Map<String,?>> rows = indexedEngine.query(new QueryArgument().setCondition(new Condition("score",Condition.CompareType.LessThan,100)));
+        assertFalse(rows.isEmpty());
+        for (Map<String,?> row : rows){
+            assertTrue(row.get("score") != null);
+        }
+        assertSameResult(new Condition("score",Condition.CompareType.LessThan,100));
+        assertSameResult(new Condition("score",Condition.CompareType.IsNull));
+        assertSameResult(new Condition("score",Condition.CompareType.EqualTo,null));
+        assertSameResult(new Condition("score",Condition.CompareType.GreaterThan,null));
+    }
+
+    @Test
+    public void inAndBetweenMatchFullScan() {
+        assertSameResult(new Condition("score",Condition.CompareType.In,Arrays.asList(1,2,2,null,100)));
+        assertSameResult(new Condition("score",Condition.CompareType.In,Collections.emptyList()));
+        assertSameResult(new Condition("score",Condition.CompareType.NotIn,Arrays.asList(1,2)));
+        assertSameResult(new Condition("score",Condition.CompareType.Between,Arrays.asList(0,10)));
+        assertSameResult(new Condition("score",Condition.CompareType.Between,Arrays.asList(10,0)));
+        assertSameResult(new Condition("score",Condition.CompareType.Between,Arrays.asList(null,10)));
+        assertSameResult(new Condition("name",Condition.CompareType.In,Arrays.asList("name1","name2")));
+        assertSameResult(new Condition("id",Condition.CompareType.In,Arrays.asList(1,3,"5",ROW_COUNT+1)));
+        assertSameResult(new Condition("id",Condition.CompareType.EqualTo,1.5));
+    }
+
+    @Test
+    public void groupsMatchFullScan() {
+        Condition score = new Condition("score",Condition.CompareType.GreaterThan,20);
+        Condition category = new Condition("category",Condition.CompareType.EqualTo,2);
+        Condition name = new Condition("name",Condition.CompareType.Like,"name1%");
+        //and选择候选行最少的索引，or只有在每个分支都能使用索引时才合并
+        assertSameResult(ConditionGroup.and(score,category));
+        assertSameResult(ConditionGroup.and(score,name));
+        assertSameResult(ConditionGroup.or(score,category));
+        assertSameResult(ConditionGroup.or(score,name));
+        assertSameResult(ConditionGroup.or(ConditionGroup.and(score,category),new Condition("id",Condition.CompareType.EqualTo,7)));
+    }
+
+    @Test
+    public void orderByIndexWithPaging() {
+        for (boolean reverse : new boolean[]{false,true}){
+            for (int page=0;page<6;page++){
+                QueryArgument queryArgument = new QueryArgument().setOrderBy("score",reverse).setPageAndSize(page,97);
+                assertEquals(scanEngine.query(queryArgument),indexedEngine.query(queryArgument));
+                queryArgument.setCondition(new Condition("category",Condition.CompareType.NotEqualTo,1));
+                assertEquals(scanEngine.query(queryArgument),indexedEngine.query(queryArgument));
+            }
+        }
+    }
+
+    @Test
+    public void keysetPagingVisitsEveryRowOnce() {
+        for (final boolean reverse : new boolean[]{false,true}){
+            List<Map<String,?>> expected = new ArrayList<>(scanEngine.query(new QueryArgument()));
+            Collections.sort(expected,new Comparator<Map<String,?>>() {
+                @Override
+                public int compare(Map<String,?> row1, Map<String,?> row2) {
+                    int result = ConditionEvaluator.compare(row1.get("score"),row2.get("score"));
+                    if (result == 0){
+                        result = ConditionEvaluator.compare(row1.get("id"),row2.get("id"));
+                    }
+                    return reverse? -result : result;
+                }
+            });
+            for (MemoryStorageEngine engine : new MemoryStorageEngine[]{indexedEngine,scanEngine}){
+                List<Map<String,?>> actual = new ArrayList<>();
+                PageToken pageToken = null;
+                while (true){
+                    QueryArgument queryArgument = new QueryArgument().setOrderBy("score",reverse).setPageSize(33);
+                    //升序的第一页不带PageToken，按(score,rowid)排序与按(score,id)一致；降序时普通查询相同score按rowid升序，需要从最大的PageToken开始
+                    if (pageToken != null){
+                        queryArgument.setPageToken(pageToken);
+                    } else if (reverse){
+                        queryArgument.setPageToken(new PageToken(Integer.MAX_VALUE,Long.MAX_VALUE));
+                    }
+                    List<Map<String,?>> rows = engine.query(queryArgument);
+                    actual.addAll(rows);
+                    if (rows.size() < 33){
+                        break;
+                    }
+                    Map<String,?> lastRow = rows.get(rows.size()-1);
+                    pageToken = new PageToken(lastRow.get("score"),lastRow.get("id"));
+                }
+                assertEquals(expected,actual);
+            }
+        }
+    }
+
+    @Test
+    public void keysetPagingByPrimaryKey() {
+        List<Object> ids = new ArrayList<>();
+        PageToken pageToken = new PageToken(null,0);
+        while (true){
+            List<Map<String,?>> rows = indexedEngine.query(new QueryArgument().setPageSize(64).setPageToken(pageToken).setColumns("name"));
+            for (Map<String,?> row : rows){
+                ids.add(row.get("id"));
+            }
+            if (rows.size() < 64){
+                break;
+            }
+            pageToken = new PageToken(null,rows.get(rows.size()-1).get("id"));
+        }
+        assertEquals(ROW_COUNT,ids.size());
+        for (int i=0;i<ids.size();i++){
+            assertEquals((long) i+1,ids.get(i));
+        }
+    }
+
+    @Test
+    public void updateAndDeleteMaintainIndexes() {
+        Map<String,Object> columns = new LinkedHashMap<>();
+        columns.put("score",1000);
+        assertTrue(indexedEngine.update(1,columns));
+        assertTrue(scanEngine.update(1,columns));
+        assertTrue(indexedEngine.delete(2));
+        assertTrue(scanEngine.delete(2));
+        assertFalse(indexedEngine.delete(2));
+        List<Map<String,?>> rows = indexedEngine.query(new QueryArgument().setCondition(new Condition("score",Condition.CompareType.GreaterThanOrEqualTo,1000)));
+        assertEquals(1,rows.size());
+        assertEquals(1L,rows.get(0).get("id"));
+        assertSameResult(new Condition("score",Condition.CompareType.LessThan,1000));
+        assertNull(indexedEngine.queryById(2));
+    }
+
+    @Test
+    public void uniqueIndex() {
+        Map<String,Class<?>> otherKeyMap = new LinkedHashMap<>();
+        otherKeyMap.put("code",String.class);
+        MemoryStorageEngine engine = new MemoryStorageEngine(true,"id",Long.class,otherKeyMap,Collections.singletonList(new Index(true,"code")));
+        Map<String,Object> row = new LinkedHashMap<>();
+        row.put("code","a");
+        assertEquals(1,engine.insert(row));
+        assertEquals(-1,engine.insert(row));
+        row.put("code",null);
+        //包含null的组合不参与唯一约束
+        assertEquals(2,engine.insert(row));
+        assertEquals(3,engine.insert(row));
+        row.put("code","a");
+        try {
+            engine.update(2,row);
+            throw new AssertionError("expected unique constraint failure");
+        } catch (IllegalStateException expected){
+        }
+        assertTrue(engine.update(1,row));
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.xq.litemapping;
+
+import android.util.Pair;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+//同一张表的两个LiteMapping共用连接池中的helper，其中一个写入后另一个不能读到缓存中的旧行
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class RowCacheTest {
+
+    private static int databaseCount;
+
+    private LiteMapping reader;
+    private LiteMapping writer;
+
+    @Before
+    public void setUp() {
+        String path = "row_cache_"+(databaseCount++)+"/item";
+        reader = newLiteMapping(path);
+        writer = newLiteMapping(path);
+        reader.enableRowCache(100);
+    }
+
+    private static LiteMapping newLiteMapping(String path){
+        Map<String,Class<?>> otherKeyMap = new LinkedHashMap<>();
+        otherKeyMap.put("name",String.class);
+        return new LiteMapping(RuntimeEnvironment.getApplication(),LiteMapping.SqliteHelperPool.getDefault(),path,true,new Pair<String,Class<?>>("id",Long.class),otherKeyMap,new ArrayList<Index>());
+    }
+
+    private static Map<String,Object> name(String name){
+        Map<String,Object> columns = new LinkedHashMap<>();
+        columns.put("name",name);
+        return columns;
+    }
+
+    @Test
+    public void writesThroughAnotherInstanceInvalidate() {
+        long id = writer.insert(name("A"));
+        assertEquals("A",reader.queryById(id).get("name"));
+        assertTrue(writer.update(id,name("B")));
+        assertEquals("B",reader.queryById(id).get("name"));
+        assertTrue(writer.delete(id));
+        assertNull(reader.queryById(id));
+        assertFalse(reader.contain(id));
+    }
+
+    //缺失的行同样会被缓存
+    @Test
+    public void insertThroughAnotherInstanceInvalidatesMissingRow() {
+        assertFalse(reader.contain(1L));
+        assertTrue(writer.insertById(1L,name("A")));
+        assertTrue(reader.contain(1L));
+        assertEquals(writer.getRowCacheStats().getHitCount(),reader.getRowCacheStats().getHitCount());
+    }
+
+}
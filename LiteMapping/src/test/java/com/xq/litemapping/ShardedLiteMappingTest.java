@@ -0,0 +1,134 @@
+package com.xq.litemapping;
+
+import android.util.Pair;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+//各分片分别排序分页后归并，结果应与把全部行放在一起排序后分页一致
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class ShardedLiteMappingTest {
+
+    private static final int ROW_COUNT = 200;
+    private static int databaseCount;
+
+    private ShardedLiteMapping shardedLiteMapping;
+    private final List<Map<String,?>> rows = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        Map<String,Class<?>> otherKeyMap = new LinkedHashMap<>();
+        otherKeyMap.put("score",Integer.class);
+        shardedLiteMapping = new ShardedLiteMapping(RuntimeEnvironment.getApplication(),"sharded_"+(databaseCount++)+"/item",3,ShardStrategy.byPrimaryKeyHash(),new Pair<String,Class<?>>("id",Long.class),otherKeyMap);
+        Random random = new Random(5);
+        for (long id=1;id<=ROW_COUNT;id++){
+            Map<String,Object> row = new LinkedHashMap<>();
+            row.put("score",random.nextInt(20));
+            assertTrue(shardedLiteMapping.insertById(id,row));
+            row.put("id",id);
+            rows.add(row);
+        }
+    }
+
+    //按(score,id)全序排列
+    private List<Map<String,?>> sortedRows(final boolean reverse){
+        List<Map<String,?>> list = new ArrayList<>(rows);
+        Collections.sort(list,new Comparator<Map<String,?>>() {
+            @Override
+            public int compare(Map<String,?> row1, Map<String,?> row2) {
+                int result = ConditionEvaluator.compare(row1.get("score"),row2.get("score"));
+                if (result == 0){
+                    result = ConditionEvaluator.compare(row1.get("id"),row2.get("id"));
+                }
+                return reverse? -result : result;
+            }
+        });
+        return list;
+    }
+
+    private static List<Object> getColumn(List<Map<String,?>> rows,String column){
+        List<Object> list = new ArrayList<>(rows.size());
+        for (Map<String,?> row : rows){
+            list.add(row.get(column));
+        }
+        return list;
+    }
+
+    //分片内相同score的行先后不确定，只比较score的序列
+    @Test
+    public void offsetPaging() {
+        for (boolean reverse : new boolean[]{false,true}){
+            List<Map<String,?>> expected = sortedRows(reverse);
+            for (int page=0;page*37<ROW_COUNT+37;page++){
+                List<Map<String,?>> actual = shardedLiteMapping.query(new QueryArgument().setOrderBy("score",reverse).setPageAndSize(page,37));
+                List<Map<String,?>> expectedPage = expected.subList(Math.min(page*37,ROW_COUNT),Math.min(page*37+37,ROW_COUNT));
+                assertEquals(getColumn(expectedPage,"score"),getColumn(actual,"score"));
+            }
+        }
+    }
+
+    @Test
+    public void offsetPagingByPrimaryKey() {
+        List<Map<String,?>> actual = shardedLiteMapping.query(new QueryArgument().setPageAndSize(2,30));
+        assertEquals(getColumn(sortedById().subList(60,90),"id"),getColumn(actual,"id"));
+    }
+
+    private List<Map<String,?>> sortedById(){
+        List<Map<String,?>> list = new ArrayList<>(rows);
+        Collections.sort(list,new Comparator<Map<String,?>>() {
+            @Override
+            public int compare(Map<String,?> row1, Map<String,?> row2) {
+                return ConditionEvaluator.compare(row1.get("id"),row2.get("id"));
+            }
+        });
+        return list;
+    }
+
+    //降序的第一页同样从最大的PageToken开始，保证每个分片按(score,id)排序
+    @Test
+    public void keysetPagingVisitsEveryRowOnce() {
+        for (boolean reverse : new boolean[]{false,true}){
+            List<Map<String,?>> actual = new ArrayList<>();
+            PageToken pageToken = reverse? new PageToken(Integer.MAX_VALUE,Long.MAX_VALUE) : new PageToken(-1,0L);
+            while (true){
+                QueryArgument queryArgument = new QueryArgument().setOrderBy("score",reverse).setPageSize(32).setPageToken(pageToken);
+                Page page = shardedLiteMapping.queryPage(queryArgument);
+                //query设置了PageToken时同样按游标翻页
+                assertEquals(page.getRows(),shardedLiteMapping.query(queryArgument));
+                actual.addAll(page.getRows());
+                if (!page.hasNextPage()){
+                    break;
+                }
+                pageToken = page.getNextPageToken();
+            }
+            assertEquals(sortedRows(reverse),actual);
+        }
+    }
+
+    @Test
+    public void keysetPagingByPrimaryKey() {
+        Page page = shardedLiteMapping.queryPage(new QueryArgument().setPageSize(60).setPageToken(new PageToken(null,150L)));
+        assertEquals(getColumn(sortedById().subList(150,ROW_COUNT),"id"),getColumn(page.getRows(),"id"));
+        assertFalse(page.hasNextPage());
+    }
+
+}
@@ -0,0 +1,216 @@
+package com.xq.litemapping;
+
+import android.content.Context;
+import android.util.Pair;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+//相同的数据与查询分别交给LiteMapping与MemoryStorageEngine，Robolectric的NATIVE模式使用真实的Sqlite作为基准
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class StorageEngineParityTest {
+
+    private static final int ROW_COUNT = 300;
+    private static int databaseCount;
+
+    private LiteMapping liteMapping;
+    private MemoryStorageEngine memoryStorageEngine;
+
+    @Before
+    public void setUp() {
+        List<Index> indexList = Arrays.asList(new Index("score"),new Index("name"));
+        liteMapping = newLiteMapping(createOtherKeyMap(),indexList);
+        memoryStorageEngine = new MemoryStorageEngine(true,"id",Long.class,createOtherKeyMap(),indexList);
+        Random random = new Random(11);
+        for (int i=0;i<ROW_COUNT;i++){
+            Map<String,Object> row = new LinkedHashMap<>();
+            row.put("name",random.nextInt(5) == 0? null : (random.nextBoolean()? "Name" : "name")+random.nextInt(30));
+            row.put("score",random.nextInt(8) == 0? null : random.nextInt(40)-10);
+            row.put("ratio",random.nextInt(8) == 0? null : random.nextInt(100)/8.0);
+            assertEquals(liteMapping.insert(row),memoryStorageEngine.insert(row));
+        }
+    }
+
+    //每个测试使用单独的数据库，避免连接池中的helper指向上一个测试的临时目录
+    private static LiteMapping newLiteMapping(Map<String,Class<?>> otherKeyMap,List<Index> indexList){
+        Context context = RuntimeEnvironment.getApplication();
+        return new LiteMapping(context,LiteMapping.SqliteHelperPool.getDefault(),"parity_"+(databaseCount++)+"/item",true,new Pair<String,Class<?>>("id",Long.class),otherKeyMap,indexList);
+    }
+
+    private static Map<String,Class<?>> createOtherKeyMap(){
+        Map<String,Class<?>> otherKeyMap = new LinkedHashMap<>();
+        otherKeyMap.put("name",String.class);
+        otherKeyMap.put("score",Integer.class);
+        otherKeyMap.put("ratio",Double.class);
+        return otherKeyMap;
+    }
+
+    //没有指定排序时两者的顺序不保证一致，按主键排序后比较
+    private static List<Map<String,?>> sortById(List<Map<String,?>> rows){
+        List<Map<String,?>> list = new ArrayList<>(rows);
+        Collections.sort(list,new Comparator<Map<String,?>>() {
+            @Override
+            public int compare(Map<String,?> row1, Map<String,?> row2) {
+                return ConditionEvaluator.compare(row1.get("id"),row2.get("id"));
+            }
+        });
+        return list;
+    }
+
+    private void assertSameResult(ConditionNode conditionNode){
+        QueryArgument queryArgument = new QueryArgument().setCondition(conditionNode);
+        List<Map<String,?>> expected = sortById(liteMapping.query(queryArgument));
+        assertEquals(expected,sortById(memoryStorageEngine.query(queryArgument)));
+        assertEquals(expected.size(),memoryStorageEngine.count(queryArgument));
+        assertEquals(new HashSet<Object>(liteMapping.queryId(queryArgument)),new HashSet<Object>(memoryStorageEngine.queryId(queryArgument)));
+    }
+
+    @Test
+    public void comparisons() {
+        Object[] arguments = {null,-11,0,5,29,"5","5.0"," 7 ","abc",2.5};
+        for (Object argument : arguments){
+            for (Condition.CompareType compareType : new Condition.CompareType[]{Condition.CompareType.LessThan,Condition.CompareType.LessThanOrEqualTo,Condition.CompareType.EqualTo,Condition.CompareType.GreaterThanOrEqualTo,Condition.CompareType.GreaterThan,Condition.CompareType.NotEqualTo}){
+                assertSameResult(new Condition("score",compareType,argument));
+                assertSameResult(new Condition("ratio",compareType,argument));
+                assertSameResult(new Condition("name",compareType,argument));
+            }
+        }
+        assertSameResult(new Condition("score",Condition.CompareType.IsNull));
+        assertSameResult(new Condition("name",Condition.CompareType.IsNotNull));
+    }
+
+    @Test
+    public void inNotInAndBetween() {
+        assertSameResult(new Condition("score",Condition.CompareType.In,Arrays.asList(1,"2",3.0,null)));
+        assertSameResult(new Condition("score",Condition.CompareType.NotIn,Arrays.asList(1,2)));
+        assertSameResult(new Condition("score",Condition.CompareType.NotIn,Arrays.asList(1,null)));
+        assertSameResult(new Condition("name",Condition.CompareType.In,new String[]{"name1","Name1"}));
+        assertSameResult(new Condition("id",Condition.CompareType.In,Arrays.asList(1,"2",3.0,3.5)));
+        assertSameResult(new Condition("score",Condition.CompareType.Between,Arrays.asList(0,"10")));
+        assertSameResult(new Condition("ratio",Condition.CompareType.Between,Arrays.asList(1.5,4)));
+        assertSameResult(new Condition("score",Condition.CompareType.Between,Arrays.asList(10,0)));
+    }
+
+    @Test
+    public void likeAndGlob() {
+        for (String pattern : new String[]{"name1%","NAME1_","%e2%","n_me%","%","1%"}){
+            assertSameResult(new Condition("name",Condition.CompareType.Like,pattern));
+            assertSameResult(new Condition("score",Condition.CompareType.Like,pattern));
+        }
+        for (String pattern : new String[]{"name1*","Name?","[Nn]ame2*","[^n]*","*[0-3]","1*"}){
+            assertSameResult(new Condition("name",Condition.CompareType.Glob,pattern));
+            assertSameResult(new Condition("score",Condition.CompareType.Glob,pattern));
+        }
+    }
+
+    @Test
+    public void groups() {
+        Condition score = new Condition("score",Condition.CompareType.GreaterThan,10);
+        Condition name = new Condition("name",Condition.CompareType.Like,"name%");
+        Condition ratio = new Condition("ratio",Condition.CompareType.LessThan,5);
+        assertSameResult(ConditionGroup.and(score,name));
+        assertSameResult(ConditionGroup.or(score,name));
+        assertSameResult(ConditionGroup.or(ConditionGroup.and(score,ratio),new Condition("id",Condition.CompareType.EqualTo,3)));
+    }
+
+    @Test
+    public void orderAndPaging() {
+        for (boolean reverse : new boolean[]{false,true}){
+            for (int page=0;page<5;page++){
+                QueryArgument queryArgument = new QueryArgument().setOrderBy("id",reverse).setPageAndSize(page,70).setColumns("name");
+                assertEquals(liteMapping.query(queryArgument),memoryStorageEngine.query(queryArgument));
+                //相同score的行先后不确定，只比较score的序列
+                queryArgument = new QueryArgument().setOrderBy("score",reverse).setPageAndSize(page,70);
+                assertEquals(getColumn(liteMapping.query(queryArgument),"score"),getColumn(memoryStorageEngine.query(queryArgument),"score"));
+            }
+        }
+    }
+
+    private static List<Object> getColumn(List<Map<String,?>> rows,String column){
+        List<Object> list = new ArrayList<>(rows.size());
+        for (Map<String,?> row : rows){
+            list.add(row.get(column));
+        }
+        return list;
+    }
+
+    //按(score,id)翻页是全序的，每一页都应完全相同
+    @Test
+    public void keysetPaging() {
+        for (boolean reverse : new boolean[]{false,true}){
+            PageToken pageToken = reverse? new PageToken(Integer.MAX_VALUE,Long.MAX_VALUE) : new PageToken(null,0L);
+            int total = 0;
+            while (true){
+                QueryArgument queryArgument = new QueryArgument().setOrderBy("score",reverse).setPageSize(32).setPageToken(pageToken).setColumns("ratio");
+                List<Map<String,?>> rows = liteMapping.query(queryArgument);
+                assertEquals(rows,memoryStorageEngine.query(queryArgument));
+                total += rows.size();
+                if (rows.size() < 32){
+                    break;
+                }
+                Map<String,?> lastRow = rows.get(rows.size()-1);
+                pageToken = new PageToken(lastRow.get("score"),lastRow.get("id"));
+            }
+            assertEquals(ROW_COUNT,total);
+        }
+    }
+
+    @Test
+    public void valueTypes() {
+        Map<String,Class<?>> otherKeyMap = new LinkedHashMap<>();
+        otherKeyMap.put("b",Byte.class);
+        otherKeyMap.put("s",Short.class);
+        otherKeyMap.put("i",Integer.class);
+        otherKeyMap.put("f",Float.class);
+        otherKeyMap.put("d",Double.class);
+        otherKeyMap.put("z",Boolean.class);
+        otherKeyMap.put("c",Character.class);
+        otherKeyMap.put("t",String.class);
+        otherKeyMap.put("data",byte[].class);
+        LiteMapping typedLiteMapping = newLiteMapping(otherKeyMap,new ArrayList<Index>());
+        MemoryStorageEngine typedMemoryStorageEngine = new MemoryStorageEngine(true,"id",Long.class,otherKeyMap,new ArrayList<Index>());
+        Map<String,Object> row = new LinkedHashMap<>();
+        row.put("b",(byte) 7);
+        row.put("s",(short) -3);
+        row.put("i",123456);
+        row.put("f",0.1f);
+        row.put("d",0.1);
+        row.put("z",true);
+        row.put("c",'x');
+        row.put("t","text");
+        row.put("data",new byte[]{1,2,(byte) 0xff});
+        long id = typedLiteMapping.insert(row);
+        assertEquals(id,typedMemoryStorageEngine.insert(row));
+        Map<String,?> expected = typedLiteMapping.queryById(id);
+        Map<String,?> actual = typedMemoryStorageEngine.queryById(id);
+        assertEquals(expected.keySet(),actual.keySet());
+        for (String key : expected.keySet()){
+            if (key.equals("data")){
+                assertArrayEquals((byte[]) expected.get(key),(byte[]) actual.get(key));
+            } else {
+                assertEquals(key,expected.get(key),actual.get(key));
+            }
+        }
+    }
+
+}
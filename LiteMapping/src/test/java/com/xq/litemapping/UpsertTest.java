@@ -0,0 +1,140 @@
+package com.xq.litemapping;
+
+import android.util.Pair;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class UpsertTest {
+
+    private static int databaseCount;
+
+    private LiteMapping liteMapping;
+    private final List<OperationEvent> operationEvents = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        Map<String,Class<?>> otherKeyMap = new LinkedHashMap<>();
+        otherKeyMap.put("email",String.class);
+        otherKeyMap.put("name",String.class);
+        liteMapping = new LiteMapping(RuntimeEnvironment.getApplication(),LiteMapping.SqliteHelperPool.getDefault(),"upsert_"+(databaseCount++)+"/user",false,new Pair<String,Class<?>>("id",Long.class),otherKeyMap,Collections.singletonList(new Index(true,"email")));
+        liteMapping.setOperationListener(new OperationListener() {
+            @Override
+            public void onOperation(OperationEvent operationEvent) {
+                operationEvents.add(operationEvent);
+            }
+        });
+        assertEquals(UpsertOutcome.INSERTED,liteMapping.upsert(row(1L,"a@x","A")));
+    }
+
+    private static Map<String,Object> row(Long id,String email,String name){
+        Map<String,Object> row = new LinkedHashMap<>();
+        row.put("id",id);
+        row.put("email",email);
+        row.put("name",name);
+        return row;
+    }
+
+    private OperationEvent lastEvent(){
+        return operationEvents.get(operationEvents.size()-1);
+    }
+
+    @Test
+    public void insertsNewRow() {
+        assertEquals(UpsertOutcome.INSERTED,liteMapping.upsert(row(2L,"b@x","B"),ConflictStrategy.Replace));
+        assertEquals("B",liteMapping.queryById(2L).get("name"));
+        assertEquals(1,lastEvent().getRowCount());
+    }
+
+    @Test
+    public void replaceOverwritesWholeRow() {
+        Map<String,Object> columns = new LinkedHashMap<>();
+        columns.put("id",1L);
+        columns.put("name","A2");
+        assertEquals(UpsertOutcome.UPDATED,liteMapping.upsert(columns,ConflictStrategy.Replace));
+        Map<String,?> row = liteMapping.queryById(1L);
+        assertEquals("A2",row.get("name"));
+        assertNull(row.get("email"));
+    }
+
+    @Test
+    public void mergeUpdatesOnlyMergeColumns() {
+        assertEquals(UpsertOutcome.UPDATED,liteMapping.upsert(row(1L,"new@x","A2"),ConflictStrategy.Merge,"name"));
+        Map<String,?> row = liteMapping.queryById(1L);
+        assertEquals("A2",row.get("name"));
+        assertEquals("a@x",row.get("email"));
+        assertEquals(UpsertOutcome.IGNORED,liteMapping.upsert(row(1L,"new@x","A3"),ConflictStrategy.Merge,"missing"));
+    }
+
+    @Test
+    public void ignoreKeepsExistingRow() {
+        assertEquals(UpsertOutcome.IGNORED,liteMapping.upsert(row(1L,"a@x","A2"),ConflictStrategy.Ignore));
+        assertEquals("A",liteMapping.queryById(1L).get("name"));
+    }
+
+    //unique索引冲突不是主键冲突，不能删除持有该值的行，也不能报告为UPDATED
+    @Test
+    public void uniqueIndexConflictFails() {
+        for (ConflictStrategy conflictStrategy : ConflictStrategy.values()){
+            assertEquals(UpsertOutcome.FAILED,liteMapping.upsert(row(2L,"a@x","B"),conflictStrategy));
+            assertNotNull(lastEvent().getError());
+            assertEquals(0,lastEvent().getRowCount());
+            assertEquals("A",liteMapping.queryById(1L).get("name"));
+            assertFalse(liteMapping.contain(2L));
+        }
+    }
+
+    @Test
+    public void mergeViolatingUniqueIndexFails() {
+        assertEquals(UpsertOutcome.INSERTED,liteMapping.upsert(row(2L,"b@x","B")));
+        assertEquals(UpsertOutcome.FAILED,liteMapping.upsert(row(2L,"a@x","B"),ConflictStrategy.Merge));
+        assertNotNull(lastEvent().getError());
+        assertEquals("b@x",liteMapping.queryById(2L).get("email"));
+    }
+
+    //单行失败不会中断批量写入，错误与成功的行数记录在事件中
+    @Test
+    public void insertAllReportsFailedRows() {
+        List<Long> ids = liteMapping.insertAll(Arrays.<Map<String,?>>asList(row(2L,"b@x","B"),row(3L,"a@x","C")));
+        assertEquals(Arrays.asList(2L,-1L),ids);
+        assertNotNull(lastEvent().getError());
+        assertEquals(1,lastEvent().getRowCount());
+        Map<String,Object> columns = new LinkedHashMap<>();
+        columns.put("email","c@x");
+        assertEquals(Arrays.asList(true,false),liteMapping.insertAllById(Arrays.asList(4L,1L),columns));
+        assertNotNull(lastEvent().getError());
+        assertEquals(1,lastEvent().getRowCount());
+    }
+
+    @Test
+    public void upsertAllReportsEachOutcome() {
+        int[] outcomes = liteMapping.upsertAll(Arrays.<Map<String,?>>asList(row(1L,"a@x","A2"),row(2L,"b@x","B"),row(3L,"b@x","C")),ConflictStrategy.Replace);
+        assertArrayEquals(new int[]{UpsertOutcome.UPDATED,UpsertOutcome.INSERTED,UpsertOutcome.FAILED},outcomes);
+        assertNotNull(lastEvent().getError());
+        assertEquals(2,lastEvent().getRowCount());
+        assertEquals("A2",liteMapping.queryById(1L).get("name"));
+        assertFalse(liteMapping.contain(3L));
+    }
+
+}
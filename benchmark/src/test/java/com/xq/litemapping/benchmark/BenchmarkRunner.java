@@ -0,0 +1,122 @@
+package com.xq.litemapping.benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+//JMH的fork进程无法运行在Robolectric的沙箱ClassLoader中，这里按JMH的方式做预热、多轮测量与防止死代码消除，
+//并通过ThreadMXBean统计每次操作在当前线程上分配的字节数
+final class BenchmarkRunner {
+
+    interface Operation {
+        //返回值会被累加到sink，避免JIT把没有使用的结果优化掉
+        long run(int index);
+    }
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final List<Result> results = new ArrayList<>();
+
+    private volatile long sink;
+
+    BenchmarkRunner(int warmupIterations, int measurementIterations) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+    }
+
+    Result measure(String name, int tableSize, int operationsPerIteration, Operation operation){
+        int index = 0;
+        for (int i=0;i<warmupIterations;i++){
+            for (int j=0;j<operationsPerIteration;j++){
+                sink += operation.run(index++);
+            }
+        }
+        double[] nanosPerOperation = new double[measurementIterations];
+        long allocatedBytes = 0;
+        for (int i=0;i<measurementIterations;i++){
+            long startBytes = getAllocatedBytes();
+            long startNanos = System.nanoTime();
+            for (int j=0;j<operationsPerIteration;j++){
+                sink += operation.run(index++);
+            }
+            nanosPerOperation[i] = (double) (System.nanoTime()-startNanos)/operationsPerIteration;
+            allocatedBytes += getAllocatedBytes()-startBytes;
+        }
+        Result result = new Result(name,tableSize,nanosPerOperation,(double) allocatedBytes/((long) measurementIterations*operationsPerIteration));
+        results.add(result);
+        System.out.println(result);
+        return result;
+    }
+
+    void writeResults(File directory) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()){
+            throw new IOException("cannot create "+directory);
+        }
+        PrintWriter writer = new PrintWriter(new FileWriter(new File(directory,"results.csv")));
+        try {
+            writer.println("benchmark,tableSize,meanNanosPerOp,stdDevNanosPerOp,minNanosPerOp,p50NanosPerOp,maxNanosPerOp,allocatedBytesPerOp");
+            for (Result result : results){
+                writer.println(result.toCsv());
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static long getAllocatedBytes(){
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean){
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    static final class Result {
+
+        final String name;
+        final int tableSize;
+        final double mean;
+        final double stdDev;
+        final double min;
+        final double median;
+        final double max;
+        final double allocatedBytesPerOperation;
+
+        private Result(String name, int tableSize, double[] nanosPerOperation, double allocatedBytesPerOperation) {
+            this.name = name;
+            this.tableSize = tableSize;
+            double[] sorted = nanosPerOperation.clone();
+            Arrays.sort(sorted);
+            double sum = 0;
+            for (double value : sorted){
+                sum += value;
+            }
+            this.mean = sum/sorted.length;
+            double variance = 0;
+            for (double value : sorted){
+                variance += (value-mean)*(value-mean);
+            }
+            this.stdDev = sorted.length > 1? Math.sqrt(variance/(sorted.length-1)) : 0;
+            this.min = sorted[0];
+            this.median = sorted[sorted.length/2];
+            this.max = sorted[sorted.length-1];
+            this.allocatedBytesPerOperation = allocatedBytesPerOperation;
+        }
+
+        String toCsv(){
+            return String.format(Locale.US,"%s,%d,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f",name,tableSize,mean,stdDev,min,median,max,allocatedBytesPerOperation);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,"%-28s %9d rows  %12.1f +- %10.1f ns/op  %12.1f B/op",name,tableSize,mean,stdDev,allocatedBytesPerOperation);
+        }
+    }
+
+}
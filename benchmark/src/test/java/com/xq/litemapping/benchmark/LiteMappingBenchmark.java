@@ -0,0 +1,269 @@
+package com.xq.litemapping.benchmark;
+
+import android.content.Context;
+import android.util.Pair;
+
+import com.xq.litemapping.Condition;
+import com.xq.litemapping.ConditionGroup;
+import com.xq.litemapping.ImportArgument;
+import com.xq.litemapping.ImportResult;
+import com.xq.litemapping.Index;
+import com.xq.litemapping.LiteMapping;
+import com.xq.litemapping.MemoryStorageEngine;
+import com.xq.litemapping.Page;
+import com.xq.litemapping.PageToken;
+import com.xq.litemapping.QueryArgument;
+import com.xq.litemapping.StorageEngine;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+//Robolectric的NATIVE模式使用真实的Sqlite，数据库文件位于临时目录，每种表大小使用单独的数据库
+//需要-Pbenchmark才会运行，表大小通过-Pbenchmark.sizes=1000,1000000指定，默认为DEFAULT_TABLE_SIZES，结果输出到build/reports/benchmark/results.csv
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class LiteMappingBenchmark {
+
+    private static final String DEFAULT_TABLE_SIZES = "1000,10000,100000,1000000";
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    private static final int RANDOM_ID_COUNT = 4096;
+    private static final int SCORE_RANGE = 100000;
+
+    private final BenchmarkRunner runner = new BenchmarkRunner(WARMUP_ITERATIONS,MEASUREMENT_ITERATIONS);
+
+    @Test
+    public void benchmark() throws IOException {
+        Context context = RuntimeEnvironment.getApplication();
+        for (int tableSize : getTableSizes()){
+            LiteMapping liteMapping = createLiteMapping(context,tableSize);
+            populate(liteMapping,tableSize);
+            benchmarkReads(liteMapping,tableSize);
+            //写入会改变表的大小，放在读之后
+            benchmarkWrites(liteMapping,tableSize);
+            benchmarkMemoryEngine(tableSize);
+        }
+        runner.writeResults(new File(System.getProperty("benchmark.output","build/reports/benchmark")));
+    }
+
+    //同样的读写在MemoryStorageEngine上的耗时，用于判断临时表是否值得放在内存中
+    private void benchmarkMemoryEngine(final int tableSize){
+        final StorageEngine storageEngine = new MemoryStorageEngine(true,"id",Long.class,createOtherKeyMap(),Collections.singletonList(new Index("score")));
+        for (int i=0;i<tableSize;i++){
+            storageEngine.insert(createRow(i));
+        }
+        Random random = new Random(tableSize);
+        final long[] existingIds = new long[RANDOM_ID_COUNT];
+        final int[] scores = new int[RANDOM_ID_COUNT];
+        for (int i=0;i<RANDOM_ID_COUNT;i++){
+            existingIds[i] = 1+random.nextInt(tableSize);
+            scores[i] = random.nextInt(SCORE_RANGE);
+        }
+
+        runner.measure("memory.queryById",tableSize,2000,new BenchmarkRunner.Operation() {
+            @Override
+            public long run(int index) {
+                return storageEngine.queryById(existingIds[index%RANDOM_ID_COUNT]).size();
+            }
+        });
+
+        runner.measure("memory.query(condition,page)",tableSize,100,new BenchmarkRunner.Operation() {
+            @Override
+            public long run(int index) {
+                int low = scores[index%RANDOM_ID_COUNT];
+                QueryArgument queryArgument = new QueryArgument()
+                        .setCondition(ConditionGroup.and(
+                                new Condition("score",Condition.CompareType.Between,new int[]{low,low+SCORE_RANGE/10}),
+                                new Condition("category",Condition.CompareType.In,Arrays.asList(1,3,5,7))))
+                        .setOrderBy("score")
+                        .setPageAndSize(index%10,50);
+                return storageEngine.query(queryArgument).size();
+            }
+        });
+
+        runner.measure("memory.insert",tableSize,200,new BenchmarkRunner.Operation() {
+            @Override
+            public long run(int index) {
+                return storageEngine.insert(createRow(tableSize+index));
+            }
+        });
+    }
+
+    private LiteMapping createLiteMapping(Context context,int tableSize){
+        return new LiteMapping(context,LiteMapping.SqliteHelperPool.getDefault(),"benchmark_"+tableSize+"/item",true,new Pair<String,Class<?>>("id",Long.class),createOtherKeyMap(),Collections.singletonList(new Index("score")));
+    }
+
+    private static Map<String,Class<?>> createOtherKeyMap(){
+        Map<String,Class<?>> otherKeyMap = new LinkedHashMap<>();
+        otherKeyMap.put("name",String.class);
+        otherKeyMap.put("score",Integer.class);
+        otherKeyMap.put("category",Integer.class);
+        otherKeyMap.put("payload",String.class);
+        return otherKeyMap;
+    }
+
+    private void populate(LiteMapping liteMapping,final int tableSize){
+        liteMapping.clear();
+        ImportResult importResult = liteMapping.importRows(new Iterator<Map<String,?>>() {
+
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < tableSize;
+            }
+
+            @Override
+            public Map<String,?> next() {
+                if (!hasNext()){
+                    throw new NoSuchElementException();
+                }
+                return createRow(index++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        },new ImportArgument().setChunkSize(10000));
+        assertTrue(String.valueOf(importResult.getError()),importResult.isComplete());
+    }
+
+    private void benchmarkReads(final LiteMapping liteMapping,final int tableSize){
+        Random random = new Random(tableSize);
+        final long[] existingIds = new long[RANDOM_ID_COUNT];
+        final long[] mixedIds = new long[RANDOM_ID_COUNT];
+        final int[] scores = new int[RANDOM_ID_COUNT];
+        for (int i=0;i<RANDOM_ID_COUNT;i++){
+            existingIds[i] = 1+random.nextInt(tableSize);
+            //一半的id不存在
+            mixedIds[i] = 1+random.nextInt(tableSize*2);
+            scores[i] = random.nextInt(SCORE_RANGE);
+        }
+
+        runner.measure("queryById",tableSize,2000,new BenchmarkRunner.Operation() {
+            @Override
+            public long run(int index) {
+                return liteMapping.queryById(existingIds[index%RANDOM_ID_COUNT]).size();
+            }
+        });
+
+        liteMapping.enableRowCache(10000);
+        runner.measure("queryById(rowCache)",tableSize,2000,new BenchmarkRunner.Operation() {
+            @Override
+            public long run(int index) {
+                return liteMapping.queryById(existingIds[index%256]).size();
+            }
+        });
+        liteMapping.disableRowCache();
+
+        runner.measure("queryByIdList(100)",tableSize,50,new BenchmarkRunner.Operation() {
+            @Override
+            public long run(int index) {
+                List<Long> ids = new ArrayList<>(100);
+                for (int i=0;i<100;i++){
+                    ids.add(existingIds[(index*100+i)%RANDOM_ID_COUNT]);
+                }
+                return liteMapping.queryByIdList(ids).size();
+            }
+        });
+
+        runner.measure("contain",tableSize,2000,new BenchmarkRunner.Operation() {
+            @Override
+            public long run(int index) {
+                return liteMapping.contain(mixedIds[index%RANDOM_ID_COUNT])? 1 : 0;
+            }
+        });
+
+        runner.measure("query(condition,page)",tableSize,100,new BenchmarkRunner.Operation() {
+            @Override
+            public long run(int index) {
+                int low = scores[index%RANDOM_ID_COUNT];
+                QueryArgument queryArgument = new QueryArgument()
+                        .setCondition(ConditionGroup.and(
+                                new Condition("score",Condition.CompareType.Between,new int[]{low,low+SCORE_RANGE/10}),
+                                new Condition("category",Condition.CompareType.In,Arrays.asList(1,3,5,7))))
+                        .setOrderBy("score")
+                        .setPageAndSize(index%10,50);
+                return liteMapping.query(queryArgument).size();
+            }
+        });
+
+        runner.measure("queryPage(keyset,50)",tableSize,100,new BenchmarkRunner.Operation() {
+
+            private PageToken pageToken;
+
+            @Override
+            public long run(int index) {
+                Page page = liteMapping.queryPage(new QueryArgument().setOrderBy("score").setPageSize(50).setPageToken(pageToken));
+                pageToken = page.getNextPageToken();
+                return page.getRows().size();
+            }
+        });
+    }
+
+    private void benchmarkWrites(final LiteMapping liteMapping,final int tableSize){
+        runner.measure("insert",tableSize,200,new BenchmarkRunner.Operation() {
+            @Override
+            public long run(int index) {
+                return liteMapping.insert(createRow(tableSize+index));
+            }
+        });
+
+        runner.measure("insertAll(100)",tableSize,20,new BenchmarkRunner.Operation() {
+            @Override
+            public long run(int index) {
+                List<Map<String,?>> rows = new ArrayList<>(100);
+                for (int i=0;i<100;i++){
+                    rows.add(createRow(tableSize+index*100+i));
+                }
+                return liteMapping.insertAll(rows).size();
+            }
+        });
+
+        runner.measure("batchInsert(100)",tableSize,20,new BenchmarkRunner.Operation() {
+            @Override
+            public long run(int index) {
+                return liteMapping.batchInsert(100,createRow(tableSize+index)).size();
+            }
+        });
+    }
+
+    private static Map<String,?> createRow(int index){
+        Map<String,Object> row = new LinkedHashMap<>();
+        row.put("name","item-"+index);
+        row.put("score",(int) ((index*7919L)%SCORE_RANGE));
+        row.put("category",index%16);
+        row.put("payload","0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef");
+        return row;
+    }
+
+    private static int[] getTableSizes(){
+        String[] array = System.getProperty("benchmark.sizes",DEFAULT_TABLE_SIZES).split(",");
+        int[] tableSizes = new int[array.length];
+        for (int i=0;i<array.length;i++){
+            tableSizes[i] = Integer.parseInt(array[i].trim());
+        }
+        return tableSizes;
+    }
+
+}